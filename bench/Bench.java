@@ -0,0 +1,295 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * A small benchmark harness with no dependencies, so that benchmarks
+ * can be run with nothing but javac and java.
+ *
+ * Each benchmark is warmed up and then timed over several iterations.
+ * Fast operations are run in batches sized so that an iteration takes
+ * about the target time; slow operations such as saving a large
+ * drawing are timed one call per iteration. The average time per
+ * operation, its 99.9% confidence interval and, where the JVM supports
+ * it, the bytes allocated per operation are recorded, and the results
+ * can be written as JSON and CSV.
+ * @author Sunny Jiao
+ */
+public class Bench {
+
+	/**
+	 * Code being measured
+	 */
+	public interface Body {
+
+		/**
+		 * Run the measured operation a number of times
+		 * @param ops Number of operations to run
+		 * @throws Exception If the operation fails
+		 */
+		void run(int ops) throws Exception;
+	}
+
+	/**
+	 * The measurements of one benchmark
+	 */
+	public static class Result {
+
+		final String name;
+		final String param;
+		final double[] samples;	// Nanoseconds per operation of each iteration
+		final double bytesPerOp;	// Allocation per operation, or NaN if unknown
+
+		/**
+		 * Constructor
+		 * @param name Name of the benchmark
+		 * @param param Parameter of the benchmark, or "" for none
+		 * @param samples Nanoseconds per operation of each iteration
+		 * @param bytesPerOp Allocation per operation, or NaN if unknown
+		 */
+		Result(String name, String param, double[] samples, double bytesPerOp) {
+			this.name = name;
+			this.param = param;
+			this.samples = samples;
+			this.bytesPerOp = bytesPerOp;
+		}
+
+		/**
+		 * Get the average time per operation
+		 * @return Mean of the samples in nanoseconds
+		 */
+		double mean() {
+			double sum = 0;
+			for(double s : samples) {
+				sum += s;
+			}
+			return sum / samples.length;
+		}
+
+		/**
+		 * Get the half width of the 99.9% confidence interval of the
+		 * mean, using the normal approximation
+		 * @return Error of the mean in nanoseconds
+		 */
+		double error() {
+			if(samples.length < 2) {
+				return Double.NaN;
+			}
+			double mean = mean();
+			double sum = 0;
+			for(double s : samples) {
+				sum += (s - mean) * (s - mean);
+			}
+			return 3.29 * Math.sqrt(sum / (samples.length - 1) / samples.length);
+		}
+	}
+
+	private static volatile long sink;	// Keeps results of measured code alive
+
+	private final PrintStream log;	// Where results are printed as they are measured
+	private final Pattern filter;
+	private final int warmupIterations;
+	private final int iterations;
+	private final long iterationNanos;
+	private final List<Result> results = new ArrayList<Result>();
+
+	/**
+	 * Constructor - Results are printed to the System.out
+	 * in use when the harness is created
+	 * @param filter Only benchmarks whose name and parameter match are run, or null for all
+	 * @param warmupIterations Number of untimed iterations
+	 * @param iterations Number of timed iterations
+	 * @param iterationMillis Target length of an iteration of a fast operation
+	 */
+	public Bench(String filter, int warmupIterations, int iterations, int iterationMillis) {
+		this.log = System.out;
+		this.filter = (filter != null) ? Pattern.compile(filter) : null;
+		this.warmupIterations = warmupIterations;
+		this.iterations = iterations;
+		this.iterationNanos = iterationMillis * 1000000L;
+	}
+
+	/**
+	 * Use a value computed by measured code, so the JIT cannot
+	 * remove the code as dead
+	 * @param value Value to consume
+	 */
+	public static void consume(long value) {
+		sink += value;
+	}
+
+	/**
+	 * Use an object created by measured code
+	 * @param value Object to consume
+	 */
+	public static void consume(Object value) {
+		sink += System.identityHashCode(value);
+	}
+
+	/**
+	 * Check if a benchmark would be run by the filter
+	 * @param name Name of the benchmark
+	 * @param param Parameter of the benchmark, or "" for none
+	 * @return True if the benchmark is selected
+	 */
+	public boolean isSelected(String name, String param) {
+		return filter == null || filter.matcher(label(name, param)).find();
+	}
+
+	/**
+	 * Measure a fast operation, running it in batches
+	 * @param name Name of the benchmark
+	 * @param param Parameter of the benchmark, or "" for none
+	 * @param body Code to measure
+	 * @throws Exception If the code fails
+	 */
+	public void measure(String name, String param, Body body) throws Exception {
+		if(!isSelected(name, param)) {
+			return;
+		}
+		// Double the batch size until a batch takes a tenth of an iteration
+		int ops = 1;
+		long time;
+		do {
+			long start = System.nanoTime();
+			body.run(ops);
+			time = System.nanoTime() - start;
+			if(time < iterationNanos / 10 && ops < (1 << 30)) {
+				ops *= 2;
+			}
+		} while(time < iterationNanos / 10 && ops < (1 << 30));
+		ops = (int)Math.max(1, Math.min(1 << 30, ops * (iterationNanos / Math.max(1, time))));
+		run(name, param, body, ops);
+	}
+
+	/**
+	 * Measure a slow operation, timing one call per iteration
+	 * @param name Name of the benchmark
+	 * @param param Parameter of the benchmark, or "" for none
+	 * @param body Code to measure
+	 * @throws Exception If the code fails
+	 */
+	public void measureSingle(String name, String param, Body body) throws Exception {
+		if(!isSelected(name, param)) {
+			return;
+		}
+		run(name, param, body, 1);
+	}
+
+	/**
+	 * Get the results measured so far
+	 * @return List of results in the order they were measured
+	 */
+	public List<Result> getResults() {
+		return results;
+	}
+
+	/**
+	 * Write the results as a JSON array
+	 * @param path File to write
+	 * @throws IOException If the file cannot be written
+	 */
+	public void writeJson(Path path) throws IOException {
+		try(Writer out = Files.newBufferedWriter(path)) {
+			out.write("[");
+			for(int i = 0; i < results.size(); i++) {
+				Result r = results.get(i);
+				out.write(i == 0 ? "\n" : ",\n");
+				out.write("  {\"benchmark\":\"" + r.name + "\",\"param\":\"" + r.param
+						+ "\",\"unit\":\"ns/op\",\"score\":" + number(r.mean())
+						+ ",\"scoreError\":" + number(r.error())
+						+ ",\"bytesPerOp\":" + number(r.bytesPerOp) + ",\"samples\":[");
+				for(int j = 0; j < r.samples.length; j++) {
+					out.write((j == 0 ? "" : ",") + number(r.samples[j]));
+				}
+				out.write("]}");
+			}
+			out.write("\n]\n");
+		}
+	}
+
+	/**
+	 * Write the results as CSV, one row per benchmark
+	 * @param path File to write
+	 * @throws IOException If the file cannot be written
+	 */
+	public void writeCsv(Path path) throws IOException {
+		try(Writer out = Files.newBufferedWriter(path)) {
+			out.write("benchmark,param,unit,score,scoreError,bytesPerOp,samples\n");
+			for(Result r : results) {
+				out.write(r.name + "," + r.param + ",ns/op," + number(r.mean()) + ","
+						+ number(r.error()) + "," + number(r.bytesPerOp) + "," + r.samples.length + "\n");
+			}
+		}
+	}
+
+	/**
+	 * Warm up and time a benchmark, then record and print its result
+	 * @param name Name of the benchmark
+	 * @param param Parameter of the benchmark, or "" for none
+	 * @param body Code to measure
+	 * @param ops Number of operations per iteration
+	 * @throws Exception If the code fails
+	 */
+	private void run(String name, String param, Body body, int ops) throws Exception {
+		for(int i = 0; i < warmupIterations; i++) {
+			body.run(ops);
+		}
+		double[] samples = new double[iterations];
+		long allocated = allocatedBytes();
+		for(int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			body.run(ops);
+			samples[i] = (double)(System.nanoTime() - start) / ops;
+		}
+		double bytesPerOp = Double.NaN;
+		if(allocated >= 0) {
+			bytesPerOp = (double)(allocatedBytes() - allocated) / ((long)ops * iterations);
+		}
+		Result result = new Result(name, param, samples, bytesPerOp);
+		results.add(result);
+		log.println(String.format(Locale.ROOT, "%-40s %14.1f +- %10.1f ns/op %12.1f B/op",
+				label(name, param), result.mean(), result.error(), bytesPerOp));
+	}
+
+	/**
+	 * Get the number of bytes allocated by the current thread
+	 * @return Bytes allocated, or -1 if the JVM cannot tell
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the label of a benchmark used for filtering and printing
+	 * @param name Name of the benchmark
+	 * @param param Parameter of the benchmark, or "" for none
+	 * @return Name and parameter, e.g. "save:1000"
+	 */
+	private static String label(String name, String param) {
+		return param.isEmpty() ? name : name + ":" + param;
+	}
+
+	/**
+	 * Format a number for JSON and CSV output
+	 * @param value Number to format
+	 * @return The number with three decimal places, or null if it is not finite
+	 */
+	private static String number(double value) {
+		if(Double.isNaN(value) || Double.isInfinite(value)) {
+			return "null";
+		}
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+}
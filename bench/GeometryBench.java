@@ -0,0 +1,262 @@
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks of the geometry, rendering and file hot paths of the
+ * Geometry Drawing Program, run with the Bench harness.
+ *
+ * Build and run from the project directory with:
+ *
+ *   javac -d out src/*.java bench/*.java
+ *   java -Djava.awt.headless=true -cp out GeometryBench [options]
+ *
+ * Options:
+ *   -f REGEX   Only run benchmarks whose name matches, e.g. "draw|save"
+ *   -o NAME    Write the results to NAME.json and NAME.csv
+ *   -n COUNT   Largest drawing to save and load (default 1000000)
+ *   -q         Quick run with fewer and shorter iterations
+ * @author Sunny Jiao
+ */
+public class GeometryBench {
+
+	// Cursor positions that complete every type of shape, relative to its first vertex
+	private static final int[][] CLICKS = {{0, 0}, {80, 10}, {90, 70}, {10, 80}, {40, 120}};
+	private static final int CURSORS = 64;	// Number of different cursors and shapes used per benchmark
+	private static final int STROKE_POINTS = 2000;	// Number of mouse positions in a freehand drag
+
+	/**
+	 * Run the benchmarks
+	 * @param args Command line options
+	 * @throws Exception If a benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		String filter = null;
+		String output = null;
+		int maxShapes = 1000000;
+		boolean quick = false;
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+				case "-f" :
+					filter = args[++i];
+					break;
+				case "-o" :
+					output = args[++i];
+					break;
+				case "-n" :
+					maxShapes = Integer.parseInt(args[++i]);
+					break;
+				case "-q" :
+					quick = true;
+					break;
+				default :
+					System.err.println("Unknown option " + args[i]);
+					System.exit(1);
+			}
+		}
+		Bench bench = quick ? new Bench(filter, 2, 5, 100) : new Bench(filter, 5, 10, 500);
+		// Discard the messages printed while adding points so they do not flood the results
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			benchmarkShapes(bench);
+			benchmarkFiles(bench, maxShapes);
+		}
+		finally {
+			System.setOut(console);
+		}
+		if(output != null) {
+			bench.writeJson(Paths.get(output + ".json"));
+			bench.writeCsv(Paths.get(output + ".csv"));
+		}
+	}
+
+	/**
+	 * Benchmark adding points, restricted points, initializing
+	 * and drawing for every type of shape
+	 * @param bench Harness to run the benchmarks with
+	 * @throws Exception If a benchmark fails
+	 */
+	private static void benchmarkShapes(Bench bench) throws Exception {
+		Point[] cursors = new Point[CURSORS];
+		for(int i = 0; i < CURSORS; i++) {
+			cursors[i] = new Point(150 + (i * 37) % 120, 150 + (i * 53) % 120);
+		}
+		BufferedImage image = new BufferedImage(512, 512, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+
+		for(ShapeType type : ShapeType.values()) {
+			String name = type.name();
+
+			// Creating a whole shape from clicks
+			bench.measure("addPoint", name, ops -> {
+				for(int i = 0; i < ops; i++) {
+					Bench.consume(build(type, 100, 100));
+				}
+			});
+
+			// Preview of the first restricted point, as drawn on every mouse move
+			Shape partial = type.create();
+			for(int i = 0; i < Math.min(partial.getNumFreelyDrawnPoints(), CLICKS.length); i++) {
+				partial.addPoint(new Point(100 + CLICKS[i][0], 100 + CLICKS[i][1]));
+			}
+			Point restricted = new Point();
+			bench.measure("getRestrictedPoint", name, ops -> {
+				for(int i = 0; i < ops; i++) {
+					Point p = partial.getRestrictedPoint(cursors[i & (CURSORS - 1)], restricted);
+					Bench.consume(p.x + p.y);
+				}
+			});
+
+			// Everything the preview does for one mouse move
+			java.awt.Rectangle ghostBounds = new java.awt.Rectangle();
+			bench.measure("drawGhost", name, ops -> {
+				for(int i = 0; i < ops; i++) {
+					partial.getGhostBounds(cursors[i & (CURSORS - 1)], ghostBounds);
+					partial.drawGhost(g, cursors[i & (CURSORS - 1)]);
+				}
+			});
+
+			// Several copies, so the JIT cannot fold repeated calls on one shape
+			Shape[] shapes = new Shape[CURSORS];
+			for(int i = 0; i < CURSORS; i++) {
+				shapes[i] = build(type, 50 + i * 5, 50 + i * 3);
+			}
+			bench.measure("initialize", name, ops -> {
+				for(int i = 0; i < ops; i++) {
+					shapes[i & (CURSORS - 1)].initialize();
+				}
+				Bench.consume(Double.doubleToLongBits(shapes[0].getArea()));
+			});
+
+			bench.measure("draw", name, ops -> {
+				for(int i = 0; i < ops; i++) {
+					shapes[i & (CURSORS - 1)].draw(g);
+				}
+			});
+		}
+		g.dispose();
+
+		// Streaming a long drag through the freehand simplification
+		Point[] stroke = new Point[STROKE_POINTS];
+		for(int i = 0; i < STROKE_POINTS; i++) {
+			double angle = 2 * Math.PI * i / STROKE_POINTS;
+			double radius = 200 + 15 * Math.sin(angle * 12);
+			stroke[i] = new Point(300 + (int)Math.round(radius * Math.cos(angle)),
+					300 + (int)Math.round(radius * Math.sin(angle)));
+		}
+		bench.measure("stroke", Integer.toString(STROKE_POINTS), ops -> {
+			for(int i = 0; i < ops; i++) {
+				Freehand shape = new Freehand();
+				for(Point p : stroke) {
+					shape.addPoint(p, null);
+				}
+				shape.finish();
+				shape.initialize();
+				Bench.consume(shape.getVertexCount());
+			}
+		});
+	}
+
+	/**
+	 * Benchmark saving and loading drawings of increasing size
+	 * @param bench Harness to run the benchmarks with
+	 * @param maxShapes Number of shapes in the largest drawing
+	 * @throws Exception If a benchmark fails
+	 */
+	private static void benchmarkFiles(Bench bench, int maxShapes) throws Exception {
+		Path dir = Files.createTempDirectory("geometry-bench");
+		try {
+			for(int count = 1000; count <= maxShapes; count *= 10) {
+				String param = Integer.toString(count);
+				if(!bench.isSelected("save", param) && !bench.isSelected("read", param)
+						&& !bench.isSelected("load", param)) {
+					continue;
+				}
+				ShapeStore drawing = createDrawing(count);
+				Path path = dir.resolve("drawing" + count + DrawingFile.EXTENSION);
+				DrawingFile.write(path, drawing);
+
+				bench.measureSingle("save", param, ops -> DrawingFile.write(path, drawing));
+				// Reading decodes and initializes every shape
+				bench.measureSingle("read", param, ops -> Bench.consume(DrawingFile.read(path).size()));
+				// Loading maps large drawings instead of reading them
+				bench.measureSingle("load", param, ops -> Bench.consume(DrawingFile.load(path).size()));
+			}
+		}
+		finally {
+			deleteAll(dir);
+		}
+	}
+
+	/**
+	 * Create a shape by clicking the same points a user would,
+	 * or for a freehand shape by dragging through them
+	 * @param type Type of shape to create
+	 * @param x x coordinate of the first vertex
+	 * @param y y coordinate of the first vertex
+	 * @return The complete, initialized shape
+	 */
+	private static Shape build(ShapeType type, int x, int y) {
+		Shape shape = type.create();
+		for(int[] click : CLICKS) {
+			if(shape.addPoint(new Point(x + click[0], y + click[1]))) {
+				shape.initialize();
+				return shape;
+			}
+		}
+		if(shape instanceof Freehand && ((Freehand)shape).finish()) {
+			shape.initialize();
+			return shape;
+		}
+		throw new IllegalStateException(type + " was not completed");
+	}
+
+	/**
+	 * Create a drawing of every type of shape spread over a grid
+	 * @param count Number of shapes in the drawing
+	 * @return Store holding the initialized drawing
+	 */
+	private static ShapeStore createDrawing(int count) {
+		ShapeType[] types = ShapeType.values();
+		Shape[] templates = new Shape[types.length];
+		for(int i = 0; i < types.length; i++) {
+			templates[i] = build(types[i], 0, 0);
+		}
+		ShapeStore store = new ShapeStore(count);
+		int columns = (int)Math.ceil(Math.sqrt(count));
+		for(int i = 0; i < count; i++) {
+			int t = i % types.length;
+			int x = (i % columns) * 200;
+			int y = (i / columns) * 200;
+			store.beginRow(types[t]);
+			for(Point p : templates[t].getVertices()) {
+				store.addVertex(p.x + x, p.y + y);
+			}
+			store.endRow();
+		}
+		store.initializeRows();
+		return store;
+	}
+
+	/**
+	 * Delete a directory of benchmark files
+	 * @param dir Directory to delete
+	 * @throws IOException If a file cannot be deleted
+	 */
+	private static void deleteAll(Path dir) throws IOException {
+		try(Stream<Path> files = Files.list(dir)) {
+			for(Path file : (Iterable<Path>)files::iterator) {
+				Files.deleteIfExists(file);
+			}
+		}
+		Files.delete(dir);
+	}
+}
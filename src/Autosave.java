@@ -0,0 +1,97 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves a drawing at a fixed interval on a background thread.
+ *
+ * Each save takes a snapshot of the drawing, which only holds the
+ * drawing's lock long enough to hand over its list, and writes the
+ * snapshot while editing carries on. The file is written to a
+ * temporary file and moved into place, so it always holds the whole
+ * drawing as it was at one moment. Nothing is written if the drawing
+ * has not changed since the last save.
+ * @author Sunny Jiao
+ */
+public class Autosave implements Closeable {
+
+	private final Drawing drawing;
+	private final ScheduledExecutorService timer;
+	private volatile Path path;
+	private Path savedPath;			// File and version of the last save, only used by the timer thread
+	private long savedVersion;
+	private String lastError;		// Message of the last failure, so repeated failures are reported once
+
+	/**
+	 * Constructor - Starts saving the drawing once it changes
+	 * @param drawing Drawing to save
+	 * @param path File to save to
+	 * @param period Time between saves
+	 * @param unit Unit of the period
+	 */
+	public Autosave(Drawing drawing, Path path, long period, TimeUnit unit) {
+		this.drawing = drawing;
+		this.path = path;
+		savedPath = path;
+		savedVersion = drawing.getVersion();
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Autosave");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		timer.scheduleWithFixedDelay(this::save, period, period, unit);
+	}
+
+	/**
+	 * Change the file the drawing is saved to, e.g.
+	 * after the drawing was saved under a new name
+	 * @param path File to save to
+	 */
+	public void setPath(Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Get the file the drawing is saved to
+	 * @return Path of the file
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Stop saving. A save in progress is finished.
+	 */
+	@Override
+	public void close() {
+		timer.shutdown();
+	}
+
+	/**
+	 * Save the drawing if it has changed since the last save
+	 */
+	private void save() {
+		Path target = path;
+		if(drawing.getVersion() == savedVersion && target.equals(savedPath)) {
+			return;
+		}
+		DrawingSnapshot snapshot = drawing.snapshot();
+		try {
+			snapshot.write(target);
+			savedPath = target;
+			savedVersion = snapshot.getVersion();
+			lastError = null;
+		}
+		catch (IOException | RuntimeException e) {
+			// Keep the timer running; an exception would cancel every later save
+			if(!e.toString().equals(lastError)) {
+				System.err.println("Autosave to " + target + " failed: " + e);
+				lastError = e.toString();
+			}
+		}
+	}
+}
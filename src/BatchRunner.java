@@ -0,0 +1,582 @@
+import java.awt.Point;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs a script of drawing commands without opening a window, so that
+ * drawings can be created and changed by other programs.
+ *
+ * Each line holds one command. Blank lines and lines starting with #
+ * are skipped. Shape indices are the same as in the Display menu.
+ *
+ *   add SHAPE X1 Y1 X2 Y2 ...    Add a shape by clicking at each point in turn
+ *   remove INDEX                 Remove a shape
+ *   translate INDEX DX DY        Translate a shape
+ *   translate all DX DY          Translate the whole drawing
+ *   clear                        Remove every shape
+ *   save NAME                    Save the drawing (.gdr is added if missing)
+ *   load NAME                    Load a .gdr drawing or import a .ser drawing
+ *   report [text|csv|json] [FILE]   Write the shape data to a file or the console
+ *   export FILE [SCALE]          Export the drawing as a PNG image
+ *   query X Y WIDTH HEIGHT       List the shapes that intersect an area
+ *   overlaps INDEX               List the shapes that overlap a shape
+ *   overlaps all                 List every pair of overlapping shapes
+ *   coverage                     Print the area covered by the drawing
+ *
+ * The points of an add command go through the same rules as mouse
+ * clicks: points too close to the shape are rejected, and points after
+ * the freely drawn ones are moved to fit the shape, e.g. to keep a
+ * rectangle's corners square. Every vertex of the shape must be given.
+ * The points of a freehand shape are simplified as if the mouse were
+ * dragged through them.
+ * The query commands treat shapes as the regions inside their outlines
+ * (see ShapeQuery) and write their results to the output stream.
+ * As in the window, changes made after a drawing is loaded or saved
+ * are recorded in its journal (see DrawingJournal).
+ *
+ * Commands pass through three stages, each on its own thread, in
+ * batches: parsing the text, validating (building the shape of each add
+ * command), and applying the commands to the drawing in order. A
+ * command that fails is reported with its line number and skipped.
+ * @author Sunny Jiao
+ */
+public class BatchRunner {
+
+	private static final int BATCH_SIZE = 1024;			// Commands passed between stages at once
+	private static final int QUEUED_BATCHES = 8;		// Batches waiting between two stages
+	private static final int PARALLEL_BATCH = 256;		// Batches with this many commands are validated in parallel
+
+	/**
+	 * Kinds of commands
+	 */
+	private enum Kind {
+		ADD, REMOVE, TRANSLATE, TRANSLATE_ALL, CLEAR, SAVE, LOAD, REPORT, EXPORT, QUERY, OVERLAPS, OVERLAPS_ALL, COVERAGE
+	}
+
+	/**
+	 * A command on its way through the stages
+	 */
+	private static class Command {
+
+		final int line;		// Line number in the script
+		Kind kind;
+		ShapeType type;		// Shape to add
+		int[] numbers;		// Points to add, the index and translation, or the area to query
+		String name;		// File name
+		String format;		// Report format
+		double scale = 1;	// Image scale
+		Shape shape;		// Shape built by the validation stage
+		String error;		// Why the command cannot be applied, or null
+
+		/**
+		 * Constructor
+		 * @param line Line number in the script
+		 */
+		Command(int line) {
+			this.line = line;
+		}
+	}
+
+	private final List<Command> end = new ArrayList<Command>(0);	// Marks the end of the script between stages
+	private final Drawing drawing;
+	private final PrintStream out;
+	private final PrintStream err;
+	private volatile Exception failure;		// Error that stopped the parsing stage
+	private DrawingJournal journal;			// Journal of the drawing last loaded or saved, or null
+	private int errors;
+
+	/**
+	 * Constructor
+	 * @param drawing Drawing to change
+	 * @param out Stream to write reports to when no file is given
+	 * @param err Stream to report failed commands to
+	 */
+	public BatchRunner(Drawing drawing, PrintStream out, PrintStream err) {
+		this.drawing = drawing;
+		this.out = out;
+		this.err = err;
+	}
+
+	/**
+	 * Run every command in a script
+	 * @param script Script to read, which is closed when done
+	 * @return Number of commands that failed
+	 * @throws IOException If the script cannot be read
+	 */
+	public int run(Reader script) throws IOException {
+		BlockingQueue<List<Command>> parsed = new ArrayBlockingQueue<List<Command>>(QUEUED_BATCHES);
+		BlockingQueue<List<Command>> validated = new ArrayBlockingQueue<List<Command>>(QUEUED_BATCHES);
+		Thread parser = startStage("Batch parser", () -> {
+			try(BufferedReader in = new BufferedReader(script)) {
+				List<Command> batch = new ArrayList<Command>(BATCH_SIZE);
+				String line;
+				int number = 0;
+				while((line = in.readLine()) != null) {
+					number++;
+					Command command = parse(line, number);
+					if(command != null) {
+						batch.add(command);
+						if(batch.size() == BATCH_SIZE) {
+							parsed.put(batch);
+							batch = new ArrayList<Command>(BATCH_SIZE);
+						}
+					}
+				}
+				parsed.put(batch);
+			}
+			catch (IOException e) {
+				failure = e;
+			}
+			finally {
+				parsed.put(end);
+			}
+		});
+		Thread validator = startStage("Batch validator", () -> {
+			try {
+				List<Command> batch;
+				while((batch = parsed.take()) != end) {
+					if(batch.size() >= PARALLEL_BATCH) {
+						batch.parallelStream().forEach(BatchRunner::validate);
+					}
+					else {
+						batch.forEach(BatchRunner::validate);
+					}
+					validated.put(batch);
+				}
+			}
+			finally {
+				validated.put(end);
+			}
+		});
+		try {
+			List<Command> batch;
+			while((batch = validated.take()) != end) {
+				for(Command command : batch) {
+					apply(command);
+				}
+			}
+			parser.join();
+			validator.join();
+		}
+		catch (InterruptedException e) {
+			parser.interrupt();
+			validator.interrupt();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Batch interrupted");
+		}
+		finally {
+			closeJournal();
+		}
+		if(failure != null) {
+			throw new IOException("Could not read script", failure);
+		}
+		return errors;
+	}
+
+	/**
+	 * Parse a line of the script
+	 * @param line Text of the line
+	 * @param number Line number
+	 * @return The command, with an error if it is invalid, or null for a blank line or comment
+	 */
+	private static Command parse(String line, int number) {
+		line = line.trim();
+		if(line.isEmpty() || line.startsWith("#")) {
+			return null;
+		}
+		String[] words = line.split("\\s+");
+		Command command = new Command(number);
+		try {
+			switch(words[0].toLowerCase()) {
+				case "add" :
+					command.kind = Kind.ADD;
+					command.type = (words.length > 1) ? ShapeType.fromName(words[1]) : null;
+					if(command.type == null) {
+						command.error = "Unknown shape " + ((words.length > 1) ? words[1] : "");
+					}
+					else if(words.length < 4 || words.length % 2 != 0) {
+						command.error = "Points must be given as x y pairs";
+					}
+					else {
+						command.numbers = parseNumbers(words, 2, words.length - 2);
+					}
+					break;
+				case "remove" :
+					command.kind = Kind.REMOVE;
+					command.numbers = parseNumbers(words, 1, 1);
+					break;
+				case "translate" :
+					if(words.length > 1 && words[1].equalsIgnoreCase("all")) {
+						command.kind = Kind.TRANSLATE_ALL;
+						command.numbers = parseNumbers(words, 2, 2);
+					}
+					else {
+						command.kind = Kind.TRANSLATE;
+						command.numbers = parseNumbers(words, 1, 3);
+					}
+					break;
+				case "clear" :
+					command.kind = Kind.CLEAR;
+					break;
+				case "save" :
+				case "load" :
+					command.kind = words[0].equalsIgnoreCase("save") ? Kind.SAVE : Kind.LOAD;
+					if(words.length < 2) {
+						command.error = "Missing drawing name";
+					}
+					else {
+						command.name = line.substring(words[0].length()).trim();
+					}
+					break;
+				case "report" :
+					command.kind = Kind.REPORT;
+					command.format = (words.length > 1) ? words[1].toUpperCase() : "TEXT";
+					command.name = (words.length > 2) ? words[2] : null;
+					if(!command.format.matches("TEXT|CSV|JSON")) {
+						command.error = "Unknown report format " + words[1];
+					}
+					break;
+				case "export" :
+					command.kind = Kind.EXPORT;
+					if(words.length < 2 || words.length > 3) {
+						command.error = "Usage: export FILE [SCALE]";
+					}
+					else {
+						command.name = words[1];
+						command.scale = (words.length > 2) ? Double.parseDouble(words[2]) : 1;
+						if(!(command.scale > 0)) {
+							command.error = "Invalid scale " + words[2];
+						}
+					}
+					break;
+				case "query" :
+					command.kind = Kind.QUERY;
+					command.numbers = parseNumbers(words, 1, 4);
+					break;
+				case "overlaps" :
+					if(words.length != 2) {
+						command.kind = Kind.OVERLAPS;
+						command.error = "Usage: overlaps INDEX|all";
+					}
+					else if(words[1].equalsIgnoreCase("all")) {
+						command.kind = Kind.OVERLAPS_ALL;
+					}
+					else {
+						command.kind = Kind.OVERLAPS;
+						command.numbers = parseNumbers(words, 1, 1);
+					}
+					break;
+				case "coverage" :
+					command.kind = Kind.COVERAGE;
+					break;
+				default :
+					command.error = "Unknown command " + words[0];
+			}
+		}
+		catch (IllegalArgumentException e) {
+			command.error = e.getMessage();
+		}
+		return command;
+	}
+
+	/**
+	 * Parse the integer arguments of a command
+	 * @param words Words of the command
+	 * @param first Index of the first argument
+	 * @param count Number of arguments expected
+	 * @return The arguments
+	 * @throws IllegalArgumentException If the number of arguments is wrong or one is not an integer
+	 */
+	private static int[] parseNumbers(String[] words, int first, int count) {
+		if(words.length != first + count) {
+			throw new IllegalArgumentException(words[0] + " needs " + count + " numbers");
+		}
+		int[] numbers = new int[count];
+		for(int i = 0; i < count; i++) {
+			try {
+				numbers[i] = Integer.parseInt(words[first + i]);
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Not an integer: " + words[first + i]);
+			}
+		}
+		return numbers;
+	}
+
+	/**
+	 * Build the shape of an add command by clicking at each of its
+	 * points, so it follows the same rules as a shape drawn by hand.
+	 * Other commands depend on the drawing, so they are checked when
+	 * they are applied.
+	 * @param command Command to validate
+	 */
+	private static void validate(Command command) {
+		if(command.kind != Kind.ADD || command.error != null) {
+			return;
+		}
+		Shape shape = command.type.create();
+		if(shape instanceof Freehand) {
+			validateStroke(command, (Freehand)shape);
+			return;
+		}
+		boolean complete = false;
+		for(int i = 0; i < command.numbers.length; i += 2) {
+			if(complete) {
+				command.error = command.type + " needs " + shape.getMaxVertices() + " points";
+				return;
+			}
+			int before = shape.getVertices().size();
+			int x = command.numbers[i];
+			int y = command.numbers[i + 1];
+			complete = shape.addPoint(new Point(x, y), null);
+			if(shape.getVertices().size() == before) {
+				command.error = "Point (" + x + ", " + y + ") is too close to the shape";
+				return;
+			}
+		}
+		if(!complete) {
+			command.error = command.type + " needs " + shape.getMaxVertices() + " points";
+			return;
+		}
+		shape.initialize();
+		command.shape = shape;
+	}
+
+	/**
+	 * Build a freehand shape from the points of an add command,
+	 * as if the mouse were dragged through them in turn
+	 * @param command Command to validate
+	 * @param shape Empty shape to build
+	 */
+	private static void validateStroke(Command command, Freehand shape) {
+		for(int i = 0; i < command.numbers.length; i += 2) {
+			shape.addPoint(new Point(command.numbers[i], command.numbers[i + 1]), null);
+		}
+		if(!shape.finish()) {
+			command.error = command.type + " needs points around an area";
+			return;
+		}
+		shape.initialize();
+		command.shape = shape;
+	}
+
+	/**
+	 * Apply a command to the drawing, reporting it if it fails
+	 * @param command Command to apply
+	 */
+	private void apply(Command command) {
+		try {
+			if(command.error != null) {
+				throw new IllegalArgumentException(command.error);
+			}
+			long start = Metrics.now();
+			long allocated = Metrics.allocatedBytes();
+			switch(command.kind) {
+				case ADD :
+					drawing.add(command.shape);
+					break;
+				case REMOVE :
+					drawing.remove(checkIndex(command.numbers[0]));
+					break;
+				case TRANSLATE :
+					drawing.translate(checkIndex(command.numbers[0]), command.numbers[1], command.numbers[2]);
+					break;
+				case TRANSLATE_ALL :
+					drawing.translateAll(command.numbers[0], command.numbers[1]);
+					break;
+				case CLEAR :
+					closeJournal();		// The saved drawing keeps its shapes until it is saved again
+					drawing.setShapes(new ArrayList<Shape>());
+					break;
+				case SAVE :
+					String name = command.name.endsWith(DrawingFile.EXTENSION)
+							? command.name : command.name + DrawingFile.EXTENSION;
+					save(Paths.get(name));
+					break;
+				case LOAD :
+					load(command.name);
+					break;
+				case REPORT :
+					report(ShapeReport.Format.valueOf(command.format), command.name);
+					break;
+				case EXPORT :
+					PngExporter exporter = new PngExporter(drawing);
+					exporter.setScale(command.scale);
+					exporter.write(Paths.get(command.name));
+					break;
+				case QUERY :
+					int[] found = new ShapeQuery(drawing.snapshot()).intersecting(new java.awt.Rectangle(
+							command.numbers[0], command.numbers[1], command.numbers[2], command.numbers[3]));
+					out.println(found.length + " shapes intersect the area:" + join(found));
+					break;
+				case OVERLAPS :
+					int i = checkIndex(command.numbers[0]);
+					int[] overlapping = new ShapeQuery(drawing.snapshot()).overlapping(i);
+					out.println(overlapping.length + " shapes overlap shape " + i + ":" + join(overlapping));
+					break;
+				case OVERLAPS_ALL :
+					int[][] pairs = new ShapeQuery(drawing.snapshot()).overlappingPairs();
+					out.println(pairs.length + " pairs of shapes overlap");
+					for(int[] pair : pairs) {
+						out.println(pair[0] + " " + pair[1]);
+					}
+					break;
+				case COVERAGE :
+					out.println(String.format("Covered area: %.2f", new ShapeQuery(drawing.snapshot()).getCoveredArea()));
+					break;
+			}
+			Metrics.histogram("batch." + command.kind.name().toLowerCase()).record(start, allocated);
+		}
+		catch (IOException | ClassNotFoundException | RuntimeException e) {
+			errors++;
+			err.println("Line " + command.line + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Save the drawing. If it is saved where it was last loaded or
+	 * saved, its journal already holds the changes and is only
+	 * compacted when large; otherwise a new snapshot and journal
+	 * are written.
+	 * @param path Drawing file to write
+	 * @throws IOException If the drawing or journal cannot be written
+	 */
+	private void save(Path path) throws IOException {
+		if(journal != null && journal.getSnapshot().equals(path)) {
+			journal.save();
+		}
+		else {
+			closeJournal();
+			journal = DrawingJournal.create(path, drawing);
+		}
+	}
+
+	/**
+	 * Load a drawing, replaying its journal, or import a .ser file
+	 * @param name Name of the drawing, with or without its extension
+	 * @throws IOException If the drawing cannot be read
+	 * @throws ClassNotFoundException If a .ser file contains an unknown class
+	 */
+	private void load(String name) throws IOException, ClassNotFoundException {
+		Path path = Paths.get(name);
+		if(!name.endsWith(DrawingFile.EXTENSION) && !name.endsWith(DrawingFile.LEGACY_EXTENSION)) {
+			path = Paths.get(name + DrawingFile.EXTENSION);
+			if(!Files.exists(path)) {
+				path = Paths.get(name + DrawingFile.LEGACY_EXTENSION);
+			}
+		}
+		if(path.toString().endsWith(DrawingFile.LEGACY_EXTENSION)) {
+			List<Shape> shapes = DrawingFile.importSerialized(path);
+			closeJournal();
+			drawing.setShapes(shapes);
+		}
+		else {
+			DrawingJournal opened = DrawingJournal.open(path, drawing);
+			closeJournal();
+			journal = opened;
+		}
+	}
+
+	/**
+	 * Stop journaling the drawing, e.g. before it is replaced
+	 * @throws IOException If the journal cannot be closed
+	 */
+	private void closeJournal() throws IOException {
+		if(journal != null) {
+			journal.close();
+			journal = null;
+		}
+	}
+
+	/**
+	 * Write a report on every shape
+	 * @param format Format of the report
+	 * @param name File to write, or null for the output stream
+	 * @throws IOException If the report cannot be written
+	 */
+	private void report(ShapeReport.Format format, String name) throws IOException {
+		DrawingSnapshot snapshot = drawing.snapshot();
+		if(name == null) {
+			ShapeReport report = new ShapeReport(new OutputStreamWriter(out), format);
+			report.setOffset(snapshot.getOffsetX(), snapshot.getOffsetY());
+			report.write(snapshot.getShapes());
+			report.flush();
+			return;
+		}
+		try(Writer file = Files.newBufferedWriter(Paths.get(name))) {
+			ShapeReport report = new ShapeReport(file, format);
+			report.setOffset(snapshot.getOffsetX(), snapshot.getOffsetY());
+			report.write(snapshot.getShapes());
+		}
+	}
+
+	/**
+	 * List shape indices after a command's result
+	 * @param indices Indices to list
+	 * @return The indices, each after a space
+	 */
+	private static String join(int[] indices) {
+		StringBuilder text = new StringBuilder();
+		for(int i : indices) {
+			text.append(' ').append(i);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Check that a shape index is in the drawing
+	 * @param i Index to check
+	 * @return The index
+	 * @throws IllegalArgumentException If there is no such shape
+	 */
+	private int checkIndex(int i) {
+		if(i < 0 || i >= drawing.size()) {
+			throw new IllegalArgumentException("No shape " + i);
+		}
+		return i;
+	}
+
+	/**
+	 * Code run by a stage thread
+	 */
+	private interface Stage {
+
+		/**
+		 * Run the stage
+		 * @throws InterruptedException If the stage is interrupted while waiting
+		 */
+		void run() throws InterruptedException;
+	}
+
+	/**
+	 * Start a stage on its own thread
+	 * @param name Name of the thread
+	 * @param stage Code to run
+	 * @return The started thread
+	 */
+	private static Thread startStage(String name, Stage stage) {
+		Thread thread = new Thread(() -> {
+			try {
+				stage.run();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+}
@@ -0,0 +1,77 @@
+import java.util.Arrays;
+
+/**
+ * Recent changes to a drawing, kept so that readers holding an older
+ * snapshot can tell which parts of the drawing have changed since,
+ * e.g. to redraw only those parts.
+ *
+ * Each change records the top left corner of the bounding box of a
+ * shape that was added or removed, along with the drawing's version
+ * after the change. Only the last CAPACITY changes are kept, and
+ * changes that may affect every shape, like loading a drawing, are
+ * only recorded as such, so readers must be ready to treat the whole
+ * drawing as changed. The drawing records changes while holding its
+ * write lock; readers may ask from any thread.
+ * @author Sunny Jiao
+ */
+class ChangeLog {
+
+	private static final int CAPACITY = 4096;	// Number of changes kept
+
+	private final long[] versions = new long[CAPACITY];	// Version of the drawing after each change
+	private final int[] corners = new int[CAPACITY * 2];	// x and y of the corner of each change
+	private long count;				// Number of changes recorded so far
+	private long forgotten = -1;	// Latest version whose changes are no longer all kept
+	private long resetVersion;		// Latest version at which every shape may have changed
+
+	/**
+	 * Record that a shape was added or removed
+	 * @param version Version of the drawing after the change
+	 * @param box Bounding box of the shape, in shape coordinates
+	 */
+	synchronized void changed(long version, java.awt.Rectangle box) {
+		int slot = (int)(count % CAPACITY);
+		if(count >= CAPACITY) {
+			forgotten = versions[slot];
+		}
+		versions[slot] = version;
+		corners[slot * 2] = box.x;
+		corners[slot * 2 + 1] = box.y;
+		count++;
+	}
+
+	/**
+	 * Record that every shape may have changed
+	 * @param version Version of the drawing after the change
+	 */
+	synchronized void reset(long version) {
+		resetVersion = version;
+	}
+
+	/**
+	 * Get the corners of every change between two versions
+	 * @param since Version the reader last saw
+	 * @param upTo Version the reader has now
+	 * @return x and y of each corner in turn, in shape coordinates, or null
+	 * if the changes are not all known and every shape must be treated as changed
+	 */
+	synchronized int[] getCorners(long since, long upTo) {
+		if(since > upTo || since < resetVersion || since < forgotten) {
+			return null;
+		}
+		int found = 0;
+		int[] result = new int[16];
+		for(long i = Math.max(0, count - CAPACITY); i < count; i++) {
+			int slot = (int)(i % CAPACITY);
+			if(versions[slot] > since && versions[slot] <= upTo) {
+				if(found * 2 == result.length) {
+					result = Arrays.copyOf(result, result.length * 2);
+				}
+				result[found * 2] = corners[slot * 2];
+				result[found * 2 + 1] = corners[slot * 2 + 1];
+				found++;
+			}
+		}
+		return Arrays.copyOf(result, found * 2);
+	}
+}
@@ -0,0 +1,434 @@
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * The list of shapes in the drawing, along with a spatial index
+ * over their bounding boxes. All changes to the shapes go through
+ * this class so that the index stays in sync with the list.
+ *
+ * Translating the whole drawing only changes an offset which is
+ * added to every shape's vertices when the drawing is rendered,
+ * searched or saved. Shapes and the index keep their own (shape)
+ * coordinates.
+ * Areas passed to query() are in drawing coordinates.
+ *
+ * Changes are made by one writer at a time, under a lock. Readers
+ * work from an immutable DrawingSnapshot of the list, index and
+ * offset, and never hold the lock while reading it, so rendering,
+ * exporting or autosaving never holds up a change. snapshot() hands
+ * out the last published snapshot without locking while the drawing
+ * is unchanged, and otherwise publishes a new one, which shares the
+ * writer's list and index rather than copying them. The writer copies
+ * the list and index (sharing every grid cell it does not change)
+ * before its first change after a publish, so published snapshots
+ * never change. The other read methods, e.g. size() or query(), do
+ * not publish a snapshot, so a writer checking the drawing between
+ * changes does not copy the list each time.
+ * Shapes are never changed once they are in the drawing: translating
+ * a shape replaces it with a translated copy. Shapes in a MappedDrawing
+ * or ShapeStore that are still stored are not in the index; snapshots
+ * search them through their stored bounding boxes instead.
+ * Where each change was is also kept for a while in a ChangeLog, so a
+ * reader can tell which parts of an older snapshot are out of date.
+ * @author Sunny Jiao
+ */
+public class Drawing {
+
+	private final ReentrantLock writeLock = new ReentrantLock();	// Held by the one writer
+
+	// Writer state, only used with the write lock held
+	private List<Shape> shapes;			// All shapes, in the order they were added
+	private SpatialIndex index;			// Bounding box index over the shapes that are not stored
+	private int offsetX;				// Translation of the whole drawing in x
+	private int offsetY;				// Translation of the whole drawing in y
+	private DrawingJournal journal;		// Journal recording changes, or null
+	private boolean shared;				// The list and index belong to the published snapshot
+
+	private final ChangeLog changes = new ChangeLog();	// Where the shapes changed in recent versions
+
+	private volatile long version;					// Number of changes made to the drawing
+	private volatile DrawingSnapshot published;		// Last snapshot handed to readers
+
+	/**
+	 * Constructor - Creates an empty drawing
+	 */
+	public Drawing() {
+		shapes = new ArrayList<Shape>();
+		index = new SpatialIndex();
+		published = new DrawingSnapshot(shapes, index, 0, 0, 0, changes);
+		shared = true;
+	}
+
+	/**
+	 * Append a complete shape to the drawing. The shape
+	 * must not be changed once it has been added.
+	 * @param shape Shape to add
+	 * @throws IllegalArgumentException If the shape is still missing vertices
+	 */
+	public void add(Shape shape) {
+		if(!shape.isComplete()) {
+			throw new IllegalArgumentException("Shape is not complete");
+		}
+		writeLock.lock();
+		try {
+			own();
+			shapes.add(shape);
+			index.insert(shape);
+			version++;
+			changes.changed(version, shape.getBounds());
+			if(journal != null) {
+				journal.added(shape, offsetX, offsetY);
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Remove a shape from the drawing
+	 * @param i Index of the shape in the list
+	 * @return The removed shape
+	 */
+	public Shape remove(int i) {
+		writeLock.lock();
+		try {
+			own();
+			Shape shape = shapes.remove(i);
+			index.remove(shape);
+			version++;
+			changes.changed(version, shape.getBounds());
+			if(journal != null) {
+				journal.removed(i);
+			}
+			return shape;
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Translate a single shape, replacing it with a translated copy
+	 * @param i Index of the shape in the list
+	 * @param dx Change in x
+	 * @param dy Change in y
+	 */
+	public void translate(int i, int dx, int dy) {
+		writeLock.lock();
+		try {
+			own();
+			Shape shape = shapes.get(i);
+			replace(i, dx, dy);
+			version++;
+			changes.changed(version, shape.getBounds());
+			changes.changed(version, shapes.get(i).getBounds());
+			if(journal != null) {
+				journal.translated(i, dx, dy);
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Translate every shape in the drawing by moving the offset
+	 * @param dx Change in x
+	 * @param dy Change in y
+	 */
+	public void translateAll(int dx, int dy) {
+		writeLock.lock();
+		try {
+			offsetX += dx;
+			offsetY += dy;
+			version++;
+			if(journal != null) {
+				journal.translatedAll(dx, dy);
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Record every later change in a journal. Changes made
+	 * while no journal is set are not recorded.
+	 * @param journal Journal to append to, or null for none
+	 */
+	public void setJournal(DrawingJournal journal) {
+		writeLock.lock();
+		try {
+			this.journal = journal;
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Stop recording changes in a journal, unless another
+	 * journal has been set since
+	 * @param journal Journal to stop recording in
+	 */
+	void removeJournal(DrawingJournal journal) {
+		writeLock.lock();
+		try {
+			if(this.journal == journal) {
+				this.journal = null;
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Replace all shapes, e.g. after loading a drawing.
+	 * The offset is reset.
+	 * @param shapes New list of shapes, which the drawing takes over
+	 */
+	public void setShapes(List<Shape> shapes) {
+		writeLock.lock();
+		try {
+			this.shapes = shapes;
+			index = new SpatialIndex();
+			LazyShapeList lazy = (shapes instanceof LazyShapeList) ? (LazyShapeList)shapes : null;
+			for(int i = 0; i < shapes.size(); i++) {
+				if(lazy == null || !lazy.isStored(i)) {
+					index.insert(shapes.get(i));
+				}
+			}
+			offsetX = 0;
+			offsetY = 0;
+			shared = false;
+			version++;
+			changes.reset(version);
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Replace all shapes and the offset with those of another drawing,
+	 * e.g. one that was loaded apart so that a failure while loading
+	 * leaves this drawing as it was
+	 * @param other Drawing to take over, which must not be used afterwards
+	 */
+	public void setShapes(Drawing other) {
+		writeLock.lock();
+		other.writeLock.lock();
+		try {
+			shapes = other.shapes;
+			index = other.index;
+			offsetX = other.offsetX;
+			offsetY = other.offsetY;
+			shared = other.shared;	// Its snapshot may still be read
+			version++;
+			changes.reset(version);
+		}
+		finally {
+			other.writeLock.unlock();
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the translation of the whole drawing in x, which is
+	 * added to shape coordinates to get drawing coordinates
+	 * @return Offset in x
+	 */
+	public int getOffsetX() {
+		return read(DrawingSnapshot::getOffsetX);
+	}
+
+	/**
+	 * Get the translation of the whole drawing in y, which is
+	 * added to shape coordinates to get drawing coordinates
+	 * @return Offset in y
+	 */
+	public int getOffsetY() {
+		return read(DrawingSnapshot::getOffsetY);
+	}
+
+	/**
+	 * Get a shape by its position in the list
+	 * @param i Index of the shape
+	 * @return The shape
+	 */
+	public Shape get(int i) {
+		return read(s -> s.get(i));
+	}
+
+	/**
+	 * Get the number of shapes
+	 * @return Number of shapes
+	 */
+	public int size() {
+		return read(DrawingSnapshot::size);
+	}
+
+	/**
+	 * Get the list of shapes as it is now. The list never changes;
+	 * use snapshot() to get the matching offset as well.
+	 * @return List of all shapes
+	 */
+	public List<Shape> getShapes() {
+		return snapshot().getShapes();
+	}
+
+	/**
+	 * Get the number of changes made to the drawing so far, which
+	 * can be compared to tell if the drawing has changed
+	 * @return Number of changes
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Capture the drawing as it is now, without copying any shapes.
+	 * Only blocks, briefly, if the drawing has changed since the last
+	 * snapshot and a writer is busy.
+	 * @return Snapshot of the shapes, index and offset
+	 */
+	public DrawingSnapshot snapshot() {
+		DrawingSnapshot snapshot = published;
+		if(snapshot.getVersion() == version) {
+			return snapshot;
+		}
+		writeLock.lock();
+		try {
+			if(published.getVersion() != version) {
+				published = new DrawingSnapshot(shapes, index, offsetX, offsetY, version, changes);
+				shared = true;
+			}
+			return published;
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the bounding box of the whole drawing. Stored shapes
+	 * in a MappedDrawing or ShapeStore are not created to do so.
+	 * @return Bounding box in drawing coordinates, empty if there are no shapes
+	 */
+	public java.awt.Rectangle getBounds() {
+		return read(DrawingSnapshot::getBounds);
+	}
+
+	/**
+	 * Find the shapes whose bounding boxes intersect an area
+	 * @param area Area to search, in drawing coordinates
+	 * @param result List the shapes are appended to
+	 * @return The result list
+	 */
+	public List<Shape> query(java.awt.Rectangle area, List<Shape> result) {
+		return read(s -> s.query(area, result));
+	}
+
+	/**
+	 * Find the shapes whose bounding boxes contain a point
+	 * @param p Point to search, in drawing coordinates
+	 * @param result List the shapes are appended to
+	 * @return The result list
+	 */
+	public List<Shape> query(Point p, List<Shape> result) {
+		return read(s -> s.query(p, result));
+	}
+
+	/**
+	 * Find the shape under a point, e.g. to select it with the mouse
+	 * @param x x coordinate of the point, in drawing coordinates
+	 * @param y y coordinate of the point, in drawing coordinates
+	 * @param tolerance Distance from an outline that still counts as a hit
+	 * @return The shape, or null if no shape is hit
+	 */
+	public Shape pick(double x, double y, double tolerance) {
+		return read(s -> s.pick(x, y, tolerance));
+	}
+
+	/**
+	 * Find the position of a shape in the drawing
+	 * @param shape Shape to find
+	 * @return Index of the shape, or -1 if it is not in the drawing
+	 */
+	public int indexOf(Shape shape) {
+		return read(s -> s.indexOf(shape));
+	}
+
+	/**
+	 * Get the lock held while the drawing is changed, so a change can
+	 * be kept from happening in the middle of another operation, e.g.
+	 * while a journal is compacted
+	 * @return The write lock
+	 */
+	ReentrantLock getWriteLock() {
+		return writeLock;
+	}
+
+	/**
+	 * Read the drawing as it is now without publishing a snapshot, so
+	 * the writer does not have to copy its list on its next change.
+	 * The last published snapshot is read without locking if it is up
+	 * to date, and otherwise the writer's state is read under the lock.
+	 * @param reader Reads a value from the drawing
+	 * @return The value read
+	 */
+	private <T> T read(Function<DrawingSnapshot, T> reader) {
+		DrawingSnapshot snapshot = published;
+		if(snapshot.getVersion() == version) {
+			return reader.apply(snapshot);
+		}
+		writeLock.lock();
+		try {
+			return reader.apply(new DrawingSnapshot(shapes, index, offsetX, offsetY, version, changes));
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Copy the list and index if they belong to the
+	 * published snapshot, so they can be changed
+	 */
+	private void own() {
+		if(!shared) {
+			return;
+		}
+		if(shapes instanceof LazyShapeList) {
+			shapes = ((LazyShapeList)shapes).copy();
+		}
+		else {
+			shapes = new ArrayList<Shape>(shapes);
+		}
+		index = index.copy();
+		shared = false;
+	}
+
+	/**
+	 * Replace a shape with a translated copy, keeping the index in sync
+	 * @param i Index of the shape in the list
+	 * @param dx Change in x
+	 * @param dy Change in y
+	 */
+	private void replace(int i, int dx, int dy) {
+		boolean stored = (shapes instanceof LazyShapeList) && ((LazyShapeList)shapes).isStored(i);
+		Shape shape = shapes.get(i);
+		Shape moved = shape.copy();
+		moved.translate(dx, dy);
+		shapes.set(i, moved);
+		if(!stored) {
+			index.remove(shape);
+		}
+		index.insert(moved);
+	}
+}
@@ -0,0 +1,480 @@
+import java.awt.Point;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes drawings in the binary drawing format.
+ *
+ * A file starts with a header holding a magic number, the format
+ * version, the number of shapes and the position of the index. Each
+ * shape follows as a one byte type tag (see ShapeType), the number of
+ * vertices, and the x and y coordinate of each vertex, all as
+ * big-endian ints. Attributes such as area and perimeter are
+ * recalculated when the drawing is loaded.
+ *
+ * The index at the end of the file holds the position and bounding
+ * box of every shape record, so that large drawings can be memory
+ * mapped and decoded one shape at a time (see MappedDrawing).
+ * Anything after the index is a trailer that readers skip, which
+ * DrawingJournal uses to tie a snapshot to its journal.
+ *
+ * Drawings saved as serialized ArrayLists (.ser) by older versions
+ * of the program can still be imported.
+ * @author Sunny Jiao
+ */
+public class DrawingFile {
+
+	public static final String EXTENSION = ".gdr";
+	public static final String LEGACY_EXTENSION = ".ser";
+	public static final long MAPPED_THRESHOLD = 1 << 22;	// Files at least this large are loaded lazily
+
+	static final int MAGIC = 0x47445257;	// "GDRW"
+	static final short VERSION = 2;
+	static final int HEADER_SIZE = 18;		// Magic, version, shape count and index position
+	static final int INDEX_ENTRY_SIZE = 24;	// Record position, then x, y, width and height of the bounds
+	static final int MIN_RECORD_SIZE = 5;	// Type tag and vertex count of a shape without vertices
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Write a drawing to a file, replacing the file if it exists.
+	 * The drawing is written to a temporary file and forced to disk
+	 * before it is moved over the old file, so the file holds either
+	 * the old or the new drawing even after a crash or power loss.
+	 * The old file is never written to, so it is safe to keep mapped.
+	 * @param path File to write
+	 * @param shapes Shapes in the drawing
+	 * @throws IOException If the file cannot be written
+	 */
+	public static void write(Path path, List<Shape> shapes) throws IOException {
+		write(path, shapes, 0, 0);
+	}
+
+	/**
+	 * Write a drawing to a file with every shape translated, which
+	 * folds a drawing's offset into the saved coordinates without
+	 * changing the shapes in memory
+	 * @param path File to write
+	 * @param shapes Shapes in the drawing
+	 * @param dx Translation added to every x coordinate
+	 * @param dy Translation added to every y coordinate
+	 * @throws IOException If the file cannot be written
+	 */
+	public static void write(Path path, List<Shape> shapes, int dx, int dy) throws IOException {
+		write(path, shapes, dx, dy, null);
+	}
+
+	/**
+	 * Write a drawing to a file with every shape translated, as
+	 * write(Path, List, int, int) does, followed by a trailer
+	 * @param path File to write
+	 * @param shapes Shapes in the drawing
+	 * @param dx Translation added to every x coordinate
+	 * @param dy Translation added to every y coordinate
+	 * @param trailer Bytes to write after the index, or null for none
+	 * @throws IOException If the file cannot be written
+	 */
+	static void write(Path path, List<Shape> shapes, int dx, int dy, ByteBuffer trailer) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		boolean replaced = false;
+		try {
+			writeShapes(temp, shapes, dx, dy, trailer);
+			replace(temp, path);
+			replaced = true;
+		}
+		finally {
+			if(!replaced) {
+				deleteQuietly(temp);
+			}
+		}
+		forceDirectory(path);
+	}
+
+	/**
+	 * Write a drawing to a new file and force it to disk
+	 * @param temp File to write
+	 * @param shapes Shapes in the drawing
+	 * @param dx Translation added to every x coordinate
+	 * @param dy Translation added to every y coordinate
+	 * @param trailer Bytes to write after the index, or null for none
+	 * @throws IOException If the file cannot be written
+	 */
+	private static void writeShapes(Path temp, List<Shape> shapes, int dx, int dy, ByteBuffer trailer) throws IOException {
+		try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			long[] offsets = new long[shapes.size()];
+			long position = HEADER_SIZE;
+			buffer.putInt(MAGIC);
+			buffer.putShort(VERSION);
+			buffer.putInt(shapes.size());
+			buffer.putLong(0);	// Index position, filled in at the end
+			MappedDrawing mapped = (shapes instanceof MappedDrawing) ? (MappedDrawing)shapes : null;
+			ShapeStore store = (shapes instanceof ShapeStore) ? (ShapeStore)shapes : null;
+			for(int i = 0; i < shapes.size(); i++) {
+				offsets[i] = position;
+				ByteBuffer raw = (mapped != null) ? mapped.getRecord(i) : null;
+				if(raw != null) {
+					// Copy shapes that were never decoded straight from the old file
+					buffer = ensureRemaining(channel, buffer, raw.remaining());
+					position += raw.remaining();
+					if(dx == 0 && dy == 0) {
+						buffer.put(raw);
+					}
+					else {
+						buffer.put(raw.get());
+						buffer.putInt(raw.getInt());
+						while(raw.hasRemaining()) {
+							buffer.putInt(raw.getInt() + dx);
+							buffer.putInt(raw.getInt() + dy);
+						}
+					}
+					continue;
+				}
+				if(store != null) {
+					// Copy the columns without creating Shape objects
+					int numVertices = store.getVertexCount(i);
+					int recordSize = 5 + numVertices * 8;
+					buffer = ensureRemaining(channel, buffer, recordSize);
+					buffer.put(store.getType(i).getTag());
+					buffer.putInt(numVertices);
+					for(int j = 0; j < numVertices; j++) {
+						buffer.putInt(store.getX(i, j) + dx);
+						buffer.putInt(store.getY(i, j) + dy);
+					}
+					position += recordSize;
+					continue;
+				}
+				ArrayList<Point> vertices = shapes.get(i).getVertices();
+				int recordSize = 5 + vertices.size() * 8;
+				buffer = ensureRemaining(channel, buffer, recordSize);
+				buffer.put(ShapeType.of(shapes.get(i)).getTag());
+				buffer.putInt(vertices.size());
+				for(Point p : vertices) {
+					buffer.putInt(p.x + dx);
+					buffer.putInt(p.y + dy);
+				}
+				position += recordSize;
+			}
+			long indexPosition = position;
+			java.awt.Rectangle box = new java.awt.Rectangle();
+			for(int i = 0; i < shapes.size(); i++) {
+				buffer = ensureRemaining(channel, buffer, INDEX_ENTRY_SIZE);
+				if(mapped != null) {
+					mapped.getBounds(i, box);
+				}
+				else if(store != null) {
+					store.getBounds(i, box);
+				}
+				else {
+					box.setBounds(shapes.get(i).getBounds());
+				}
+				buffer.putLong(offsets[i]);
+				buffer.putInt(box.x + dx);
+				buffer.putInt(box.y + dy);
+				buffer.putInt(box.width);
+				buffer.putInt(box.height);
+			}
+			if(trailer != null) {
+				buffer = ensureRemaining(channel, buffer, trailer.remaining());
+				buffer.put(trailer.duplicate());
+			}
+			drain(channel, buffer);
+			buffer.putLong(indexPosition);
+			buffer.flip();
+			channel.write(buffer, 10);
+			channel.force(true);
+			Metrics.addBytesWritten(channel.size());
+		}
+	}
+
+	/**
+	 * Move a complete file over another. Windows cannot replace a file
+	 * while it is mapped, e.g. by the MappedDrawing of a drawing being
+	 * saved under its own name, but can rename it, so the old file is
+	 * moved aside first if replacing it fails. The mapping goes on
+	 * reading the moved file, which is deleted by a later save once
+	 * it is no longer mapped.
+	 * @param source File to move
+	 * @param target File to replace
+	 * @throws IOException If the file cannot be moved
+	 */
+	static void replace(Path source, Path target) throws IOException {
+		String prefix = target.getFileName() + ".";
+		try(DirectoryStream<Path> old = Files.newDirectoryStream(target.toAbsolutePath().getParent(),
+				p -> p.getFileName().toString().startsWith(prefix) && p.getFileName().toString().endsWith(".old"))) {
+			for(Path p : old) {
+				deleteQuietly(p);
+			}
+		}
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (FileSystemException e) {
+			if(!Files.exists(target)) {
+				throw e;
+			}
+			Path old = target.resolveSibling(target.getFileName() + "." + System.nanoTime() + ".old");
+			try {
+				Files.move(target, old, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (IOException moveFailed) {
+				e.addSuppressed(moveFailed);
+				throw e;
+			}
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+			deleteQuietly(old);
+		}
+	}
+
+	/**
+	 * Force the entries of the directory holding a file to disk, so a
+	 * file just moved into it is not lost in a power loss. Directories
+	 * cannot be opened on every platform, e.g. Windows, in which case
+	 * the file system is left to keep the move.
+	 * @param path File in the directory
+	 */
+	static void forceDirectory(Path path) {
+		Path directory = path.toAbsolutePath().getParent();
+		if(directory == null) {
+			return;
+		}
+		try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+		catch (IOException e) {
+			// Not supported for directories here
+		}
+	}
+
+	/**
+	 * Delete a file if it exists, ignoring any error, e.g. to
+	 * clean up after a write that has already failed
+	 * @param path File to delete
+	 */
+	static void deleteQuietly(Path path) {
+		try {
+			Files.deleteIfExists(path);
+		}
+		catch (IOException e) {
+			// The error being handled is more useful than this one
+		}
+	}
+
+	/**
+	 * Load a drawing, mapping it into memory if it
+	 * is large enough to benefit from lazy loading
+	 * @param path File to load
+	 * @return List of the shapes in the drawing
+	 * @throws IOException If the file cannot be read or is not a drawing
+	 */
+	public static List<Shape> load(Path path) throws IOException {
+		if(Files.size(path) >= MAPPED_THRESHOLD) {
+			return MappedDrawing.open(path);
+		}
+		return read(path);
+	}
+
+	/**
+	 * Read a whole drawing from a file into a ShapeStore
+	 * @param path File to read
+	 * @return Store holding the initialized shapes in the drawing
+	 * @throws IOException If the file cannot be read or is not a drawing
+	 */
+	public static ShapeStore read(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.flip();
+			fill(channel, buffer, HEADER_SIZE);
+			if(buffer.getInt() != MAGIC) {
+				throw new IOException("Not a drawing file");
+			}
+			short version = buffer.getShort();
+			if(version != VERSION) {
+				throw new IOException("Unsupported drawing version " + version);
+			}
+			int count = buffer.getInt();
+			checkCount(count, channel.size(), HEADER_SIZE);
+			buffer.getLong();	// The index is not needed when reading in order
+			ShapeStore shapes = new ShapeStore(count);
+			for(int i = 0; i < count; i++) {
+				fill(channel, buffer, 5);
+				ShapeType type = ShapeType.fromTag(buffer.get());
+				int numVertices = buffer.getInt();
+				if(type == null || !type.isValidVertexCount(numVertices) || numVertices > Integer.MAX_VALUE / 8) {
+					throw new IOException("Corrupt shape record " + i);
+				}
+				shapes.beginRow(type);
+				for(int j = 0; j < numVertices; j++) {
+					fill(channel, buffer, 8);
+					shapes.addVertex(buffer.getInt(), buffer.getInt());
+				}
+				shapes.endRow();
+			}
+			Metrics.addBytesRead(channel.position());
+			Shape.initializeAll(shapes);
+			return shapes;
+		}
+	}
+
+	/**
+	 * Check that a file is large enough to hold the number of shapes
+	 * its header claims, before anything is allocated for them
+	 * @param count Number of shapes in the header
+	 * @param fileSize Size of the file in bytes
+	 * @param headerSize Size of the file's header in bytes
+	 * @throws IOException If the count cannot be right
+	 */
+	static void checkCount(int count, long fileSize, int headerSize) throws IOException {
+		if(count < 0 || count > (fileSize - headerSize) / MIN_RECORD_SIZE) {
+			throw new IOException("Corrupt drawing");
+		}
+	}
+
+	/**
+	 * Create and initialize a shape from the record at a position
+	 * in a buffer. The buffer's position is not changed, so the
+	 * buffer can be shared between threads.
+	 * @param buffer Buffer holding the record
+	 * @param offset Position of the record's type tag
+	 * @return The decoded shape
+	 * @throws IOException If the record is corrupt
+	 */
+	static Shape decode(ByteBuffer buffer, int offset) throws IOException {
+		ShapeType type = ShapeType.fromTag(buffer.get(offset));
+		int numVertices = buffer.getInt(offset + 1);
+		if(type == null || !type.isValidVertexCount(numVertices) || offset + 5L + numVertices * 8L > buffer.limit()) {
+			throw new IOException("Corrupt shape record at " + offset);
+		}
+		ArrayList<Point> vertices = new ArrayList<Point>(numVertices);
+		int position = offset + 5;
+		for(int j = 0; j < numVertices; j++) {
+			vertices.add(new Point(buffer.getInt(position), buffer.getInt(position + 4)));
+			position += 8;
+		}
+		Shape shape = type.create();
+		shape.setVertices(vertices);
+		shape.initialize();
+		return shape;
+	}
+
+	/**
+	 * Import a drawing saved as a serialized ArrayList by older
+	 * versions of the program, recalculating the attributes of
+	 * every shape since they may have been saved by older formulas
+	 * @param path .ser file to read
+	 * @return ArrayList of the shapes in the drawing
+	 * @throws IOException If the file cannot be read
+	 * @throws ClassNotFoundException If the file contains an unknown class
+	 */
+	@SuppressWarnings("unchecked")
+	public static ArrayList<Shape> importSerialized(Path path) throws IOException, ClassNotFoundException {
+		try(InputStream file = Files.newInputStream(path);
+				ObjectInputStream in = new ObjectInputStream(file)) {
+			ArrayList<Shape> shapes = (ArrayList<Shape>) in.readObject();
+			Metrics.addBytesRead(Files.size(path));
+			Shape.initializeAll(shapes);
+			return shapes;
+		}
+	}
+
+	/**
+	 * Read the trailer of a drawing file, i.e. the bytes after its index
+	 * @param path File to read
+	 * @param maxSize Size of the largest trailer expected
+	 * @return The trailer, or an empty buffer if the file has none or it is larger than expected
+	 * @throws IOException If the file cannot be read or is not a drawing
+	 */
+	static ByteBuffer readTrailer(Path path, int maxSize) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.flip();
+			fill(channel, header, 6);
+			if(header.getInt() != MAGIC) {
+				throw new IOException("Not a drawing file");
+			}
+			short version = header.getShort();
+			if(version != VERSION) {
+				throw new IOException("Unsupported drawing version " + version);
+			}
+			fill(channel, header, HEADER_SIZE - 6);
+			long end = header.getLong(10) + (long)header.getInt(6) * INDEX_ENTRY_SIZE;
+			long size = channel.size();
+			if(end < HEADER_SIZE || end > size || size - end > maxSize) {
+				return ByteBuffer.allocate(0);
+			}
+			ByteBuffer trailer = ByteBuffer.allocate((int)(size - end));
+			while(trailer.hasRemaining()) {
+				if(channel.read(trailer, end + trailer.position()) < 0) {
+					throw new IOException("Unexpected end of drawing file");
+				}
+			}
+			trailer.flip();
+			return trailer;
+		}
+	}
+
+	/**
+	 * Make room for the given number of bytes in a buffer,
+	 * writing out its contents if needed
+	 * @param channel Channel to write to
+	 * @param buffer Buffer in write mode
+	 * @param bytes Number of bytes needed
+	 * @return The buffer, or a larger one if the bytes do not fit at all
+	 * @throws IOException If the channel cannot be written
+	 */
+	private static ByteBuffer ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if(buffer.remaining() < bytes) {
+			drain(channel, buffer);
+			if(buffer.capacity() < bytes) {
+				return ByteBuffer.allocate(bytes);
+			}
+		}
+		return buffer;
+	}
+
+	/**
+	 * Write the contents of a buffer to a channel and clear it
+	 * @param channel Channel to write to
+	 * @param buffer Buffer in write mode
+	 * @throws IOException If the channel cannot be written
+	 */
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Read from a channel until a buffer has at least the
+	 * requested number of bytes remaining
+	 * @param channel Channel to read from
+	 * @param buffer Buffer in read mode
+	 * @param bytes Number of bytes needed
+	 * @throws IOException If the file ends before enough bytes are read
+	 */
+	private static void fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if(buffer.remaining() >= bytes) {
+			return;
+		}
+		buffer.compact();
+		while(buffer.position() < bytes) {
+			if(channel.read(buffer) < 0) {
+				throw new IOException("Unexpected end of drawing file");
+			}
+		}
+		buffer.flip();
+	}
+}
@@ -0,0 +1,599 @@
+import java.awt.Point;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the changes made to a drawing since it
+ * was last saved in full, so that saving only has to write what has
+ * changed and edits are not lost if the program stops unexpectedly.
+ *
+ * The journal (.gdj) sits next to the drawing's snapshot (.gdr). Its
+ * header holds a random generation number, repeated in the trailer of
+ * the snapshot it continues from (see DrawingFile), and the size and
+ * modification time of that snapshot, which are only checked for
+ * snapshots saved without a journal. One record follows per change: adding,
+ * removing or translating a shape, or translating the whole drawing.
+ * Each record holds its length, an operation code, the operation's
+ * data as big-endian ints and a CRC32 of the code and data. Vertices
+ * of added shapes are stored in drawing coordinates, i.e. with the
+ * drawing's offset added, so they stay correct after compaction folds
+ * the offset into the snapshot.
+ *
+ * Changes are appended as they are made. Saving forces them to disk,
+ * and once the journal grows large compared to the snapshot, it is
+ * compacted by writing a new snapshot and starting a new journal.
+ * Opening a drawing replays its journal on top of the snapshot. A
+ * record cut short by a crash ends the replay, and a journal whose
+ * generation does not match the snapshot is ignored, since the
+ * snapshot was written after it.
+ *
+ * Compaction writes a snapshot of the drawing without holding the
+ * drawing's write lock, so editing goes on meanwhile, and the changes
+ * are appended to the old journal as usual. The snapshot's trailer
+ * also holds the old journal's generation and its length when the
+ * snapshot was taken, so if the program stops before the journal is
+ * replaced, the old journal is replayed from there. The write lock is
+ * then taken just long enough to start the new journal with the
+ * records appended after that point. Both files are forced to disk,
+ * along with their directory, before the next step.
+ *
+ * Shapes are journaled when they are added to the drawing, which is
+ * once they are complete. Records are appended by the drawing's writer
+ * with its write lock held, so a snapshot taken under the same lock
+ * holds exactly the changes before the journal's current length.
+ * @author Sunny Jiao
+ */
+public class DrawingJournal implements Closeable {
+
+	public static final String EXTENSION = ".gdj";
+	public static final long COMPACT_THRESHOLD = 1 << 20;	// Journals smaller than this are never compacted
+
+	static final int MAGIC = 0x47444A4E;	// "GDJN"
+	static final short VERSION = 2;
+	static final int HEADER_SIZE = 30;		// Magic, version, generation, snapshot size and modification time
+	private static final int TRAILER_SIZE = 24;		// Generation, then the generation and length of the journal the snapshot holds
+
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+	private static final byte TRANSLATE = 3;
+	private static final byte TRANSLATE_ALL = 4;
+
+	private final Path snapshot;
+	private final Path path;
+	private final Drawing drawing;
+	private final CRC32 crc = new CRC32();
+	private FileChannel channel;
+	private long generation;			// Generation of the journal file, repeated in the snapshot's trailer
+	private ByteBuffer record = ByteBuffer.allocate(256);
+	private IOException failure;		// First error appending a record, reported by save()
+
+	/**
+	 * Constructor
+	 * @param snapshot Drawing file the journal continues from
+	 * @param drawing Drawing being journaled
+	 * @param channel Journal file, positioned at its end
+	 * @param generation Generation of the journal file
+	 */
+	private DrawingJournal(Path snapshot, Drawing drawing, FileChannel channel, long generation) {
+		this.snapshot = snapshot;
+		this.path = journalPath(snapshot);
+		this.drawing = drawing;
+		this.channel = channel;
+		this.generation = generation;
+	}
+
+	/**
+	 * Load a drawing into a Drawing, replay its journal and keep
+	 * journaling the changes made to it. The drawing is loaded and
+	 * replayed apart, so if anything fails the drawing and its
+	 * journal are left as they were.
+	 * @param snapshot Drawing file to load
+	 * @param drawing Drawing to replace the shapes of
+	 * @return The journal, which is attached to the drawing
+	 * @throws IOException If the drawing or journal cannot be read
+	 */
+	public static DrawingJournal open(Path snapshot, Drawing drawing) throws IOException {
+		Drawing loaded = new Drawing();
+		loaded.setShapes(DrawingFile.load(snapshot));
+		Path path = journalPath(snapshot);
+		long[] trailer = readTrailer(snapshot);
+		long[] header = Files.exists(path) ? readHeader(path) : null;
+		long start = findStart(header, path, snapshot, trailer);
+		FileChannel channel;
+		long generation;
+		if(start == HEADER_SIZE && (trailer == null || header[0] == trailer[0])) {
+			long end = replay(path, loaded, start);
+			generation = header[0];
+			channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			channel.truncate(end);		// Drop a record cut short by a crash
+			channel.position(end);
+		}
+		else {
+			// Start a journal of the snapshot's generation, keeping the records it does not hold
+			generation = (trailer != null) ? trailer[0] : newGeneration();
+			if(start >= 0) {
+				long end = replay(path, loaded, start);
+				try(FileChannel old = FileChannel.open(path, StandardOpenOption.READ)) {
+					channel = createJournal(path, snapshot, generation, old, start, end);
+				}
+			}
+			else {
+				channel = createJournal(path, snapshot, generation, null, 0, 0);
+			}
+		}
+		DrawingJournal journal = new DrawingJournal(snapshot, drawing, channel, generation);
+		drawing.getWriteLock().lock();
+		try {
+			drawing.setShapes(loaded);
+			drawing.setJournal(journal);
+		}
+		finally {
+			drawing.getWriteLock().unlock();
+		}
+		return journal;
+	}
+
+	/**
+	 * Load a drawing and replay its journal without changing
+	 * either file, e.g. to export it
+	 * @param snapshot Drawing file to load
+	 * @return The drawing with every journaled change applied
+	 * @throws IOException If the drawing or journal cannot be read
+	 */
+	public static Drawing read(Path snapshot) throws IOException {
+		Drawing drawing = new Drawing();
+		drawing.setShapes(DrawingFile.load(snapshot));
+		Path path = journalPath(snapshot);
+		if(Files.exists(path)) {
+			long start = findStart(readHeader(path), path, snapshot, readTrailer(snapshot));
+			if(start >= 0) {
+				replay(path, drawing, start);
+			}
+		}
+		return drawing;
+	}
+
+	/**
+	 * Save a drawing as a new snapshot and start journaling
+	 * the changes made to it from there
+	 * @param snapshot Drawing file to write
+	 * @param drawing Drawing to save
+	 * @return The journal, which is attached to the drawing
+	 * @throws IOException If the drawing or journal cannot be written
+	 */
+	public static DrawingJournal create(Path snapshot, Drawing drawing) throws IOException {
+		drawing.getWriteLock().lock();
+		try {
+			drawing.setJournal(null);
+			long generation = newGeneration();
+			drawing.snapshot().write(snapshot, trailer(generation, 0, 0));
+			FileChannel channel = createJournal(journalPath(snapshot), snapshot, generation, null, 0, 0);
+			DrawingJournal journal = new DrawingJournal(snapshot, drawing, channel, generation);
+			drawing.setJournal(journal);
+			return journal;
+		}
+		finally {
+			drawing.getWriteLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the journal file that belongs to a drawing file
+	 * @param snapshot Drawing file
+	 * @return Path of its journal
+	 */
+	public static Path journalPath(Path snapshot) {
+		String name = snapshot.getFileName().toString();
+		if(name.endsWith(DrawingFile.EXTENSION)) {
+			name = name.substring(0, name.length() - DrawingFile.EXTENSION.length());
+		}
+		return snapshot.resolveSibling(name + EXTENSION);
+	}
+
+	/**
+	 * Get the drawing file the journal continues from
+	 * @return Path of the snapshot
+	 */
+	public Path getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Make sure every change is on disk, compacting the journal
+	 * into a new snapshot if it has grown large. If a change could
+	 * not be appended earlier, a full snapshot is written instead.
+	 * @return True if a new snapshot was written
+	 * @throws IOException If the journal or snapshot cannot be written
+	 */
+	public boolean save() throws IOException {
+		if(failure != null || channel.size() > Math.max(COMPACT_THRESHOLD, Files.size(snapshot) / 2)) {
+			compact();
+			return true;
+		}
+		channel.force(false);
+		return false;
+	}
+
+	/**
+	 * Write the whole drawing as a new snapshot and start a new journal
+	 * holding only the changes made while the snapshot was written
+	 * @throws IOException If the snapshot or journal cannot be written
+	 */
+	public void compact() throws IOException {
+		DrawingSnapshot shot = null;
+		long mark = 0;
+		drawing.getWriteLock().lock();
+		try {
+			if(failure == null) {
+				shot = drawing.snapshot();
+				mark = channel.position();
+			}
+		}
+		finally {
+			drawing.getWriteLock().unlock();
+		}
+		long next = newGeneration();
+		if(shot != null) {
+			// If this fails, the old snapshot and journal are untouched
+			shot.write(snapshot, trailer(next, generation, mark));
+		}
+		drawing.getWriteLock().lock();
+		try {
+			FileChannel nextChannel;
+			if(failure != null) {
+				// Changes are missing from the journal, so the snapshot must hold them all
+				drawing.snapshot().write(snapshot, trailer(next, 0, 0));
+				nextChannel = createJournal(path, snapshot, next, null, 0, 0);
+			}
+			else {
+				// If this fails, the old journal goes on from the snapshot's trailer
+				nextChannel = createJournal(path, snapshot, next, channel, mark, channel.position());
+			}
+			channel.close();
+			channel = nextChannel;
+			generation = next;
+			failure = null;
+		}
+		finally {
+			drawing.getWriteLock().unlock();
+		}
+	}
+
+	/**
+	 * Close the journal file. Changes made to the drawing afterwards
+	 * are not journaled, unless another journal has been opened for it.
+	 * @throws IOException If the file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		drawing.removeJournal(this);
+		channel.close();
+	}
+
+	/**
+	 * Record a shape added to the end of the drawing
+	 * @param shape The complete shape
+	 * @param offsetX Offset of the drawing in x
+	 * @param offsetY Offset of the drawing in y
+	 */
+	void added(Shape shape, int offsetX, int offsetY) {
+		int numVertices = shape.getVertexCount();
+		begin(ADD, 5 + numVertices * 8);
+		record.put(ShapeType.of(shape).getTag());
+		record.putInt(numVertices);
+		for(int j = 0; j < numVertices; j++) {
+			record.putInt(shape.getVertexX(j) + offsetX);
+			record.putInt(shape.getVertexY(j) + offsetY);
+		}
+		append();
+	}
+
+	/**
+	 * Record a shape removed from the drawing
+	 * @param i Index of the shape
+	 */
+	void removed(int i) {
+		begin(REMOVE, 4);
+		record.putInt(i);
+		append();
+	}
+
+	/**
+	 * Record a single shape being translated
+	 * @param i Index of the shape
+	 * @param dx Change in x
+	 * @param dy Change in y
+	 */
+	void translated(int i, int dx, int dy) {
+		begin(TRANSLATE, 12);
+		record.putInt(i);
+		record.putInt(dx);
+		record.putInt(dy);
+		append();
+	}
+
+	/**
+	 * Record the whole drawing being translated
+	 * @param dx Change in x
+	 * @param dy Change in y
+	 */
+	void translatedAll(int dx, int dy) {
+		begin(TRANSLATE_ALL, 8);
+		record.putInt(dx);
+		record.putInt(dy);
+		append();
+	}
+
+	/**
+	 * Start a record in the record buffer
+	 * @param op Operation code
+	 * @param size Size of the operation's data
+	 */
+	private void begin(byte op, int size) {
+		if(record.capacity() < size + 9) {
+			record = ByteBuffer.allocate(size + 9);
+		}
+		record.clear();
+		record.putInt(size + 1);
+		record.put(op);
+	}
+
+	/**
+	 * Add the checksum to the record in the buffer and append it to
+	 * the file. Errors are kept until the next save, so that editing
+	 * is never interrupted by a failing disk.
+	 */
+	private void append() {
+		if(failure != null) {
+			return;
+		}
+		crc.reset();
+		crc.update(record.array(), 4, record.position() - 4);
+		record.putInt((int)crc.getValue());
+		record.flip();
+		try {
+			while(record.hasRemaining()) {
+				channel.write(record);
+			}
+			Metrics.addBytesWritten(record.limit());
+		}
+		catch (IOException e) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * Create a journal for a snapshot, replacing any old journal
+	 * once the new one is complete and on disk
+	 * @param path Journal file to create
+	 * @param snapshot Drawing file the journal continues from
+	 * @param generation Generation in the snapshot's trailer
+	 * @param from Journal to copy records from, or null for none
+	 * @param start Position of the first record to copy
+	 * @param end Position after the last record to copy
+	 * @return The journal file, positioned at its end
+	 * @throws IOException If the journal cannot be written
+	 */
+	private static FileChannel createJournal(Path path, Path snapshot, long generation,
+			FileChannel from, long start, long end) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.putShort(VERSION);
+			header.putLong(generation);
+			header.putLong(Files.size(snapshot));
+			header.putLong(Files.getLastModifiedTime(snapshot).toMillis());
+			header.flip();
+			while(header.hasRemaining()) {
+				channel.write(header);
+			}
+			for(long position = start; from != null && position < end; ) {
+				position += from.transferTo(position, end - position, channel);
+			}
+			Metrics.addBytesWritten(channel.size());
+			channel.force(false);
+		}
+		catch (IOException e) {
+			DrawingFile.deleteQuietly(temp);
+			throw e;
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		DrawingFile.forceDirectory(path);
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		channel.position(channel.size());
+		return channel;
+	}
+
+	/**
+	 * Make a new generation number
+	 * @return Random number other than 0, which marks no generation
+	 */
+	private static long newGeneration() {
+		long generation;
+		do {
+			generation = ThreadLocalRandom.current().nextLong();
+		} while(generation == 0);
+		return generation;
+	}
+
+	/**
+	 * Make the trailer of a snapshot
+	 * @param generation Generation of the journal that will continue from the snapshot
+	 * @param previous Generation of the journal the snapshot holds the start of, or 0
+	 * @param length Length of that journal when the snapshot was taken
+	 * @return Trailer to write after the snapshot's index
+	 */
+	private static ByteBuffer trailer(long generation, long previous, long length) {
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+		trailer.putLong(generation);
+		trailer.putLong(previous);
+		trailer.putLong(length);
+		trailer.flip();
+		return trailer;
+	}
+
+	/**
+	 * Read the trailer of a snapshot
+	 * @param snapshot Drawing file
+	 * @return Generation, previous generation and length, or null if the snapshot was not written by a journal
+	 * @throws IOException If the file cannot be read or is not a drawing
+	 */
+	private static long[] readTrailer(Path snapshot) throws IOException {
+		ByteBuffer trailer = DrawingFile.readTrailer(snapshot, TRAILER_SIZE);
+		if(trailer.remaining() != TRAILER_SIZE) {
+			return null;
+		}
+		return new long[] {trailer.getLong(), trailer.getLong(), trailer.getLong()};
+	}
+
+	/**
+	 * Read the header of a journal
+	 * @param path Journal file
+	 * @return Generation, snapshot size and modification time,
+	 * or null if the file is not a journal of this version
+	 * @throws IOException If the file cannot be read
+	 */
+	private static long[] readHeader(Path path) throws IOException {
+		try(DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+			if(in.readInt() != MAGIC) {
+				return null;
+			}
+			if(in.readShort() != VERSION) {
+				return null;
+			}
+			return new long[] {in.readLong(), in.readLong(), in.readLong()};
+		}
+		catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Find the first record of a journal that a snapshot does not hold
+	 * @param header Header of the journal, or null if there is none
+	 * @param path Journal file
+	 * @param snapshot Drawing file
+	 * @param trailer Trailer of the snapshot, or null if it has none
+	 * @return Position of the record, or -1 if the journal does not continue from the snapshot
+	 * @throws IOException If the files cannot be read
+	 */
+	private static long findStart(long[] header, Path path, Path snapshot, long[] trailer) throws IOException {
+		if(header == null) {
+			return -1;
+		}
+		if(trailer == null) {
+			// Snapshots saved without a journal can only be matched by their size and time
+			boolean same = header[1] == Files.size(snapshot)
+					&& header[2] == Files.getLastModifiedTime(snapshot).toMillis();
+			return same ? HEADER_SIZE : -1;
+		}
+		if(header[0] == trailer[0]) {
+			return HEADER_SIZE;
+		}
+		if(header[0] == trailer[1] && trailer[2] >= HEADER_SIZE && trailer[2] <= Files.size(path)) {
+			return trailer[2];	// Compaction stopped before the journal was replaced
+		}
+		return -1;
+	}
+
+	/**
+	 * Apply every complete record in a journal to a drawing
+	 * @param path Journal file
+	 * @param drawing Drawing to change
+	 * @param start Position of the first record
+	 * @return Position after the last complete record
+	 * @throws IOException If the journal cannot be read or a record does not fit the drawing
+	 */
+	private static long replay(Path path, Drawing drawing, long start) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] data = new byte[256];
+		long position = start;
+		try(InputStream file = Files.newInputStream(path);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+			in.skipNBytes(start);
+			while(true) {
+				int size;
+				try {
+					size = in.readInt();
+					if(size < 1 || size > Files.size(path)) {
+						break;
+					}
+					if(data.length < size) {
+						data = new byte[Math.max(size, data.length * 2)];
+					}
+					in.readFully(data, 0, size);
+					crc.reset();
+					crc.update(data, 0, size);
+					if(in.readInt() != (int)crc.getValue()) {
+						break;
+					}
+				}
+				catch (EOFException e) {
+					break;
+				}
+				apply(drawing, ByteBuffer.wrap(data, 0, size), position);
+				position += size + 8;
+			}
+		}
+		Metrics.addBytesRead(position);
+		return position;
+	}
+
+	/**
+	 * Apply one journal record to a drawing
+	 * @param drawing Drawing to change
+	 * @param data Operation code and data of the record
+	 * @param position Position of the record in the journal, for errors
+	 * @throws IOException If the record does not fit the drawing
+	 */
+	private static void apply(Drawing drawing, ByteBuffer data, long position) throws IOException {
+		try {
+			switch(data.get()) {
+				case ADD :
+					ShapeType type = ShapeType.fromTag(data.get());
+					int numVertices = data.getInt();
+					if(type == null || numVertices < 0 || numVertices * 8L != data.remaining()) {
+						break;
+					}
+					ArrayList<Point> vertices = new ArrayList<Point>(numVertices);
+					for(int j = 0; j < numVertices; j++) {
+						vertices.add(new Point(data.getInt() - drawing.getOffsetX(), data.getInt() - drawing.getOffsetY()));
+					}
+					Shape shape = type.create();
+					shape.setVertices(vertices);
+					shape.initialize();
+					drawing.add(shape);
+					return;
+				case REMOVE :
+					drawing.remove(data.getInt());
+					return;
+				case TRANSLATE :
+					drawing.translate(data.getInt(), data.getInt(), data.getInt());
+					return;
+				case TRANSLATE_ALL :
+					drawing.translateAll(data.getInt(), data.getInt());
+					return;
+			}
+		}
+		catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+			// Falls through to the error below
+		}
+		throw new IOException("Corrupt journal record at " + position);
+	}
+}
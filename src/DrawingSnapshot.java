@@ -0,0 +1,232 @@
+import java.awt.Point;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The shapes, spatial index and offset of a drawing at a point in
+ * time, as taken by Drawing.snapshot(). The drawing never changes the
+ * list, index or shapes of a snapshot, so a snapshot can be read and
+ * searched on any number of threads while the drawing goes on being
+ * edited.
+ * @author Sunny Jiao
+ */
+public class DrawingSnapshot {
+
+	private final List<Shape> shapes;
+	private final SpatialIndex index;	// Index over the shapes that are not stored in a LazyShapeList
+	private final int offsetX;
+	private final int offsetY;
+	private final long version;
+	private final ChangeLog changes;	// Log of the drawing's recent changes, shared by all its snapshots
+
+	/**
+	 * Constructor
+	 * @param shapes Shapes in the drawing, which must not change from now on
+	 * @param index Index over the shapes, which must not change from now on
+	 * @param offsetX Translation of the whole drawing in x
+	 * @param offsetY Translation of the whole drawing in y
+	 * @param version Number of changes made to the drawing
+	 * @param changes Log of the drawing's recent changes
+	 */
+	DrawingSnapshot(List<Shape> shapes, SpatialIndex index, int offsetX, int offsetY, long version, ChangeLog changes) {
+		this.shapes = shapes;
+		this.index = index;
+		this.offsetX = offsetX;
+		this.offsetY = offsetY;
+		this.version = version;
+		this.changes = changes;
+	}
+
+	/**
+	 * Find where shapes were added, removed or translated between an
+	 * earlier version of the drawing and this snapshot, e.g. to redraw
+	 * only those parts. Translating the whole drawing is not a change
+	 * here, since it only moves the offset.
+	 * @param since Version of an earlier snapshot of the same drawing
+	 * @return x and y of the top left corner of each changed shape's bounding
+	 * box in turn, in shape coordinates, or null if the changes are not known
+	 * and every shape must be treated as changed
+	 */
+	public int[] getChangedCorners(long since) {
+		return changes.getCorners(since, version);
+	}
+
+	/**
+	 * Get the shapes in the drawing. The list must not be changed.
+	 * @return List of the shapes
+	 */
+	public List<Shape> getShapes() {
+		return shapes;
+	}
+
+	/**
+	 * Get a shape by its position in the list
+	 * @param i Index of the shape
+	 * @return The shape
+	 */
+	public Shape get(int i) {
+		return shapes.get(i);
+	}
+
+	/**
+	 * Get the number of shapes
+	 * @return Number of shapes
+	 */
+	public int size() {
+		return shapes.size();
+	}
+
+	/**
+	 * Get the translation of the whole drawing in x
+	 * @return Offset in x
+	 */
+	public int getOffsetX() {
+		return offsetX;
+	}
+
+	/**
+	 * Get the translation of the whole drawing in y
+	 * @return Offset in y
+	 */
+	public int getOffsetY() {
+		return offsetY;
+	}
+
+	/**
+	 * Get the number of changes made to the drawing when the snapshot was taken
+	 * @return Version of the drawing
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Get the bounding box of the whole drawing. Shapes in a
+	 * MappedDrawing or ShapeStore are not created to do so.
+	 * @return Bounding box in drawing coordinates, empty if there are no shapes
+	 */
+	public java.awt.Rectangle getBounds() {
+		java.awt.Rectangle bounds = new java.awt.Rectangle();
+		java.awt.Rectangle box = new java.awt.Rectangle();
+		for(int i = 0; i < shapes.size(); i++) {
+			if(shapes instanceof MappedDrawing) {
+				((MappedDrawing)shapes).getBounds(i, box);
+			}
+			else if(shapes instanceof ShapeStore) {
+				((ShapeStore)shapes).getBounds(i, box);
+			}
+			else {
+				box.setBounds(shapes.get(i).getBounds());
+			}
+			if(box.isEmpty()) {
+				continue;
+			}
+			if(bounds.isEmpty()) {
+				bounds.setBounds(box);
+			}
+			else {
+				bounds.add(box);
+			}
+		}
+		bounds.translate(offsetX, offsetY);
+		return bounds;
+	}
+
+	/**
+	 * Find the shapes whose bounding boxes intersect an area.
+	 * Stored shapes in a MappedDrawing or ShapeStore are found
+	 * through the list's index over their stored bounds, and created
+	 * if needed.
+	 * @param area Area to search, in drawing coordinates
+	 * @param result List the shapes are appended to
+	 * @return The result list
+	 */
+	public List<Shape> query(java.awt.Rectangle area, List<Shape> result) {
+		area = new java.awt.Rectangle(area.x - offsetX, area.y - offsetY, area.width, area.height);
+		index.query(area, result);
+		if(shapes instanceof LazyShapeList) {
+			((LazyShapeList)shapes).queryStored(area, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Find the shapes whose bounding boxes contain a point
+	 * @param p Point to search, in drawing coordinates
+	 * @param result List the shapes are appended to
+	 * @return The result list
+	 */
+	public List<Shape> query(Point p, List<Shape> result) {
+		p = new Point(p.x - offsetX, p.y - offsetY);
+		index.query(p, result);
+		if(shapes instanceof LazyShapeList) {
+			((LazyShapeList)shapes).queryStored(new java.awt.Rectangle(p.x, p.y, 1, 1), result);
+		}
+		return result;
+	}
+
+	/**
+	 * Find the shape under a point, e.g. to select it with the mouse.
+	 * Candidates are found with the spatial index and then tested
+	 * against their outlines (see Shape.isHit()). If several shapes
+	 * are hit, the one with the smallest bounding box is picked, since
+	 * a larger shape around it could still be picked elsewhere.
+	 * @param x x coordinate of the point, in drawing coordinates
+	 * @param y y coordinate of the point, in drawing coordinates
+	 * @param tolerance Distance from an outline that still counts as a hit
+	 * @return The shape, or null if no shape is hit
+	 */
+	public Shape pick(double x, double y, double tolerance) {
+		int x1 = (int)Math.floor(x - tolerance);
+		int y1 = (int)Math.floor(y - tolerance);
+		int x2 = (int)Math.floor(x + tolerance);
+		int y2 = (int)Math.floor(y + tolerance);
+		List<Shape> candidates = query(new java.awt.Rectangle(x1, y1, x2 - x1 + 1, y2 - y1 + 1), new ArrayList<Shape>());
+		Shape picked = null;
+		long pickedArea = Long.MAX_VALUE;
+		for(Shape shape : candidates) {
+			java.awt.Rectangle box = shape.getBounds();
+			long area = (long)box.width * box.height;
+			if(area < pickedArea && shape.isHit(x - offsetX, y - offsetY, tolerance)) {
+				picked = shape;
+				pickedArea = area;
+			}
+		}
+		return picked;
+	}
+
+	/**
+	 * Find the position of a shape in the list by identity. Shapes
+	 * in a MappedDrawing or ShapeStore are not created to do so.
+	 * @param shape Shape to find
+	 * @return Index of the shape, or -1 if it is not in the drawing
+	 */
+	public int indexOf(Shape shape) {
+		return shapes.indexOf(shape);
+	}
+
+	/**
+	 * Write the snapshot to a drawing file, with the offset folded
+	 * into the coordinates. The file is replaced atomically, so it
+	 * always holds a complete drawing.
+	 * @param path File to write
+	 * @throws IOException If the file cannot be written
+	 */
+	public void write(Path path) throws IOException {
+		DrawingFile.write(path, shapes, offsetX, offsetY);
+	}
+
+	/**
+	 * Write the snapshot to a drawing file, as write(Path) does,
+	 * followed by a trailer (see DrawingFile)
+	 * @param path File to write
+	 * @param trailer Bytes to write after the drawing
+	 * @throws IOException If the file cannot be written
+	 */
+	void write(Path path, ByteBuffer trailer) throws IOException {
+		DrawingFile.write(path, shapes, offsetX, offsetY, trailer);
+	}
+}
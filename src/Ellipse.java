@@ -1,161 +1,607 @@
-
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.awt.Point;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Ellipse2D;
-import java.text.DecimalFormat;
-import java.util.ArrayList;
-
-/**
- * Ellipse class
- * @author Sunny Jiao
- */
-public class Ellipse extends Shape {
-	
-	private double axis1;	// Length of first axis
-	private double axis2;	// Length of second axis
-	
-	/**
-	 * Constructor - The ends of the axis will
-	 * be considered as vertices in this program.
-	 */
-	public Ellipse() {
-		super(2,4);
-	}
-	
-	/**
-	 * Find the appropriate vertex to add when creating a shape,
-	 * relative to the cursor and in accordance with geometric rules.
-	 * Once the shape exceeds numFreelyDrawnPoints vertices, this
-	 * method will be called to find the appropriate vertex.
-	 * For Ellipse, points will form a parallelogram, which will
-	 * represent the ends of each axis.
-	 * @param cursor Point with the coordinates of the cursor
-	 * @return A vertex that conforms to the geometric rules of the shape
-	 */
-	@Override
-	public Point getRestrictedPoint(Point cursor) {
-		ArrayList<Point> vertices = getVertices();
-		Point mid = new Point((vertices.get(0).x + vertices.get(1).x) / 2,
-				(vertices.get(0).y + vertices.get(1).y) / 2);
-		
-		if(vertices.size() == 2) {	
-			double m = 1.0 * (vertices.get(1).y - vertices.get(0).y) / (vertices.get(1).x - vertices.get(0).x);
-			
-			// If dy > dx, draw horizontally
-			if(Math.abs(vertices.get(1).y - vertices.get(0).y) > Math.abs(vertices.get(1).x - vertices.get(0).x)){
-				int y = (int)((-1.0 / m) * (cursor.x - mid.x) + mid.y);
-				return new Point(cursor.x, y);
-			}
-			// dx > dy, draw vertically 
-			else {
-				int x = (int)((cursor.y - mid.y) / (-1.0 / m) + mid.x);
-				return new Point(x, cursor.y);
-			}
-		}
-		else {
-			// Last point
-			int dx = vertices.get(2).x - vertices.get(1).x;
-			int dy = vertices.get(2).y - vertices.get(1).y;
-			return new Point(vertices.get(0).x - dx, vertices.get(0).y - dy);
-		}
-	}
-	
-	/**
-	 * Calculate and set the lengths of the axis
-	 */
-	@Override
-	public void setAttributes() {
-		ArrayList<Point> vertices = getVertices();
-		Point mid = new Point((vertices.get(0).x + vertices.get(1).x) / 2,
-				(vertices.get(0).y + vertices.get(1).y) / 2);
-		axis1 = edgeLength(vertices.get(0),vertices.get(1));
-		axis2 = edgeLength(mid, vertices.get(3)) * 2;
-	}
-	
-	/**
-	 * Draw the ellipse using a rotated Ellipse2D.
-	 * @param g The Graphics object to draw to
-	 */
-	@Override
-	public void draw(Graphics g) {
-		ArrayList<Point> vertices = getVertices();
-		Point mid = new Point((vertices.get(0).x + vertices.get(1).x) / 2,
-				(vertices.get(0).y + vertices.get(1).y) / 2);
-		double theta = getAngle(vertices.get(0), mid);
-		AffineTransform at = new AffineTransform();
-		at.rotate(theta, mid.x, mid.y);
-		Ellipse2D e = new Ellipse2D.Double(mid.x - axis1/2, mid.y - axis2/2, axis1, axis2);
-		((Graphics2D)g).draw(at.createTransformedShape(e));
-	}
-	
-	/**
-	 * Draws a ghost of the Ellipse while adding
-	 * @param g Graphics object to draw to
-	 * @param cursor Point with the cursor's coordinates
-	 */
-	@Override
-	public void drawGhost(Graphics g, Point cursor) {
-		ArrayList<Point> vertices = getVertices();
-		
-		g.setColor(Color.RED);
-		if(vertices.size() == 1) {
-			// Draw first lin
-			g.drawLine(vertices.get(0).x, vertices.get(0).y, cursor.x, cursor.y);
-		}
-		else if(vertices.size() != 0){
-			Point restrictedPoint = getRestrictedPoint(cursor);
-			Point mid = new Point((vertices.get(0).x + vertices.get(1).x) / 2,
-					(vertices.get(0).y + vertices.get(1).y) / 2);
-			double theta = getAngle(vertices.get(0), mid);
-			AffineTransform at = new AffineTransform();
-			at.rotate(theta, mid.x, mid.y);
-			double tempAxis1 = edgeLength(vertices.get(0), vertices.get(1));
-			double tempAxis2 = edgeLength(mid, restrictedPoint) * 2;
-			Ellipse2D e = new Ellipse2D.Double(mid.x - tempAxis1/2, mid.y - tempAxis2/2, tempAxis1, tempAxis2);
-			((Graphics2D)g).draw(at.createTransformedShape(e));
-		}
-	}
-	
-	/**
-	 * Calculate the perimeter of the ellipse
-	 * @return Perimeter as a double
-	 */
-	@Override
-	public double calculatePerimeter() {
-		return 2 * Math.PI * Math.sqrt((axis1 * axis1 + axis2 * axis2) / 2);
-	}
-
-	/**
-	 * Calculate an approximation of the area of the ellipse
-	 * @return Area as a double
-	 */
-	@Override
-	public double calculateArea() {
-		return Math.PI * axis1 * axis2;
-	}
-	
-	/**
-	 * Calculate the angle between two points
-	 * @param p1 First point
-	 * @param p2 Second point
-	 * @return Angle between the two points relative to the x-axis in radians
-	 */
-	private static double getAngle(Point p1, Point p2) {
-	    return Math.atan2(p2.y - p1.y, p2.x - p1.x);
-	}
-	
-	/**
-	 * Get string representation of the shape. Overrides shape to include
-	 * ellipse specific attributes (i.e. axis lengths)
-	 * @return String with the shape's name, vertex points, area, perimeter, and side lengths
-	 */
-	@Override
-	public String toString() {
-		DecimalFormat df = new DecimalFormat("#.##");
-		return super.toString() + "Lengths:\nAxis 1: " + df.format(axis1)
-				+ "\nAxis 2: " + df.format(axis2);
-	}
-}
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+
+/**
+ * Ellipse class
+ * @author Sunny Jiao
+ */
+public class Ellipse extends Shape {
+	
+	private static final long serialVersionUID = 1378945690372908965L;	// Matches drawings saved before the binary format
+	private static final String[] ATTRIBUTE_NAMES = {"Axis 1", "Axis 2"};	// Names of the lengths, in the order of getAttribute()
+	private static final int MIN_DETAIL = 3;	// Polylines have between 2^MIN_DETAIL
+	private static final int MAX_DETAIL = 4;	// and 2^MAX_DETAIL segments
+	private static final double SEGMENT_PIXELS = 4;	// Longest segment of a polyline on screen
+	private static final int OVERLAP_SAMPLES = 16;	// Points on the outline checked before intersecting outlines
+	
+	private double axis1;	// Length of first axis
+	private double axis2;	// Length of second axis
+	private transient Ellipse2D.Double ghost;	// Unrotated outline reused by the ghost preview
+	private transient volatile java.awt.Shape outline;	// Cached rotated outline, null when out of date
+	private transient volatile Path2D.Float[] polylines;	// Cached flattened outlines for each level of detail
+	
+	/**
+	 * Constructor - The ends of the axis will
+	 * be considered as vertices in this program.
+	 */
+	public Ellipse() {
+		super(2,4);
+	}
+	
+	/**
+	 * Find the appropriate vertex to add when creating a shape,
+	 * relative to the cursor and in accordance with geometric rules.
+	 * Once the shape exceeds numFreelyDrawnPoints vertices, this
+	 * method will be called to find the appropriate vertex.
+	 * For Ellipse, points will form a parallelogram, which will
+	 * represent the ends of each axis.
+	 * @param cursor Point with the coordinates of the cursor
+	 * @param out Point to store the vertex in
+	 * @return out, set to a vertex that conforms to the geometric rules of the shape
+	 */
+	@Override
+	public Point getRestrictedPoint(Point cursor, Point out) {
+		ArrayList<Point> vertices = getVertices();
+		int midX = (vertices.get(0).x + vertices.get(1).x) / 2;
+		int midY = (vertices.get(0).y + vertices.get(1).y) / 2;
+		
+		if(vertices.size() == 2) {	
+			double m = 1.0 * (vertices.get(1).y - vertices.get(0).y) / (vertices.get(1).x - vertices.get(0).x);
+			
+			// If dy > dx, draw horizontally
+			if(Math.abs(vertices.get(1).y - vertices.get(0).y) > Math.abs(vertices.get(1).x - vertices.get(0).x)){
+				int y = (int)((-1.0 / m) * (cursor.x - midX) + midY);
+				out.setLocation(cursor.x, y);
+				return out;
+			}
+			// dx > dy, draw vertically 
+			else {
+				int x = (int)((cursor.y - midY) / (-1.0 / m) + midX);
+				out.setLocation(x, cursor.y);
+				return out;
+			}
+		}
+		else {
+			// Last point
+			int dx = vertices.get(2).x - vertices.get(1).x;
+			int dy = vertices.get(2).y - vertices.get(1).y;
+			out.setLocation(vertices.get(0).x - dx, vertices.get(0).y - dy);
+			return out;
+		}
+	}
+	
+	/**
+	 * Calculate and set the lengths of the axis
+	 */
+	@Override
+	public void setAttributes() {
+		ArrayList<Point> vertices = getVertices();
+		Point mid = new Point((vertices.get(0).x + vertices.get(1).x) / 2,
+				(vertices.get(0).y + vertices.get(1).y) / 2);
+		axis1 = edgeLength(vertices.get(0),vertices.get(1));
+		axis2 = edgeLength(mid, vertices.get(3)) * 2;
+	}
+	
+	/**
+	 * Draw the ellipse at its normal size
+	 * @param g The Graphics object to draw to
+	 */
+	@Override
+	public void draw(Graphics g) {
+		draw(g, 1);
+	}
+	
+	/**
+	 * Draw the ellipse from its cached outline. Ellipses that are
+	 * small on screen are drawn as a short cached polyline instead,
+	 * which is cheaper than the curves. Larger ones keep the curves,
+	 * since Java2D flattens those faster than it draws a polyline
+	 * fine enough to look smooth.
+	 * @param g The Graphics object to draw to
+	 * @param scale Screen pixels per drawing unit
+	 */
+	@Override
+	public void draw(Graphics g, double scale) {
+		((Graphics2D)g).draw(getOutline(scale));
+	}
+	
+	/**
+	 * Add the outline to a path, with the same detail as draw()
+	 * @param path Path to add a closed outline to
+	 * @param scale Screen pixels per drawing unit the path will be drawn at
+	 */
+	@Override
+	public void appendOutline(Path2D path, double scale) {
+		path.append(getOutline(scale), false);
+	}
+	
+	/**
+	 * Get the outline to draw at a scale: the curves for ellipses that
+	 * are large on screen, otherwise a short cached polyline
+	 * @param scale Screen pixels per drawing unit
+	 * @return Cached outline, which must not be changed
+	 */
+	private java.awt.Shape getOutline(double scale) {
+		// Rough perimeter on screen, which is all that is needed to pick the detail
+		double pixels = Math.PI * (axis1 + axis2) / 2 * scale;
+		if(pixels > (1 << MAX_DETAIL) * SEGMENT_PIXELS) {
+			return getOutline();
+		}
+		return getPolyline(pixels);
+	}
+	
+	/**
+	 * Draws a ghost of the Ellipse while adding
+	 * @param g Graphics object to draw to
+	 * @param cursor Point with the cursor's coordinates
+	 */
+	@Override
+	public void drawGhost(Graphics g, Point cursor) {
+		ArrayList<Point> vertices = getVertices();
+		
+		g.setColor(Color.RED);
+		if(vertices.size() == 1) {
+			// Draw first lin
+			g.drawLine(vertices.get(0).x, vertices.get(0).y, cursor.x, cursor.y);
+		}
+		else if(vertices.size() != 0){
+			// Rotate the graphics rather than the outline, so no new shape is created
+			Graphics2D g2 = (Graphics2D)g;
+			Point p0 = vertices.get(0);
+			Point p1 = vertices.get(1);
+			int midX = (p0.x + p1.x) / 2;
+			int midY = (p0.y + p1.y) / 2;
+			double a = edgeLength(p0, p1);
+			double b = getGhostAxis(cursor, midX, midY);
+			double theta = Math.atan2(midY - p0.y, midX - p0.x);
+			if(ghost == null) {
+				ghost = new Ellipse2D.Double();
+			}
+			ghost.setFrame(midX - a/2, midY - b/2, a, b);
+			g2.rotate(theta, midX, midY);
+			g2.draw(ghost);
+			g2.rotate(-theta, midX, midY);
+		}
+	}
+	
+	/**
+	 * Check if a point is inside the ellipse, or within the tolerance
+	 * of its outline, by turning it into the ellipse's own axes
+	 * @param x x coordinate of the point
+	 * @param y y coordinate of the point
+	 * @param tolerance Distance outside the outline that still counts as a hit
+	 * @return True if the point hits the ellipse
+	 */
+	@Override
+	public boolean isHit(double x, double y, double tolerance) {
+		if(getVertexCount() < getMaxVertices()) {
+			return super.isHit(x, y, tolerance);
+		}
+		// Same center and angle as the outline
+		int midX = (getVertexX(0) + getVertexX(1)) / 2;
+		int midY = (getVertexY(0) + getVertexY(1)) / 2;
+		double theta = Math.atan2(midY - getVertexY(0), midX - getVertexX(0));
+		double cos = Math.cos(theta);
+		double sin = Math.sin(theta);
+		double u = ((x - midX) * cos + (y - midY) * sin) / (axis1 / 2 + tolerance);
+		double v = (-(x - midX) * sin + (y - midY) * cos) / (axis2 / 2 + tolerance);
+		return u * u + v * v <= 1;
+	}
+	
+	/**
+	 * Check if a point is inside the ellipse
+	 * @param x x coordinate of the point
+	 * @param y y coordinate of the point
+	 * @return True if the point is inside the ellipse
+	 */
+	@Override
+	public boolean contains(double x, double y) {
+		if(isDegenerate()) {
+			return super.contains(x, y);
+		}
+		return isHit(x, y, 0);
+	}
+	
+	/**
+	 * Check if the ellipse intersects an area, using the ellipse's axes
+	 * rather than its flattened outline
+	 * @param area Area to check, in shape coordinates
+	 * @return True if they share at least one point
+	 */
+	@Override
+	public boolean intersects(java.awt.geom.Rectangle2D area) {
+		if(isDegenerate()) {
+			return super.intersects(area);
+		}
+		double[] xs = {area.getMinX(), area.getMaxX(), area.getMaxX(), area.getMinX()};
+		double[] ys = {area.getMinY(), area.getMinY(), area.getMaxY(), area.getMaxY()};
+		return reachesPolygon(xs, ys, 4);
+	}
+	
+	/**
+	 * Check if the ellipse and another shape intersect. Polygons are
+	 * tested against the ellipse's axes. Two ellipses overlap if a
+	 * center or a point sampled from an outline is inside the other
+	 * ellipse, and are apart if their shadows on the axes or on the
+	 * line between the centers do not meet; otherwise their outlines
+	 * are intersected.
+	 * @param other Shape to check, in the same coordinates as this shape
+	 * @return True if the shapes share at least one point
+	 */
+	@Override
+	public boolean overlaps(Shape other) {
+		if(isDegenerate()) {
+			return (other instanceof Ellipse && !((Ellipse)other).isDegenerate())
+					? other.overlaps(this) : overlapsPolygon(other);
+		}
+		if(other instanceof Ellipse && !((Ellipse)other).isDegenerate()) {
+			Ellipse ellipse = (Ellipse)other;
+			if(contains(ellipse.getCenterX(), ellipse.getCenterY())
+					|| ellipse.contains(getCenterX(), getCenterY())) {
+				return true;
+			}
+			double dx = ellipse.getCenterX() - getCenterX();
+			double dy = ellipse.getCenterY() - getCenterY();
+			double[] angles = {getAngle(), getAngle() + Math.PI / 2, ellipse.getAngle(),
+					ellipse.getAngle() + Math.PI / 2, Math.atan2(dy, dx)};
+			for(double angle : angles) {
+				double cos = Math.cos(angle);
+				double sin = Math.sin(angle);
+				if(Math.abs(dx * cos + dy * sin) > getReach(cos, sin) + ellipse.getReach(cos, sin)) {
+					return false;
+				}
+			}
+			if(hasOutlinePointIn(ellipse) || ellipse.hasOutlinePointIn(this)) {
+				return true;
+			}
+			Area area = new Area(getOutline());
+			area.intersect(new Area(ellipse.getOutline()));
+			return !area.isEmpty();
+		}
+		int n = other.getVertexCount();
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		for(int i = 0; i < n; i++) {
+			xs[i] = other.getVertexX(i);
+			ys[i] = other.getVertexY(i);
+		}
+		return reachesPolygon(xs, ys, n);
+	}
+	
+	/**
+	 * Check if a polygon shares a point with the ellipse, by turning
+	 * it into coordinates where the ellipse is the unit circle
+	 * @param xs x coordinates of the polygon's corners, which are changed
+	 * @param ys y coordinates of the polygon's corners, which are changed
+	 * @param n Number of corners
+	 * @return True if the polygon reaches the ellipse or surrounds its center
+	 */
+	private boolean reachesPolygon(double[] xs, double[] ys, int n) {
+		if(n == 0) {
+			return false;
+		}
+		double midX = getCenterX();
+		double midY = getCenterY();
+		double theta = getAngle();
+		double cos = Math.cos(theta);
+		double sin = Math.sin(theta);
+		for(int i = 0; i < n; i++) {
+			double dx = xs[i] - midX;
+			double dy = ys[i] - midY;
+			xs[i] = (dx * cos + dy * sin) / (axis1 / 2);
+			ys[i] = (-dx * sin + dy * cos) / (axis2 / 2);
+		}
+		boolean surrounds = false;
+		for(int i = 0, j = n - 1; i < n; j = i++) {
+			if(segmentDistanceSq(0, 0, xs[j], ys[j], xs[i], ys[i]) <= 1) {
+				return true;
+			}
+			if((ys[j] > 0) != (ys[i] > 0) && 0 < xs[j] - ys[j] * (xs[i] - xs[j]) / (ys[i] - ys[j])) {
+				surrounds = !surrounds;
+			}
+		}
+		return surrounds;
+	}
+	
+	/**
+	 * Get the angle of the first axis
+	 * @return Angle relative to the x-axis in radians
+	 */
+	private double getAngle() {
+		return Math.atan2(getCenterY() - getVertexY(0), getCenterX() - getVertexX(0));
+	}
+	
+	/**
+	 * Find how far the ellipse reaches from its center along a direction
+	 * @param cos Cosine of the direction's angle
+	 * @param sin Sine of the direction's angle
+	 * @return Half the length of the ellipse's shadow on a line in the direction
+	 */
+	private double getReach(double cos, double sin) {
+		double theta = getAngle();
+		double along = axis1 / 2 * (cos * Math.cos(theta) + sin * Math.sin(theta));
+		double across = axis2 / 2 * (sin * Math.cos(theta) - cos * Math.sin(theta));
+		return Math.sqrt(along * along + across * across);
+	}
+	
+	/**
+	 * Check if any of a few evenly spaced points on the outline
+	 * is inside another ellipse
+	 * @param other Ellipse to check
+	 * @return True if a point is inside, which means the ellipses overlap
+	 */
+	private boolean hasOutlinePointIn(Ellipse other) {
+		double theta = getAngle();
+		double cos = Math.cos(theta);
+		double sin = Math.sin(theta);
+		for(int i = 0; i < OVERLAP_SAMPLES; i++) {
+			double t = 2 * Math.PI * i / OVERLAP_SAMPLES;
+			double ex = axis1 / 2 * Math.cos(t);
+			double ey = axis2 / 2 * Math.sin(t);
+			if(other.contains(getCenterX() + ex * cos - ey * sin, getCenterY() + ex * sin + ey * cos)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Get the x coordinate of the center, which is
+	 * halfway along the first axis
+	 * @return x coordinate of the center
+	 */
+	private int getCenterX() {
+		return (getVertexX(0) + getVertexX(1)) / 2;
+	}
+	
+	/**
+	 * Get the y coordinate of the center, which is
+	 * halfway along the first axis
+	 * @return y coordinate of the center
+	 */
+	private int getCenterY() {
+		return (getVertexY(0) + getVertexY(1)) / 2;
+	}
+	
+	/**
+	 * Check if the ellipse cannot be tested against its axes, because
+	 * it is still being drawn or one of its axes has no length
+	 * @return True if the ellipse should be tested as a polygon
+	 */
+	private boolean isDegenerate() {
+		return getVertexCount() < getMaxVertices() || axis1 == 0 || axis2 == 0;
+	}
+	
+	/**
+	 * Calculate the bounding box of the rotated outline once
+	 * the axes are known, since the outline extends past the
+	 * ends of the axes
+	 * @return New bounding box of the ellipse
+	 */
+	@Override
+	protected java.awt.Rectangle computeBounds() {
+		if(getVertices().size() < getMaxVertices() || axis1 == 0) {
+			return super.computeBounds();
+		}
+		java.awt.Rectangle box = getOutline().getBounds();
+		box.width++;
+		box.height++;
+		return box;
+	}
+	
+	/**
+	 * Get the bounding box of the ghost drawn by drawGhost(),
+	 * calculated from the axes of the rotated ellipse
+	 * @param cursor Point with the cursor's coordinates
+	 * @param box Rectangle to store the bounding box in
+	 * @return box, set to the bounding box of the ghost
+	 */
+	@Override
+	public java.awt.Rectangle getGhostBounds(Point cursor, java.awt.Rectangle box) {
+		ArrayList<Point> vertices = getVertices();
+		if(vertices.size() < 2) {
+			return super.getGhostBounds(cursor, box);
+		}
+		Point p0 = vertices.get(0);
+		Point p1 = vertices.get(1);
+		int midX = (p0.x + p1.x) / 2;
+		int midY = (p0.y + p1.y) / 2;
+		double a = edgeLength(p0, p1) / 2;
+		double b = getGhostAxis(cursor, midX, midY) / 2;
+		double theta = Math.atan2(midY - p0.y, midX - p0.x);
+		double cos = Math.cos(theta);
+		double sin = Math.sin(theta);
+		// Half the width and height of the box around a rotated ellipse, plus a
+		// pixel for the curves Java2D draws it with, which bulge out slightly
+		double halfWidth = Math.sqrt(a * a * cos * cos + b * b * sin * sin) + 1;
+		double halfHeight = Math.sqrt(a * a * sin * sin + b * b * cos * cos) + 1;
+		int x1 = (int)Math.floor(midX - halfWidth);
+		int y1 = (int)Math.floor(midY - halfHeight);
+		int x2 = (int)Math.ceil(midX + halfWidth);
+		int y2 = (int)Math.ceil(midY + halfHeight);
+		box.setBounds(x1, y1, x2 - x1 + 1, y2 - y1 + 1);
+		return box;
+	}
+	
+	/**
+	 * Get the length of the ghost's second axis, using
+	 * the restricted point as the end of the axis
+	 * @param cursor Point with the cursor's coordinates
+	 * @param midX x coordinate of the center of the ellipse
+	 * @param midY y coordinate of the center of the ellipse
+	 * @return Length of the second axis
+	 */
+	private double getGhostAxis(Point cursor, int midX, int midY) {
+		Point restrictedPoint = getRestrictedPoint(cursor, getGhostPoint());
+		double dx = restrictedPoint.x - midX;
+		double dy = restrictedPoint.y - midY;
+		return Math.sqrt(dx * dx + dy * dy) * 2;
+	}
+	
+	/**
+	 * Discard the cached bounding box and outlines after
+	 * the vertices change
+	 */
+	@Override
+	protected void invalidateBounds() {
+		super.invalidateBounds();
+		outline = null;
+		polylines = null;
+	}
+	
+	/**
+	 * Get the outline of the ellipse, centered between the first two
+	 * vertices and rotated to line up with them. The outline is cached
+	 * until the vertices change, and must not be changed.
+	 * @return Rotated outline of the ellipse
+	 */
+	@Override
+	public java.awt.Shape getOutline() {
+		if(isDegenerate()) {
+			return super.getOutline();
+		}
+		java.awt.Shape cached = outline;
+		if(cached == null) {
+			ArrayList<Point> vertices = getVertices();
+			Point mid = new Point((vertices.get(0).x + vertices.get(1).x) / 2,
+					(vertices.get(0).y + vertices.get(1).y) / 2);
+			double theta = getAngle(vertices.get(0), mid);
+			AffineTransform at = new AffineTransform();
+			at.rotate(theta, mid.x, mid.y);
+			Ellipse2D e = new Ellipse2D.Double(mid.x - axis1/2, mid.y - axis2/2, axis1, axis2);
+			cached = at.createTransformedShape(e);
+			outline = cached;
+		}
+		return cached;
+	}
+	
+	/**
+	 * Get a polyline that follows the outline, with the number of
+	 * segments picked so no segment is longer than a few pixels
+	 * on screen. Polylines are cached until the vertices change. The
+	 * cache is replaced rather than filled in place, so shapes can be
+	 * drawn from several threads at once.
+	 * @param pixels Perimeter of the ellipse on screen
+	 * @return Closed polyline around the ellipse
+	 */
+	private Path2D.Float getPolyline(double pixels) {
+		int detail = MIN_DETAIL;
+		while(detail < MAX_DETAIL && (1 << detail) * SEGMENT_PIXELS < pixels) {
+			detail++;
+		}
+		Path2D.Float[] cache = polylines;
+		if(cache == null) {
+			cache = new Path2D.Float[MAX_DETAIL - MIN_DETAIL + 1];
+		}
+		Path2D.Float polyline = cache[detail - MIN_DETAIL];
+		if(polyline == null) {
+			polyline = createPolyline(1 << detail);
+			cache = cache.clone();
+			cache[detail - MIN_DETAIL] = polyline;
+			polylines = cache;
+		}
+		return polyline;
+	}
+	
+	/**
+	 * Create a polyline through evenly spaced points on the outline
+	 * @param segments Number of segments in the polyline
+	 * @return Closed polyline around the ellipse
+	 */
+	private Path2D.Float createPolyline(int segments) {
+		ArrayList<Point> vertices = getVertices();
+		double midX = (vertices.get(0).x + vertices.get(1).x) / 2;
+		double midY = (vertices.get(0).y + vertices.get(1).y) / 2;
+		double theta = Math.atan2(midY - vertices.get(0).y, midX - vertices.get(0).x);
+		double cos = Math.cos(theta);
+		double sin = Math.sin(theta);
+		Path2D.Float polyline = new Path2D.Float(Path2D.WIND_NON_ZERO, segments + 1);
+		for(int i = 0; i < segments; i++) {
+			double t = 2 * Math.PI * i / segments;
+			double ex = axis1 / 2 * Math.cos(t);
+			double ey = axis2 / 2 * Math.sin(t);
+			double x = midX + ex * cos - ey * sin;
+			double y = midY + ex * sin + ey * cos;
+			if(i == 0) {
+				polyline.moveTo(x, y);
+			}
+			else {
+				polyline.lineTo(x, y);
+			}
+		}
+		polyline.closePath();
+		return polyline;
+	}
+	
+	/**
+	 * Calculate the perimeter of the ellipse
+	 * @return Perimeter as a double
+	 */
+	@Override
+	public double calculatePerimeter() {
+		return 2 * Math.PI * Math.sqrt((axis1 * axis1 + axis2 * axis2) / 2);
+	}
+
+	/**
+	 * Calculate an approximation of the area of the ellipse
+	 * @return Area as a double
+	 */
+	@Override
+	public double calculateArea() {
+		return Math.PI * axis1 * axis2;
+	}
+	
+	/**
+	 * Calculate the angle between two points
+	 * @param p1 First point
+	 * @param p2 Second point
+	 * @return Angle between the two points relative to the x-axis in radians
+	 */
+	private static double getAngle(Point p1, Point p2) {
+	    return Math.atan2(p2.y - p1.y, p2.x - p1.x);
+	}
+	
+	/**
+	 * Get the number of lengths reported for the shape (i.e. axis lengths)
+	 * @return Number of lengths
+	 */
+	@Override
+	public int getAttributeCount() {
+		return ATTRIBUTE_NAMES.length;
+	}
+	
+	/**
+	 * Get the name of a length
+	 * @param i Index of the length
+	 * @return Name of the length
+	 */
+	@Override
+	public String getAttributeName(int i) {
+		return ATTRIBUTE_NAMES[i];
+	}
+	
+	/**
+	 * Get the value of a length
+	 * @param i Index of the length
+	 * @return Value of the length
+	 */
+	@Override
+	public double getAttribute(int i) {
+		switch(i) {
+			case 0 :
+				return axis1;
+			case 1 :
+				return axis2;
+			default :
+				throw new IndexOutOfBoundsException("Attribute: " + i);
+		}
+	}
+}
@@ -0,0 +1,239 @@
+import java.awt.Point;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/**
+ * Freehand - Closed outline through any number of vertices, drawn by
+ * dragging the mouse. The stroke ends when the mouse is released, and
+ * the outline is closed from the last vertex back to the first.
+ *
+ * A drag reports far more points than are needed to show its path, so
+ * the stroke is simplified while it is drawn rather than afterwards:
+ * each point either extends the current run from the last vertex or
+ * starts a new one. A run is extended as long as a line from its start
+ * to the new point passes within TOLERANCE of every point in the run,
+ * which is tracked as the range of directions that still fit, so each
+ * point is checked in constant time and no points are buffered. The
+ * result is close to what Douglas-Peucker gives for the whole stroke.
+ * @author Sunny Jiao
+ */
+public class Freehand extends Shape {
+
+	private static final long serialVersionUID = -4022771396183052811L;
+	static final double TOLERANCE = 2;	// Farthest a dropped point can be from the simplified outline
+	static final int MIN_VERTICES = 3;	// Fewest vertices that enclose an area
+
+	private double doubleArea;		// Twice the signed area enclosed by the outline
+	private double perimeter;		// Length of the closed outline
+	private transient boolean stroking;	// True from the first point of a stroke until it is finished
+	private transient boolean hasEnd;	// True if a point of the current run has not been kept yet
+	private transient int endX;			// Last point of the current run, kept as a vertex when the run ends
+	private transient int endY;
+	private transient boolean hasRange;	// True once the run has a point farther than TOLERANCE from its start
+	private transient double baseAngle;	// Direction of the first such point
+	private transient double low;		// Range of directions, relative to baseAngle, that fit every point of the run
+	private transient double high;
+	private transient double reach;		// Farthest distance of a point of the run from its start
+
+	/**
+	 * Constructor - Every point of a freehand outline is freely
+	 * drawn and there is no fixed number of vertices
+	 */
+	public Freehand() {
+		super(Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Add the next point of the stroke. The first point becomes the
+	 * first vertex; later points are only kept as vertices once the
+	 * stroke turns away from them.
+	 * @param cursor Point with cursor's coordinates
+	 * @param log Stream to print messages to, or null for none
+	 * @return True if the stroke has already been finished
+	 */
+	@Override
+	public boolean addPoint(Point cursor, PrintStream log) {
+		if(isComplete()) {
+			return true;
+		}
+		ArrayList<Point> vertices = getVertices();
+		if(!stroking) {
+			vertices.clear();
+			vertices.add(new Point(cursor.x, cursor.y));
+			invalidateBounds();
+			stroking = true;
+			startRun();
+			return false;
+		}
+		if(hasEnd && cursor.x == endX && cursor.y == endY) {
+			return false;
+		}
+		Point start = vertices.get(vertices.size() - 1);
+		if(!extendRun(start, cursor.x, cursor.y)) {
+			// The stroke turned, so the last point of the run is a corner
+			Point corner = new Point(endX, endY);
+			vertices.add(corner);
+			invalidateBounds();
+			startRun();
+			extendRun(corner, cursor.x, cursor.y);
+		}
+		endX = cursor.x;
+		endY = cursor.y;
+		hasEnd = true;
+		return false;
+	}
+
+	/**
+	 * End the stroke, keeping the last point of the current run unless
+	 * it closes the outline onto the first vertex. A stroke with too
+	 * few vertices to enclose an area is discarded, so the shape can
+	 * be drawn again.
+	 * @return True if the shape is complete
+	 */
+	public boolean finish() {
+		if(!stroking) {
+			return isComplete();
+		}
+		ArrayList<Point> vertices = getVertices();
+		Point first = vertices.get(0);
+		if(hasEnd && first.distanceSq(endX, endY) > TOLERANCE * TOLERANCE) {
+			vertices.add(new Point(endX, endY));
+			invalidateBounds();
+		}
+		stroking = false;
+		hasEnd = false;
+		if(vertices.size() < MIN_VERTICES) {
+			vertices.clear();
+			invalidateBounds();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Check if the stroke has been finished with enough vertices
+	 * @return True if the shape is complete
+	 */
+	@Override
+	public boolean isComplete() {
+		return !stroking && getVertexCount() >= MIN_VERTICES;
+	}
+
+	/**
+	 * Start a new run from the last vertex
+	 */
+	private void startRun() {
+		hasEnd = false;
+		hasRange = false;
+		reach = 0;
+	}
+
+	/**
+	 * Try to add a point to the current run, narrowing the range of
+	 * directions from the start of the run that pass within TOLERANCE
+	 * of every point so far
+	 * @param start First point of the run
+	 * @param x x coordinate of the point
+	 * @param y y coordinate of the point
+	 * @return True if the point fits the run, false if a new run must be started
+	 */
+	private boolean extendRun(Point start, int x, int y) {
+		double dx = x - start.x;
+		double dy = y - start.y;
+		double distance = Math.sqrt(dx * dx + dy * dy);
+		// A stroke that doubles back has to keep the point where it turned
+		if(distance < reach - TOLERANCE) {
+			return false;
+		}
+		reach = Math.max(reach, distance);
+		if(distance <= TOLERANCE) {
+			return true;	// Any direction passes close enough to the point
+		}
+		double angle = Math.atan2(dy, dx);
+		double spread = Math.asin(TOLERANCE / distance);
+		if(!hasRange) {
+			hasRange = true;
+			baseAngle = angle;
+			low = -spread;
+			high = spread;
+			return true;
+		}
+		double relative = Math.IEEEremainder(angle - baseAngle, 2 * Math.PI);
+		if(relative < low || relative > high) {
+			return false;
+		}
+		low = Math.max(low, relative - spread);
+		high = Math.min(high, relative + spread);
+		return true;
+	}
+
+	/**
+	 * Every point of a freehand outline is unrestricted
+	 * @param cursor Point with the coordinates of the cursor
+	 * @param out Point to store the vertex in
+	 * @return out, set to the cursor
+	 */
+	@Override
+	public Point getRestrictedPoint(Point cursor, Point out) {
+		out.setLocation(cursor);
+		return out;
+	}
+
+	/**
+	 * Set the ArrayList of vertices, ending any stroke in progress
+	 * @param vertices ArrayList to set from
+	 */
+	@Override
+	public void setVertices(ArrayList<Point> vertices) {
+		super.setVertices(vertices);
+		stroking = false;
+		hasEnd = false;
+	}
+
+	/**
+	 * Calculate the area and perimeter together in one pass over the
+	 * vertices, using the shoelace formula for the area. An outline
+	 * that crosses itself has the area of its loops added or taken
+	 * away according to their direction.
+	 */
+	@Override
+	public void setAttributes() {
+		int n = getVertexCount();
+		double sum = 0;
+		double length = 0;
+		if(n > 0) {
+			int x1 = getVertexX(n - 1);
+			int y1 = getVertexY(n - 1);
+			for(int i = 0; i < n; i++) {
+				int x2 = getVertexX(i);
+				int y2 = getVertexY(i);
+				sum += (double)x1 * y2 - (double)x2 * y1;
+				double dx = x2 - x1;
+				double dy = y2 - y1;
+				length += Math.sqrt(dx * dx + dy * dy);
+				x1 = x2;
+				y1 = y2;
+			}
+		}
+		doubleArea = sum;
+		perimeter = length;
+	}
+
+	/**
+	 * Get the perimeter found by setAttributes()
+	 * @return Perimeter as a double
+	 */
+	@Override
+	public double calculatePerimeter() {
+		return perimeter;
+	}
+
+	/**
+	 * Get the area found by setAttributes()
+	 * @return Area as a double
+	 */
+	@Override
+	public double calculateArea() {
+		return Math.abs(doubleArea) / 2;
+	}
+}
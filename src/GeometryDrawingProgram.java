@@ -1,423 +1,1020 @@
-
-import javax.swing.JFrame;
-import javax.swing.JPanel;
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.MouseInfo;
-import java.awt.Point;
-import java.awt.event.MouseEvent;
-import java.awt.event.MouseListener;
-import java.awt.event.WindowEvent;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.Scanner;
-import java.util.ArrayList;
-
-/**
- * Geometry Drawing Program - ISC4UE
- * This class contains the main method
- * and static variables for the program
- * @author Sunny Jiao
- */
-class GeometryDrawingProgram {
-	
-	private static JFrame frame;
-	private static ArrayList<Shape> shapeList;	// ArrayList containing all shapes
-	private static String shapeToAdd = "";		
-	private static Shape currentShape;
-	private static Scanner input;
-	private static boolean isAdding = false;	// Flag to indicate adding process
-
-	/**
-	 * Main method
-	 * @param args Command line arguments
-	 */
-	public static void main(String[] args) {
-		
-		shapeList = new ArrayList<Shape>();
-		
-		GeometryScreen gs = new GeometryScreen();
-		input = new Scanner(System.in);
-
-		// Main loop
-		do {
-			printMenu();
-			int select = getIntegerInput();
-			switch(select) {
-				case 1 :	// Add shape
-					isAdding = true;
-					printAddChoice();
-					int select2 = getIntegerInput();
-					System.out.println("Click to add a point.");
-					switch(select2) {
-						case 1 :
-							shapeToAdd = "Trapezoid";
-							shapeList.add(new Trapezoid());
-							break;
-						case 2 :
-							shapeToAdd = "Parallelogram";
-							shapeList.add(new Parallelogram());
-							break;
-						case 3 :
-							shapeToAdd = "Rhombus";
-							shapeList.add(new Rhombus());
-							break;
-						case 4 :
-							shapeToAdd = "Rectangle";
-							shapeList.add(new Rectangle());
-							break;
-						case 5 :
-							shapeToAdd = "Square";
-							shapeList.add(new Square());
-							break;
-						case 6 :
-							shapeToAdd = "Scalene Triangle";
-							shapeList.add(new ScaleneTriangle());
-							break;
-						case 7 :
-							shapeToAdd = "Iscosceles Triangle";
-							shapeList.add(new IsoscelesTriangle());
-							break;
-						case 8 :
-							shapeToAdd = "Equilateral Triangle";
-							shapeList.add(new EquilateralTriangle());
-							break;
-						case 9 :
-							shapeToAdd = "Ellipse";
-							shapeList.add(new Ellipse());
-							break;
-						case 10 :
-							shapeToAdd = "Circle";
-							shapeList.add(new Circle());
-							break;
-						default :
-							shapeToAdd = "None";
-							isAdding = false;
-					}
-					System.out.println("Shape selected: " + shapeToAdd);
-					if(isAdding) {
-						// Create reference to the shape; used by draw method
-						currentShape = shapeList.get(shapeList.size()-1);
-					}				
-					// Refresh graphics panel until shape is made with mouse
-					while(isAdding) {
-						frame.repaint();
-					}
-					break;				
-				case 2 : // Remove shape
-					removeShape();
-					break;
-				case 3 : // Translate single shape
-					translateShape();
-					break;				
-				case 4 : // Translate drawing
-					translateDrawing();
-					break;				
-				case 5 : // Display list of shapes and their data
-					printShapeData();
-					break;					
-				case 6 : // Save drawing to a file
-					saveDrawing();
-					break;					
-				case 7 : // Load drawing from a file
-					loadDrawing();
-					break;
-				case 8 : // Quit program
-					frame.dispatchEvent(new WindowEvent(frame, WindowEvent.WINDOW_CLOSING));
-					break;
-				default :
-					System.out.println("Invalid option");
-					break;
-			}
-			frame.repaint(); // Update the screen
-		} while(true);
-
-	}
-	
-	/**
-	 * Print the menu
-	 */
-	private static void printMenu() {
-		System.out.println("\n1. Add Shape");
-		System.out.println("2. Remove Shape");
-		System.out.println("3. Translate Shape");
-		System.out.println("4. Translate Drawing");
-		System.out.println("5. Display Shape Data");
-		System.out.println("6. Save Drawing");
-		System.out.println("7. Load Drawing");
-		System.out.print("8. Quit\n\n> ");
-	}
-	
-	/**
-	 * Print the choices for adding shapes
-	 */
-	private static void printAddChoice() {
-		System.out.println("\nSelect shape to add:");
-		System.out.println("1. Trapezoid\t\t2. Parallelogram");
-		System.out.println("3. Rhombus\t\t4. Rectangle");
-		System.out.println("5. Square\t\t6. Scalene Triangle");
-		System.out.println("7. Iscosceles Triangle\t8. Equilateral Triangle");
-		System.out.println("9. Ellipse\t\t10. Circle");
-		System.out.print("11. Back\n\n> ");
-	}
-	
-	/**
-	 * Print the choices for removing shapes
-	 */
-	private static void removeShape() {
-		if(shapeList.size() > 0) {
-			printShapeData();
-			System.out.print("Select a shape to remove\n\n> ");
-			int select = input.nextInt();
-			if(select < shapeList.size() && select >= 0) {
-				System.out.println(shapeList.get(select).getClass().getSimpleName()+ " removed.");
-				shapeList.remove(select);
-			}
-			else {
-				System.out.println("Invalid number.");
-			}
-		}
-		else {
-			System.out.println("No shapes to remove.");
-		}
-	}
-	
-	/**
-	 * Translate a specific shape
-	 */
-	private static void translateShape() {
-		if(shapeList.size() > 0) {
-			printShapeData();
-			System.out.print("Select a shape to translate\n\n> ");
-			int select = input.nextInt();
-			if(select < shapeList.size() && select >= 0) {
-				System.out.print("Input dx and dy\n\n> ");
-				int dx = input.nextInt();
-				int dy = input.nextInt();
-				shapeList.get(select).translate(dx,dy);
-				System.out.println(shapeList.get(select).getClass()+ " has been translated.");
-			}
-			else {
-				System.out.println("Invalid number.");
-			}
-		}
-		else {
-			System.out.println("No shapes to translate.");
-		}
-	}
-	
-	/**
-	 * Translate entire drawing
-	 */
-	private static void translateDrawing() {
-		if(shapeList.size() > 0) {
-			System.out.print("Input dx and dy\n\n> ");
-			int dx2 = input.nextInt();
-			int dy2 = input.nextInt();
-			for(Shape s : shapeList) {
-				s.translate(dx2,dy2);
-			}
-			System.out.println(shapeList.size() + " shapes have been translated.");
-		}
-		else {
-			System.out.println("No shapes to translate.");
-		}
-	}
-	
-	/**
-	 * Print data about each shape
-	 */
-	private static void printShapeData() {
-		if(shapeList.size() > 0) {
-			for(int i = 0; i < shapeList.size(); i++) {
-				System.out.println(i + ": " + shapeList.get(i) + "\n");
-			}
-		}
-		else {
-			System.out.println("No shapes to display.");
-		}
-	}
-	
-	/**
-	 * Create a serialization of the shape ArrayList
-	 * and save it to a .ser file
-	 */
-	private static void saveDrawing() {
-		System.out.print("Enter drawing name:\n\n> ");
-		input.nextLine();
-		String name = input.nextLine();
-		try {
-			FileOutputStream file = new FileOutputStream(name + ".ser");
-			ObjectOutputStream out = new ObjectOutputStream(file);
-			out.writeObject(shapeList);
-	        out.close();
-	        file.close();
-	        System.out.println("Drawing saved as " + name + ".ser");
-		}
-		catch (IOException e) {
-			e.printStackTrace();
-		}
-	}
-	
-	/**
-	 * Read a serialized ArrayList from the working directory
-	 * and reinitialize the shape array
-	 */
-	private static void loadDrawing() {
-		System.out.print("Enter drawing name:\n\n> ");
-		input.nextLine();
-		String name = input.nextLine();
-		try {
-	         FileInputStream file = new FileInputStream(name + ".ser");
-	         ObjectInputStream in = new ObjectInputStream(file);
-	         shapeList = (ArrayList<Shape>) in.readObject();
-	         in.close();
-	         file.close();
-	         System.out.println(name + ".ser has been loaded.");
-	    }
-		catch (IOException e) {
-			System.out.println("Invalid file.");
-	    }
-		catch (ClassNotFoundException c) {
-			System.out.println("Class not found.");
-	    }
-	}
-	
-	/**
-	 * Repeatedly ask for an integer input 
-	 * until one is properly given
-	 * @return An integer from the user
-	 */
-	private static int getIntegerInput() {
-		int select;
-		while(true) {
-			try {
-				select = Integer.parseInt(input.next());
-				break;
-			}
-			catch (NumberFormatException e) {
-				System.out.println("Invalid input.");
-			}
-		}
-		return select;
-	}
-
-	/**
-	 * Contains and initializes the main JPanel
-	 * @author Sunny Jiao
-	 */
-	public static class GeometryScreen {
-
-		/**
-		 * Constructor - Initializes the JFrame
-		 */
-		GeometryScreen() {
-			frame = new JFrame("Geometry Drawing Program 2.0");
-			// Create a new "custom" panel for graphics based on the inner class below
-			JPanel graphicsPanel = new GraphicsPanel();
-			// Add the panel and the frame to the window
-			frame.getContentPane().add(graphicsPanel);
-			frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-			frame.setSize(1080,720);
-			frame.setUndecorated(false);  //Set to true to remove title bar
-			frame.setVisible(true);
-		} 
-
-		/**
-		 * Main panel for the graphics display
-		 * @author Sunny Jiao
-		 */
-		public static class GraphicsPanel extends JPanel implements MouseListener {
-			
-			private Point cursor;	// Mouse location
-			
-			/**
-			 * Initialize graphics panel and
-			 * add MouseListener
-			 */
-			public GraphicsPanel() {
-				addMouseListener(this);
-				cursor = new Point();
-			}
-
-			/**
-			 * Draw on the JPanel
-			 * @param g Graphics component to paint
-			 */
-			public void paintComponent(Graphics g) {     
-				
-				setDoubleBuffered(true);   
-				g.setColor(Color.BLACK);
-
-				// Set cursor coordinates
-				cursor.x = MouseInfo.getPointerInfo().getLocation().x - getLocationOnScreen().x;
-				cursor.y = MouseInfo.getPointerInfo().getLocation().y - getLocationOnScreen().y;
-				
-				if (isAdding) {			
-					currentShape.drawGhost(g, cursor); // Draw the ghost of the shape to be added
-				}
-				// Draw all shapes
-				if (!shapeList.isEmpty()) {
-					for (Shape shape : shapeList) {
-						if(shape != null && shape != currentShape) {
-							shape.draw(g);
-						}
-					}
-				}
-			}
-
-			/**
-			 * Add a point to the shape currently being added
-			 * using the cursor as input
-			 * @param e MouseEvent from user's mouse
-			 */
-			@Override
-			public void mouseClicked(MouseEvent e) {
-				// Append a point on the shape being added
-				if(isAdding && currentShape != null) {
-					if(currentShape.addPoint(cursor)) {
-						isAdding = false;
-						currentShape.initialize();
-						currentShape = null;	// Delete reference
-					}
-				}
-			}
-
-			/* 
-			 * The rest of the class are unused overriden
-			 * methods from the MouseListener interface
-			 */
-			
-			/**
-			 * Unused method implementing MouseListener
-			 * @param e MouseEvent
-			 */
-			@Override
-			public void mouseEntered(MouseEvent e) {}
-
-			/**
-			 * Unused method implementing MouseListener
-			 * @param e MouseEvent
-			 */
-			@Override
-			public void mouseExited(MouseEvent e) {}
-
-			/**
-			 * Unused method implementing MouseListener
-			 * @param e MouseEvent
-			 */
-			@Override
-			public void mousePressed(MouseEvent e) {}
-
-			/**
-			 * Unused method implementing MouseListener
-			 * @param e MouseEvent
-			 */
-			@Override
-			public void mouseReleased(MouseEvent e) {}
-		}
-	}
-}
\ No newline at end of file
+
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+
+/**
+ * Geometry Drawing Program - ISC4UE
+ * This class contains the main method
+ * and static variables for the program
+ * @author Sunny Jiao
+ */
+class GeometryDrawingProgram {
+	
+	private static JFrame frame;
+	private static GeometryScreen.GraphicsPanel graphicsPanel;
+	private static Drawing drawing;				// All shapes and their spatial index
+	private static DrawingJournal journal;		// Journal of changes since the drawing was saved, or null
+	private static Autosave autosave;			// Saves a copy of the drawing in the background
+	private static final int AUTOSAVE_SECONDS = 60;
+	private static final String AUTOSAVE_NAME = ".autosave";	// Added to the drawing's name
+	private static String shapeToAdd = "";		
+	private static volatile Shape currentShape;	// Shape being drawn with the mouse, added to the drawing once complete
+	private static volatile Shape selected;		// Shape clicked on, which is removed or translated, or null
+	private static Scanner input;
+	private static volatile boolean isAdding = false;	// Flag to indicate adding process
+	private static final Object addLock = new Object();	// Monitor the main thread waits on while adding
+	private static final String USAGE = "Usage: GeometryDrawingProgram [-metrics SECONDS] [-batch SCRIPT]";
+
+	/**
+	 * Main method
+	 * @param args Command line arguments: "-metrics SECONDS" to print a
+	 * line of metrics to the error stream at that interval, then
+	 * "-batch SCRIPT" to run a script of commands without a window
+	 * ("-" reads standard input)
+	 */
+	public static void main(String[] args) {
+		
+		drawing = new Drawing();
+		try {
+			Metrics.register();
+		}
+		catch (JMException e) {
+			System.err.println("Metrics are not published: " + e.getMessage());
+		}
+		if(args.length >= 2 && args[0].equals("-metrics")) {
+			try {
+				Metrics.startLog(System.err, Long.parseLong(args[1]), TimeUnit.SECONDS);
+			}
+			catch (IllegalArgumentException e) {
+				System.err.println(USAGE);
+				System.exit(2);
+			}
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+		if(args.length > 0) {
+			System.exit(runBatch(args));
+		}
+		autosave = new Autosave(drawing, Paths.get("untitled" + AUTOSAVE_NAME + DrawingFile.EXTENSION),
+				AUTOSAVE_SECONDS, TimeUnit.SECONDS);
+		
+		GeometryScreen gs = new GeometryScreen();
+		input = new Scanner(System.in);
+
+		// Main loop
+		do {
+			printMenu();
+			int select = getIntegerInput();
+			switch(select) {
+				case 1 :	// Add shape
+					isAdding = true;
+					printAddChoice();
+					int select2 = getIntegerInput();
+					System.out.println("Click to add a point.");
+					switch(select2) {
+						case 1 :
+							shapeToAdd = "Trapezoid";
+							currentShape = new Trapezoid();
+							break;
+						case 2 :
+							shapeToAdd = "Parallelogram";
+							currentShape = new Parallelogram();
+							break;
+						case 3 :
+							shapeToAdd = "Rhombus";
+							currentShape = new Rhombus();
+							break;
+						case 4 :
+							shapeToAdd = "Rectangle";
+							currentShape = new Rectangle();
+							break;
+						case 5 :
+							shapeToAdd = "Square";
+							currentShape = new Square();
+							break;
+						case 6 :
+							shapeToAdd = "Scalene Triangle";
+							currentShape = new ScaleneTriangle();
+							break;
+						case 7 :
+							shapeToAdd = "Iscosceles Triangle";
+							currentShape = new IsoscelesTriangle();
+							break;
+						case 8 :
+							shapeToAdd = "Equilateral Triangle";
+							currentShape = new EquilateralTriangle();
+							break;
+						case 9 :
+							shapeToAdd = "Ellipse";
+							currentShape = new Ellipse();
+							break;
+						case 10 :
+							shapeToAdd = "Circle";
+							currentShape = new Circle();
+							break;
+						case 11 :
+							shapeToAdd = "Freehand";
+							currentShape = new Freehand();
+							System.out.println("Drag to draw the outline and release to finish it.");
+							break;
+						default :
+							shapeToAdd = "None";
+							isAdding = false;
+					}
+					System.out.println("Shape selected: " + shapeToAdd);
+					// Wait until the shape is made with the mouse; the graphics
+					// panel repaints itself as the cursor moves
+					waitForShape();
+					break;				
+				case 2 : // Remove shape
+					removeShape();
+					break;
+				case 3 : // Translate single shape
+					translateShape();
+					break;				
+				case 4 : // Translate drawing
+					translateDrawing();
+					break;				
+				case 5 : // Display list of shapes and their data
+					printShapeData();
+					break;					
+				case 6 : // Save drawing to a file
+					saveDrawing();
+					break;					
+				case 7 : // Load drawing from a file
+					loadDrawing();
+					break;
+				case 8 : // Export shape data
+					exportShapeData();
+					break;
+				case 9 : // Export drawing as an image
+					exportImage();
+					break;
+				case 10 : // Quit program
+					frame.dispatchEvent(new WindowEvent(frame, WindowEvent.WINDOW_CLOSING));
+					break;
+				default :
+					System.out.println("Invalid option");
+					break;
+			}
+			frame.repaint(); // Update the screen
+		} while(true);
+
+	}
+	
+	/**
+	 * Print the menu
+	 */
+	private static void printMenu() {
+		System.out.println("\n1. Add Shape");
+		System.out.println("2. Remove Shape");
+		System.out.println("3. Translate Shape");
+		System.out.println("4. Translate Drawing");
+		System.out.println("5. Display Shape Data");
+		System.out.println("6. Save Drawing");
+		System.out.println("7. Load Drawing");
+		System.out.println("8. Export Shape Data");
+		System.out.println("9. Export Image");
+		System.out.print("10. Quit\n\n> ");
+	}
+	
+	/**
+	 * Print the choices for adding shapes
+	 */
+	private static void printAddChoice() {
+		System.out.println("\nSelect shape to add:");
+		System.out.println("1. Trapezoid\t\t2. Parallelogram");
+		System.out.println("3. Rhombus\t\t4. Rectangle");
+		System.out.println("5. Square\t\t6. Scalene Triangle");
+		System.out.println("7. Iscosceles Triangle\t8. Equilateral Triangle");
+		System.out.println("9. Ellipse\t\t10. Circle");
+		System.out.print("11. Freehand\t\t12. Back\n\n> ");
+	}
+	
+	/**
+	 * Print the choices for removing shapes
+	 */
+	private static void removeShape() {
+		if(drawing.size() > 0) {
+			int select = chooseShape("remove");
+			if(select >= 0) {
+				long start = Metrics.now();
+				long allocated = Metrics.allocatedBytes();
+				Shape removed = drawing.remove(select);
+				Metrics.histogram("remove").record(start, allocated);
+				if(removed == selected) {
+					selected = null;
+				}
+				System.out.println(removed.getClass().getSimpleName()+ " removed.");
+				graphicsPanel.invalidateLayer();
+			}
+			else {
+				System.out.println("Invalid number.");
+			}
+		}
+		else {
+			System.out.println("No shapes to remove.");
+		}
+	}
+	
+	/**
+	 * Translate a specific shape
+	 */
+	private static void translateShape() {
+		if(drawing.size() > 0) {
+			int select = chooseShape("translate");
+			if(select >= 0) {
+				System.out.print("Input dx and dy\n\n> ");
+				int dx = input.nextInt();
+				int dy = input.nextInt();
+				boolean wasSelected = (drawing.get(select) == selected);
+				long start = Metrics.now();
+				long allocated = Metrics.allocatedBytes();
+				drawing.translate(select, dx, dy);
+				Metrics.histogram("translate").record(start, allocated);
+				if(wasSelected) {
+					selected = drawing.get(select);	// The shape was replaced by a translated copy
+				}
+				graphicsPanel.invalidateLayer();
+				System.out.println(drawing.get(select).getClass()+ " has been translated.");
+			}
+			else {
+				System.out.println("Invalid number.");
+			}
+		}
+		else {
+			System.out.println("No shapes to translate.");
+		}
+	}
+	
+	/**
+	 * Get the shape to remove or translate: the shape selected with
+	 * the mouse if there is one, otherwise one picked by its number
+	 * from the list of shapes
+	 * @param action What will be done to the shape, for the prompt
+	 * @return Index of the shape, or -1 if an invalid number was entered
+	 */
+	private static int chooseShape(String action) {
+		Shape shape = selected;
+		int select = (shape != null) ? drawing.indexOf(shape) : -1;
+		if(select >= 0) {
+			System.out.println("Using the selected " + shape.getClass().getSimpleName() + " (shape " + select + ").");
+			return select;
+		}
+		printShapeData();
+		System.out.print("Select a shape to " + action + "\n\n> ");
+		select = input.nextInt();
+		return (select < drawing.size() && select >= 0) ? select : -1;
+	}
+	
+	/**
+	 * Translate entire drawing
+	 */
+	private static void translateDrawing() {
+		if(drawing.size() > 0) {
+			System.out.print("Input dx and dy\n\n> ");
+			int dx2 = input.nextInt();
+			int dy2 = input.nextInt();
+			long start = Metrics.now();
+			long allocated = Metrics.allocatedBytes();
+			drawing.translateAll(dx2, dy2);
+			Metrics.histogram("translateAll").record(start, allocated);
+			graphicsPanel.invalidateLayer();
+			System.out.println(drawing.size() + " shapes have been translated.");
+		}
+		else {
+			System.out.println("No shapes to translate.");
+		}
+	}
+	
+	/**
+	 * Print data about each shape
+	 */
+	private static void printShapeData() {
+		if(drawing.size() > 0) {
+			long start = Metrics.now();
+			long allocated = Metrics.allocatedBytes();
+			ShapeReport report = new ShapeReport(new OutputStreamWriter(System.out), ShapeReport.Format.TEXT);
+			DrawingSnapshot snapshot = drawing.snapshot();
+			report.setOffset(snapshot.getOffsetX(), snapshot.getOffsetY());	// Print the vertices where the shapes are drawn
+			try {
+				report.write(snapshot.getShapes());
+				report.flush();
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+			Metrics.histogram("display").record(start, allocated);
+		}
+		else {
+			System.out.println("No shapes to display.");
+		}
+	}
+	
+	/**
+	 * Export data about some or all of the shapes
+	 * as text, CSV or JSON to a file or the console
+	 */
+	private static void exportShapeData() {
+		System.out.print("Select a format:\n1. Text\n2. CSV\n3. JSON\n\n> ");
+		int choice = input.nextInt();
+		if(choice < 1 || choice > 3) {
+			System.out.println("Invalid option");
+			return;
+		}
+		System.out.print("Enter a shape to include (blank for all shapes):\n\n> ");
+		input.nextLine();
+		String type = input.nextLine().trim();
+		System.out.print("Enter the number of shapes to skip and the number to export (0 for all):\n\n> ");
+		int first = input.nextInt();
+		int limit = input.nextInt();
+		System.out.print("Enter file name (blank for console):\n\n> ");
+		input.nextLine();
+		String name = input.nextLine().trim();
+		if(first < 0 || limit < 0) {
+			System.out.println("Invalid number.");
+			return;
+		}
+		long start = Metrics.now();
+		long allocated = Metrics.allocatedBytes();
+		ShapeReport.Format format = ShapeReport.Format.values()[choice - 1];
+		try {
+			if(name.isEmpty()) {
+				writeShapeData(new OutputStreamWriter(System.out), format, type, first, limit);	// Leave System.out open
+			}
+			else {
+				int count;
+				try(Writer out = Files.newBufferedWriter(Paths.get(name))) {
+					count = writeShapeData(out, format, type, first, limit);
+				}
+				System.out.println(count + " shapes exported to " + name);
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		Metrics.histogram("exportData").record(start, allocated);
+	}
+	
+	/**
+	 * Write data about some or all of the shapes
+	 * @param out Writer to write to, which is flushed but not closed
+	 * @param format Format of the data
+	 * @param type Name of the shape to include, or blank for all shapes
+	 * @param first Number of shapes to skip
+	 * @param limit Number of shapes to write, or 0 for all
+	 * @return Number of shapes written
+	 * @throws IOException If the data cannot be written
+	 */
+	private static int writeShapeData(Writer out, ShapeReport.Format format, String type, int first, int limit)
+			throws IOException {
+		ShapeReport report = new ShapeReport(out, format);
+		if(!type.isEmpty()) {
+			report.setFilter(shape -> shape.getClass().getSimpleName().equalsIgnoreCase(type));
+		}
+		report.setPage(first, (limit == 0) ? Integer.MAX_VALUE : limit);
+		DrawingSnapshot snapshot = drawing.snapshot();
+		report.setOffset(snapshot.getOffsetX(), snapshot.getOffsetY());
+		int count = report.write(snapshot.getShapes());
+		report.flush();
+		return count;
+	}
+	
+	/**
+	 * Export the whole drawing as a PNG image
+	 */
+	private static void exportImage() {
+		if(drawing.size() == 0) {
+			System.out.println("No shapes to export.");
+			return;
+		}
+		System.out.print("Enter image scale (1 for actual size):\n\n> ");
+		double scale = input.nextDouble();
+		System.out.print("Enter image name:\n\n> ");
+		input.nextLine();
+		String name = input.nextLine();
+		if(!(scale > 0)) {
+			System.out.println("Invalid scale.");
+			return;
+		}
+		if(!name.toLowerCase().endsWith(".png")) {
+			name += ".png";
+		}
+		long start = Metrics.now();
+		long allocated = Metrics.allocatedBytes();
+		PngExporter exporter = new PngExporter(drawing);
+		exporter.setScale(scale);
+		try {
+			exporter.write(Paths.get(name));
+			System.out.println("Drawing exported as " + name);
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		Metrics.histogram("exportImage").record(start, allocated);
+	}
+	
+	/**
+	 * Save the drawing to a .gdr file in the binary drawing format.
+	 * Saving again under the same name only writes the changes made
+	 * since, which are already in the drawing's journal.
+	 */
+	private static void saveDrawing() {
+		System.out.print("Enter drawing name:\n\n> ");
+		input.nextLine();
+		String name = input.nextLine();
+		Path path = Paths.get(name + DrawingFile.EXTENSION);
+		long start = Metrics.now();
+		long allocated = Metrics.allocatedBytes();
+		try {
+			if(journal != null && journal.getSnapshot().equals(path)) {
+				journal.save();
+			}
+			else {
+				closeJournal();
+				journal = DrawingJournal.create(path, drawing);
+			}
+			autosave.setPath(Paths.get(name + AUTOSAVE_NAME + DrawingFile.EXTENSION));
+			System.out.println("Drawing saved as " + name + DrawingFile.EXTENSION);
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		Metrics.SAVE.record(start, allocated);
+	}
+	
+	/**
+	 * Read a drawing from the working directory and replace the
+	 * current one, replaying the changes in its journal. Drawings
+	 * from older versions of the program are imported from a .ser
+	 * file if there is no .gdr file.
+	 */
+	private static void loadDrawing() {
+		System.out.print("Enter drawing name:\n\n> ");
+		input.nextLine();
+		String name = input.nextLine();
+		Path binary = Paths.get(name + DrawingFile.EXTENSION);
+		long start = Metrics.now();
+		long allocated = Metrics.allocatedBytes();
+		try {
+			if(Files.exists(binary)) {
+				DrawingJournal opened = DrawingJournal.open(binary, drawing);
+				closeJournal();
+				journal = opened;
+				autosave.setPath(Paths.get(name + AUTOSAVE_NAME + DrawingFile.EXTENSION));
+				System.out.println(name + DrawingFile.EXTENSION + " has been loaded.");
+			}
+			else {
+				ArrayList<Shape> shapes = DrawingFile.importSerialized(Paths.get(name + DrawingFile.LEGACY_EXTENSION));
+				closeJournal();
+				drawing.setShapes(shapes);
+				autosave.setPath(Paths.get(name + AUTOSAVE_NAME + DrawingFile.EXTENSION));
+				System.out.println(name + DrawingFile.LEGACY_EXTENSION + " has been imported.");
+			}
+			selected = null;
+			graphicsPanel.invalidateLayer();
+		}
+		catch (IOException e) {
+			System.out.println("Invalid file.");
+		}
+		catch (ClassNotFoundException c) {
+			System.out.println("Class not found.");
+		}
+		Metrics.LOAD.record(start, allocated);
+	}
+	
+	/**
+	 * Run a script of commands on the drawing without a window
+	 * @param args Command line arguments
+	 * @return Exit code: 0 if every command succeeded, 1 if some failed, 2 if the script could not be run
+	 */
+	private static int runBatch(String[] args) {
+		if(args.length != 2 || !args[0].equals("-batch")) {
+			System.err.println(USAGE);
+			return 2;
+		}
+		System.setProperty("java.awt.headless", "true");
+		try {
+			Reader script = args[1].equals("-")
+					? new InputStreamReader(System.in) : Files.newBufferedReader(Paths.get(args[1]));
+			int errors = new BatchRunner(drawing, System.out, System.err).run(script);
+			System.out.flush();
+			return (errors == 0) ? 0 : 1;
+		}
+		catch (IOException e) {
+			System.err.println(e.getMessage());
+			return 2;
+		}
+	}
+	
+	/**
+	 * Stop journaling the current drawing, e.g. before it is replaced
+	 * @throws IOException If the journal cannot be closed
+	 */
+	private static void closeJournal() throws IOException {
+		if(journal != null) {
+			journal.close();
+			journal = null;
+		}
+	}
+	
+	/**
+	 * Block the main thread until the shape currently
+	 * being added has all of its vertices
+	 */
+	private static void waitForShape() {
+		synchronized(addLock) {
+			while(isAdding) {
+				try {
+					addLock.wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Mark the adding process as finished and
+	 * wake up the main thread
+	 */
+	private static void finishAdding() {
+		synchronized(addLock) {
+			isAdding = false;
+			addLock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Repeatedly ask for an integer input 
+	 * until one is properly given
+	 * @return An integer from the user
+	 */
+	private static int getIntegerInput() {
+		int select;
+		while(true) {
+			try {
+				select = Integer.parseInt(input.next());
+				break;
+			}
+			catch (NumberFormatException e) {
+				System.out.println("Invalid input.");
+			}
+		}
+		return select;
+	}
+
+	/**
+	 * Contains and initializes the main JPanel
+	 * @author Sunny Jiao
+	 */
+	public static class GeometryScreen {
+
+		/**
+		 * Constructor - Initializes the JFrame
+		 */
+		GeometryScreen() {
+			frame = new JFrame("Geometry Drawing Program 2.0");
+			// Create a new "custom" panel for graphics based on the inner class below
+			graphicsPanel = new GraphicsPanel();
+			// Add the panel and the frame to the window
+			frame.getContentPane().add(graphicsPanel);
+			frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+			frame.setSize(1080,720);
+			frame.setUndecorated(false);  //Set to true to remove title bar
+			frame.setVisible(true);
+		} 
+
+		/**
+		 * Main panel for the graphics display. The drawing is shown
+		 * through a viewport which can be zoomed with the mouse wheel
+		 * and panned by dragging.
+		 * @author Sunny Jiao
+		 */
+		public static class GraphicsPanel extends JPanel
+				implements MouseListener, MouseMotionListener, MouseWheelListener {
+			
+			private static final double MIN_ZOOM = 0.001;
+			private static final double MAX_ZOOM = 64;
+			private static final double LOD_PIXELS = 2;	// Shapes smaller than this on screen are drawn as a dot
+			private static final double PICK_PIXELS = 3;	// Clicks this close to an outline select the shape
+			private static final BasicStroke HAIRLINE = new BasicStroke(0);	// Keeps lines one pixel wide at any zoom
+			
+			private Point cursor;	// Mouse location in shape coordinates, updated by mouse events
+			private final java.awt.Rectangle ghostBounds = new java.awt.Rectangle();	// Area covered by the last ghost drawn, in shape coordinates
+			private final java.awt.Rectangle damage = new java.awt.Rectangle();		// Reused for the area to repaint around the ghost
+			private BufferedImage layer;			// Cached image of all committed shapes
+			private volatile boolean layerValid;	// False when the layer must be redrawn
+			private final PathRenderer renderer = new PathRenderer();	// Draws the committed shapes onto the layer in chunks
+			private DrawingSnapshot shown;	// Snapshot the layer was last drawn from
+			private double zoom = 1;	// Screen pixels per drawing unit
+			private double panX;		// Screen x of the drawing's origin
+			private double panY;		// Screen y of the drawing's origin
+			private Point dragStart;	// Last mouse location while panning, null when not panning
+			
+			/**
+			 * Initialize graphics panel and add
+			 * the mouse listeners
+			 */
+			public GraphicsPanel() {
+				addMouseListener(this);
+				addMouseMotionListener(this);
+				addMouseWheelListener(this);
+				setDoubleBuffered(true);
+				cursor = new Point();
+				shown = drawing.snapshot();
+			}
+
+			/**
+			 * Draw on the JPanel
+			 * @param g Graphics component to paint
+			 */
+			public void paintComponent(Graphics g) {     
+				long start = Metrics.now();
+				long allocated = Metrics.allocatedBytes();
+				if(layer == null || layer.getWidth() != getWidth() || layer.getHeight() != getHeight()) {
+					layer = getGraphicsConfiguration().createCompatibleImage(
+							Math.max(getWidth(), 1), Math.max(getHeight(), 1));
+					layerValid = false;
+				}
+				if(!layerValid) {
+					layerValid = true;
+					redrawLayer();
+				}
+				// Blit the committed shapes; only the clipped area is copied
+				g.drawImage(layer, 0, 0, null);
+				
+				if (isAdding && currentShape != null) {
+					Graphics2D g2 = viewGraphics(g);
+					currentShape.drawGhost(g2, cursor); // Draw the ghost of the shape to be added
+					g2.dispose();
+				}
+				Shape shape = selected;
+				if(shape != null) {
+					// Outline the selected shape's bounding box
+					java.awt.Rectangle box = toScreen(shape.getBounds(), new java.awt.Rectangle());
+					g.setColor(Color.BLUE);
+					g.drawRect(box.x, box.y, box.width - 1, box.height - 1);
+				}
+				Metrics.PAINT.record(start, allocated);
+			}
+			
+			/**
+			 * Mark the cached layer as out of date, e.g. after shapes are
+			 * removed, translated or loaded, and schedule a repaint.
+			 * Safe to call from any thread.
+			 */
+			public void invalidateLayer() {
+				layerValid = false;
+				repaint();
+			}
+			
+			/**
+			 * Clear the layer and draw every committed shape that is
+			 * inside the viewport onto it, from the renderer's chunks.
+			 * The shapes come from a snapshot, so the drawing can
+			 * change while they are drawn.
+			 */
+			private void redrawLayer() {
+				shown = drawing.snapshot();
+				Graphics lg = layer.getGraphics();
+				lg.setColor(getBackground());
+				lg.fillRect(0, 0, layer.getWidth(), layer.getHeight());
+				lg.setColor(Color.BLACK);
+				Graphics2D vg = viewGraphics(lg);
+				renderer.render(vg, shown, getViewBounds(), zoom);
+				Metrics.addShapesDrawn(renderer.getShapesDrawn());
+				Metrics.addShapesCulled(shown.size() - renderer.getShapesDrawn());
+				vg.dispose();
+				lg.dispose();
+			}
+			
+			/**
+			 * Draw a newly committed shape on top of the layer
+			 * without redrawing the rest of the drawing
+			 * @param shape Shape that was just completed
+			 */
+			private void addToLayer(Shape shape) {
+				if(layer != null && layerValid) {
+					Graphics lg = layer.getGraphics();
+					lg.setColor(Color.BLACK);
+					Graphics2D vg = viewGraphics(lg);
+					drawShape(shape, lg, vg);
+					Metrics.addShapesDrawn(1);
+					vg.dispose();
+					lg.dispose();
+				}
+				repaint(toScreen(shape.getBounds(), new java.awt.Rectangle()));
+			}
+			
+			/**
+			 * Draw a shape, or a single dot if it would
+			 * be too small to make out at the current zoom
+			 * @param shape Shape to draw
+			 * @param screen Graphics object in screen coordinates
+			 * @param view Graphics object in shape coordinates
+			 */
+			private void drawShape(Shape shape, Graphics screen, Graphics2D view) {
+				java.awt.Rectangle box = shape.getBounds();
+				if(Math.max(box.width, box.height) * zoom < LOD_PIXELS) {
+					screen.fillRect((int)Math.floor((box.getCenterX() + shown.getOffsetX()) * zoom + panX),
+							(int)Math.floor((box.getCenterY() + shown.getOffsetY()) * zoom + panY), 1, 1);
+				}
+				else {
+					shape.draw(view, zoom);
+				}
+			}
+			
+			/**
+			 * Create a copy of a Graphics object that draws in shape
+			 * coordinates through the drawing offset and the viewport
+			 * @param g Graphics object in screen coordinates
+			 * @return New Graphics2D which must be disposed
+			 */
+			private Graphics2D viewGraphics(Graphics g) {
+				Graphics2D g2 = (Graphics2D)g.create();
+				g2.translate(panX, panY);
+				g2.scale(zoom, zoom);
+				g2.translate(shown.getOffsetX(), shown.getOffsetY());
+				g2.setStroke(HAIRLINE);
+				return g2;
+			}
+			
+			/**
+			 * Get the area of the drawing visible in the panel
+			 * @return Bounding box of the viewport in drawing coordinates
+			 */
+			private java.awt.Rectangle getViewBounds() {
+				int x1 = (int)Math.floor(-panX / zoom);
+				int y1 = (int)Math.floor(-panY / zoom);
+				int x2 = (int)Math.ceil((getWidth() - panX) / zoom);
+				int y2 = (int)Math.ceil((getHeight() - panY) / zoom);
+				return new java.awt.Rectangle(x1, y1, x2 - x1 + 1, y2 - y1 + 1);
+			}
+			
+			/**
+			 * Convert a box in shape coordinates to the screen
+			 * area that needs to be repainted to cover it
+			 * @param box Bounding box in shape coordinates
+			 * @param out Rectangle to store the screen area in, which may be box
+			 * @return out, set to the bounding box in screen coordinates
+			 */
+			private java.awt.Rectangle toScreen(java.awt.Rectangle box, java.awt.Rectangle out) {
+				double x = box.x + shown.getOffsetX();
+				double y = box.y + shown.getOffsetY();
+				int x1 = (int)Math.floor(x * zoom + panX) - 1;
+				int y1 = (int)Math.floor(y * zoom + panY) - 1;
+				int x2 = (int)Math.ceil((x + box.width) * zoom + panX) + 1;
+				int y2 = (int)Math.ceil((y + box.height) * zoom + panY) + 1;
+				out.setBounds(x1, y1, x2 - x1, y2 - y1);
+				return out;
+			}
+			
+			/**
+			 * Set the cursor from a mouse location on screen
+			 * @param e MouseEvent from user's mouse
+			 */
+			private void updateCursor(MouseEvent e) {
+				cursor.setLocation((int)Math.floor((e.getX() - panX) / zoom) - shown.getOffsetX(),
+						(int)Math.floor((e.getY() - panY) / zoom) - shown.getOffsetY());
+			}
+			
+			/**
+			 * Repaint only the area covered by the old and new
+			 * ghost of the shape being added. Called on every mouse
+			 * move, so it reuses its rectangles instead of creating new ones.
+			 */
+			private void repaintGhost() {
+				Shape shape = currentShape;
+				damage.setBounds(ghostBounds);
+				ghostBounds.setBounds(0, 0, 0, 0);
+				if(shape != null) {
+					shape.getGhostBounds(cursor, ghostBounds);
+					if(ghostBounds.isEmpty()) {
+						ghostBounds.setBounds(0, 0, 0, 0);	// Nothing drawn yet
+					}
+					else if(damage.isEmpty()) {
+						damage.setBounds(ghostBounds);
+					}
+					else {
+						damage.add(ghostBounds);
+					}
+				}
+				if(!damage.isEmpty()) {
+					toScreen(damage, damage);
+					repaint(damage.x, damage.y, damage.width, damage.height);
+				}
+			}
+
+			/**
+			 * Add a point to the shape currently being added
+			 * using the cursor as input, or otherwise select
+			 * the shape under the cursor
+			 * @param e MouseEvent from user's mouse
+			 */
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				updateCursor(e);
+				// Append a point on the shape being added; freehand shapes are drawn by dragging instead
+				if(isAdding && currentShape != null && SwingUtilities.isLeftMouseButton(e)) {
+					Shape shape = currentShape;
+					if(!(shape instanceof Freehand) && addPoint(shape, System.out)) {
+						commitShape(shape);
+					}
+					repaintGhost();
+				}
+				else if(!isAdding && SwingUtilities.isLeftMouseButton(e)) {
+					select((e.getX() - panX) / zoom, (e.getY() - panY) / zoom);
+				}
+			}
+			
+			/**
+			 * Add the cursor as a point of the shape being added
+			 * @param shape Shape being added
+			 * @param log Stream to print messages to, or null for none
+			 * @return True if all vertices have been added
+			 */
+			private boolean addPoint(Shape shape, PrintStream log) {
+				long start = Metrics.now();
+				boolean complete = shape.addPoint(cursor, log);
+				Metrics.ADD_POINT.record(start);
+				return complete;
+			}
+			
+			/**
+			 * Add the finished shape being added to the drawing
+			 * @param shape The complete shape
+			 */
+			private void commitShape(Shape shape) {
+				long start = Metrics.now();
+				shape.initialize();
+				Metrics.INITIALIZE.record(start);
+				drawing.add(shape);
+				currentShape = null;	// Delete reference
+				finishAdding();
+				addToLayer(shape);
+			}
+			
+			/**
+			 * Select the shape under a point, or clear the
+			 * selection if there is no shape there. Only the
+			 * shapes near the point are tested, using the index.
+			 * @param x x coordinate of the point, in drawing coordinates
+			 * @param y y coordinate of the point, in drawing coordinates
+			 */
+			private void select(double x, double y) {
+				Shape shape = drawing.pick(x, y, PICK_PIXELS / zoom);
+				if(shape != selected) {
+					selected = shape;
+					if(shape != null) {
+						System.out.println(shape.getClass().getSimpleName() + " selected.");
+					}
+					repaint();
+				}
+			}
+			
+			/**
+			 * Track the cursor and redraw the ghost of
+			 * the shape being added
+			 * @param e MouseEvent from user's mouse
+			 */
+			@Override
+			public void mouseMoved(MouseEvent e) {
+				updateCursor(e);
+				if(isAdding) {
+					repaintGhost();
+				}
+			}
+			
+			/**
+			 * Pan the viewport while dragging. While a shape is
+			 * being added, only the right and middle buttons pan,
+			 * and dragging with the left button moves the cursor,
+			 * adding to the stroke of a freehand shape.
+			 * @param e MouseEvent from user's mouse
+			 */
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				if(dragStart == null) {
+					Shape shape = currentShape;
+					if(isAdding && shape instanceof Freehand && SwingUtilities.isLeftMouseButton(e)) {
+						updateCursor(e);
+						addPoint(shape, null);
+						repaintGhost();
+						return;
+					}
+					mouseMoved(e);
+					return;
+				}
+				panX += e.getX() - dragStart.x;
+				panY += e.getY() - dragStart.y;
+				dragStart.setLocation(e.getX(), e.getY());
+				updateCursor(e);
+				invalidateLayer();
+			}
+			
+			/**
+			 * Start panning the viewport, or start the stroke
+			 * of a freehand shape
+			 * @param e MouseEvent from user's mouse
+			 */
+			@Override
+			public void mousePressed(MouseEvent e) {
+				if(!isAdding || !SwingUtilities.isLeftMouseButton(e)) {
+					dragStart = new Point(e.getX(), e.getY());
+				}
+				else if(currentShape instanceof Freehand) {
+					updateCursor(e);
+					addPoint(currentShape, null);
+					repaintGhost();
+				}
+			}
+
+			/**
+			 * Stop panning the viewport, or finish the stroke
+			 * of a freehand shape
+			 * @param e MouseEvent from user's mouse
+			 */
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				dragStart = null;
+				Shape shape = currentShape;
+				if(isAdding && shape instanceof Freehand && SwingUtilities.isLeftMouseButton(e)) {
+					updateCursor(e);
+					addPoint(shape, null);
+					if(((Freehand)shape).finish()) {
+						System.out.println("Freehand added with " + shape.getVertexCount() + " vertices.");
+						commitShape(shape);
+					}
+					else {
+						System.out.println("Outline too small, drag again.");
+					}
+					repaintGhost();
+				}
+			}
+			
+			/**
+			 * Zoom in or out around the cursor
+			 * @param e MouseWheelEvent from user's mouse
+			 */
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				double newZoom = zoom * Math.pow(1.1, -e.getPreciseWheelRotation());
+				newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, newZoom));
+				// Keep the point under the cursor in place
+				panX = e.getX() - (e.getX() - panX) * newZoom / zoom;
+				panY = e.getY() - (e.getY() - panY) * newZoom / zoom;
+				zoom = newZoom;
+				updateCursor(e);
+				invalidateLayer();
+			}
+
+			/* 
+			 * The rest of the class are unused overriden
+			 * methods from the MouseListener interface
+			 */
+			
+			/**
+			 * Unused method implementing MouseListener
+			 * @param e MouseEvent
+			 */
+			@Override
+			public void mouseEntered(MouseEvent e) {}
+
+			/**
+			 * Unused method implementing MouseListener
+			 * @param e MouseEvent
+			 */
+			@Override
+			public void mouseExited(MouseEvent e) {}
+		}
+	}
+}
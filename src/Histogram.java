@@ -0,0 +1,235 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of the times taken by one operation, e.g. painting a
+ * frame, published as an MBean by Metrics.
+ *
+ * Times are counted in buckets whose limits double, from 1 microsecond
+ * up to about 36 minutes, so recording a time is a few atomic adds and
+ * never allocates, and percentiles are reported as the upper limit of
+ * the bucket they fall in. Any number of threads can record at once.
+ * @author Sunny Jiao
+ */
+public class Histogram implements HistogramMBean {
+
+	private static final int BUCKETS = 32;	// Bucket i holds times below 2^i microseconds
+
+	private final String name;
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final LongAdder allocated = new LongAdder();	// Bytes allocated during the samples that measured it
+	private final LongAdder allocationSamples = new LongAdder();
+
+	/**
+	 * Constructor
+	 * @param name Name of the operation timed
+	 */
+	Histogram(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Get the name of the operation timed
+	 * @return Name of the histogram
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Record the time since the operation started
+	 * @param startNanos Value of Metrics.now() when the operation started
+	 */
+	public void record(long startNanos) {
+		long nanos = Math.max(0, Metrics.now() - startNanos);
+		long micros = nanos / 1000;
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(bucket);
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	/**
+	 * Record the time since the operation started along with the
+	 * bytes the current thread has allocated since then
+	 * @param startNanos Value of Metrics.now() when the operation started
+	 * @param startAllocated Value of Metrics.allocatedBytes() when the operation started
+	 */
+	public void record(long startNanos, long startAllocated) {
+		record(startNanos);
+		long end = Metrics.allocatedBytes();
+		if(startAllocated >= 0 && end >= startAllocated) {
+			allocated.add(end - startAllocated);
+			allocationSamples.increment();
+		}
+	}
+
+	/**
+	 * Get the number of times recorded
+	 * @return Number of samples
+	 */
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Get the mean time
+	 * @return Mean time in milliseconds
+	 */
+	@Override
+	public double getMeanMillis() {
+		long n = count.sum();
+		return (n == 0) ? 0 : totalNanos.sum() / 1e6 / n;
+	}
+
+	/**
+	 * Get the longest time
+	 * @return Longest time in milliseconds
+	 */
+	@Override
+	public double getMaxMillis() {
+		return maxNanos.get() / 1e6;
+	}
+
+	/**
+	 * Get the median time, to the resolution of the buckets
+	 * @return Upper limit of the median's bucket in milliseconds
+	 */
+	@Override
+	public double getP50Millis() {
+		return getPercentileMillis(0.5);
+	}
+
+	/**
+	 * Get the 90th percentile time, to the resolution of the buckets
+	 * @return Upper limit of the 90th percentile's bucket in milliseconds
+	 */
+	@Override
+	public double getP90Millis() {
+		return getPercentileMillis(0.9);
+	}
+
+	/**
+	 * Get the 99th percentile time, to the resolution of the buckets
+	 * @return Upper limit of the 99th percentile's bucket in milliseconds
+	 */
+	@Override
+	public double getP99Millis() {
+		return getPercentileMillis(0.99);
+	}
+
+	/**
+	 * Find the time that a fraction of the samples took no longer than.
+	 * The result is the upper limit of the bucket holding that sample,
+	 * but never more than the longest time recorded.
+	 * @param fraction Fraction of the samples, from 0 to 1
+	 * @return Time in milliseconds, or 0 if nothing was recorded
+	 */
+	public double getPercentileMillis(double fraction) {
+		long[] counts = getBucketCounts();
+		long total = 0;
+		for(long c : counts) {
+			total += c;
+		}
+		if(total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(fraction * total));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if(seen >= rank) {
+				return Math.min(getLimitMicros(i) / 1e3, getMaxMillis());
+			}
+		}
+		return getMaxMillis();
+	}
+
+	/**
+	 * Get the number of times in each bucket
+	 * @return Count of each bucket, in the order of getBucketLimitsMicros()
+	 */
+	@Override
+	public long[] getBucketCounts() {
+		long[] counts = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+		}
+		return counts;
+	}
+
+	/**
+	 * Get the exclusive upper limit of each bucket
+	 * @return Limit of each bucket in microseconds
+	 */
+	@Override
+	public long[] getBucketLimitsMicros() {
+		long[] limits = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++) {
+			limits[i] = getLimitMicros(i);
+		}
+		return limits;
+	}
+
+	/**
+	 * Get the exclusive upper limit of a bucket; the
+	 * last bucket also holds every longer time
+	 * @param bucket Index of the bucket
+	 * @return Limit of the bucket in microseconds
+	 */
+	private static long getLimitMicros(int bucket) {
+		return (bucket == BUCKETS - 1) ? Long.MAX_VALUE : 1L << bucket;
+	}
+
+	/**
+	 * Get the estimated number of bytes allocated by
+	 * the thread while the recorded times were taken
+	 * @return Total bytes allocated, or 0 if not measured
+	 */
+	@Override
+	public long getAllocatedBytes() {
+		return allocated.sum();
+	}
+
+	/**
+	 * Get the estimated number of bytes allocated per sample
+	 * @return Mean bytes allocated, or 0 if not measured
+	 */
+	@Override
+	public double getMeanAllocatedBytes() {
+		long n = allocationSamples.sum();
+		return (n == 0) ? 0 : (double)allocated.sum() / n;
+	}
+
+	/**
+	 * Discard every sample recorded so far. Samples recorded
+	 * while resetting may be partly kept.
+	 */
+	@Override
+	public void reset() {
+		for(int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		totalNanos.reset();
+		maxNanos.set(0);
+		allocated.reset();
+		allocationSamples.reset();
+	}
+
+	/**
+	 * Summarize the histogram for a log line
+	 * @return Name, count and the main percentiles
+	 */
+	@Override
+	public String toString() {
+		return String.format("%s %d (p50 %.3f ms, p99 %.3f ms, max %.3f ms)",
+				name, getCount(), getP50Millis(), getP99Millis(), getMaxMillis());
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * Management interface of a Histogram, as shown in JConsole
+ * or any other JMX client
+ * @author Sunny Jiao
+ */
+public interface HistogramMBean {
+
+	/**
+	 * Get the number of times recorded
+	 * @return Number of samples
+	 */
+	long getCount();
+
+	/**
+	 * Get the mean time
+	 * @return Mean time in milliseconds
+	 */
+	double getMeanMillis();
+
+	/**
+	 * Get the longest time
+	 * @return Longest time in milliseconds
+	 */
+	double getMaxMillis();
+
+	/**
+	 * Get the median time, to the resolution of the buckets
+	 * @return Upper limit of the median's bucket in milliseconds
+	 */
+	double getP50Millis();
+
+	/**
+	 * Get the 90th percentile time, to the resolution of the buckets
+	 * @return Upper limit of the 90th percentile's bucket in milliseconds
+	 */
+	double getP90Millis();
+
+	/**
+	 * Get the 99th percentile time, to the resolution of the buckets
+	 * @return Upper limit of the 99th percentile's bucket in milliseconds
+	 */
+	double getP99Millis();
+
+	/**
+	 * Get the number of times in each bucket
+	 * @return Count of each bucket, in the order of getBucketLimitsMicros()
+	 */
+	long[] getBucketCounts();
+
+	/**
+	 * Get the exclusive upper limit of each bucket
+	 * @return Limit of each bucket in microseconds
+	 */
+	long[] getBucketLimitsMicros();
+
+	/**
+	 * Get the estimated number of bytes allocated by
+	 * the thread while the recorded times were taken
+	 * @return Total bytes allocated, or 0 if not measured
+	 */
+	long getAllocatedBytes();
+
+	/**
+	 * Get the estimated number of bytes allocated per sample
+	 * @return Mean bytes allocated, or 0 if not measured
+	 */
+	double getMeanAllocatedBytes();
+
+	/**
+	 * Discard every sample recorded so far
+	 */
+	void reset();
+}
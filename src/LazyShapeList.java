@@ -0,0 +1,48 @@
+import java.util.List;
+
+/**
+ * A list of shapes that only creates Shape objects when they are
+ * first needed. Shapes loaded from a file stay "stored" until they
+ * are replaced, and are searched by their stored bounding boxes
+ * instead of being created up front and added to a spatial index.
+ *
+ * The methods that read the list are safe to call from several
+ * threads at once, as long as the list is not being changed.
+ * @author Sunny Jiao
+ */
+public interface LazyShapeList extends List<Shape> {
+
+	/**
+	 * Check if a shape is still the one loaded from the file, rather
+	 * than one added or set since. Stored shapes are found with
+	 * queryStored() instead of a spatial index.
+	 * @param i Index of the shape
+	 * @return True if the shape is stored
+	 */
+	boolean isStored(int i);
+
+	/**
+	 * Find the stored shapes whose bounding boxes intersect an area,
+	 * creating them if needed, without creating the shapes outside
+	 * the area.
+	 * @param area Area to search
+	 * @param result List the shapes are appended to
+	 * @return The result list
+	 */
+	List<Shape> queryStored(java.awt.Rectangle area, List<Shape> result);
+
+	/**
+	 * Get the number of shapes that have not been created yet
+	 * @return Number of shapes without a Shape object
+	 */
+	int getUndecodedCount();
+
+	/**
+	 * Create a list holding the same shapes, which can be changed
+	 * without changing this list. Shapes that have not been created
+	 * yet stay uncreated in both lists, and data that neither list
+	 * changes (e.g. a mapped file) is shared rather than copied.
+	 * @return The copy
+	 */
+	LazyShapeList copy();
+}
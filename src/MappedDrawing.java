@@ -0,0 +1,356 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A list of shapes backed by a memory mapped drawing file. Shapes are
+ * only decoded the first time they are needed, either when get() is
+ * called or when they enter the viewport (see queryStored()), so
+ * opening a drawing does not depend on its size.
+ *
+ * The list can be changed like any other list. Shapes added to it are
+ * kept in memory, while the remaining slots still refer to records in
+ * the file. Decoding a shape only fills in its slot, and is
+ * synchronized, so a list that is no longer changed can be read
+ * from several threads at once.
+ * @author Sunny Jiao
+ */
+public class MappedDrawing extends AbstractList<Shape> implements RandomAccess, LazyShapeList {
+
+	private MappedByteBuffer buffer;	// The whole drawing file
+	private int indexPosition;			// Position of the first index entry
+	private int[] records;				// Record number of each slot, or -1 for shapes added in memory
+	private Shape[] shapes;				// Decoded shape of each slot, or null if not decoded yet
+	private int size;
+	private int undecoded;				// Number of slots still waiting to be decoded
+	private RecordIndex recordIndex;	// Index over the bounds of the records in the file, shared by copies, or null if not built yet
+	private int[] slots;				// Slot of each record, or -1 if none refers to it, or null if not built yet
+
+	/**
+	 * Constructor - Use open() to map a file
+	 * @param buffer Mapped drawing file
+	 * @param count Number of shapes in the file
+	 * @param indexPosition Position of the index in the file
+	 */
+	private MappedDrawing(MappedByteBuffer buffer, int count, int indexPosition) {
+		this.buffer = buffer;
+		this.indexPosition = indexPosition;
+		this.size = count;
+		this.undecoded = count;
+		this.records = new int[count];
+		this.shapes = new Shape[count];
+		for(int i = 0; i < count; i++) {
+			records[i] = i;
+		}
+	}
+
+	/**
+	 * Constructor - Creates a copy of another list sharing its file
+	 * @param other List to copy
+	 */
+	private MappedDrawing(MappedDrawing other) {
+		this.buffer = other.buffer;
+		this.indexPosition = other.indexPosition;
+		this.size = other.size;
+		this.undecoded = other.undecoded;
+		this.records = Arrays.copyOf(other.records, other.size);
+		this.shapes = Arrays.copyOf(other.shapes, other.size);
+		this.recordIndex = other.recordIndex;
+	}
+
+	/**
+	 * Map a drawing file into memory without decoding any shapes
+	 * @param path Version 2 drawing file to map
+	 * @return List of the shapes in the file
+	 * @throws IOException If the file cannot be mapped or is not a drawing
+	 */
+	public static MappedDrawing open(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Drawing is too large to map");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buffer.limit() < DrawingFile.HEADER_SIZE || buffer.getInt(0) != DrawingFile.MAGIC) {
+				throw new IOException("Not a drawing file");
+			}
+			if(buffer.getShort(4) != DrawingFile.VERSION) {
+				throw new IOException("Unsupported drawing version " + buffer.getShort(4));
+			}
+			int count = buffer.getInt(6);
+			DrawingFile.checkCount(count, buffer.limit(), DrawingFile.HEADER_SIZE);
+			long indexPosition = buffer.getLong(10);
+			if(indexPosition < DrawingFile.HEADER_SIZE
+					|| indexPosition + (long)count * DrawingFile.INDEX_ENTRY_SIZE > buffer.limit()) {
+				throw new IOException("Corrupt drawing index");
+			}
+			Metrics.addBytesMapped(buffer.limit());
+			return new MappedDrawing(buffer, count, (int)indexPosition);
+		}
+	}
+
+	/**
+	 * Create a list holding the same shapes and sharing the mapped
+	 * file. Shapes decoded afterwards are decoded separately by
+	 * each list.
+	 * @return The copy
+	 */
+	@Override
+	public synchronized MappedDrawing copy() {
+		return new MappedDrawing(this);
+	}
+
+	/**
+	 * Get a shape, decoding it from the file if needed
+	 * @param i Index of the shape
+	 * @return The shape
+	 */
+	@Override
+	public synchronized Shape get(int i) {
+		checkIndex(i);
+		Shape shape = shapes[i];
+		if(shape == null) {
+			shape = decode(i);
+		}
+		return shape;
+	}
+
+	/**
+	 * Get the number of shapes
+	 * @return Number of shapes
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Find the first position of a shape by identity. Shapes that
+	 * have not been created yet cannot be the one searched for, so
+	 * they are skipped rather than created.
+	 * @param o Shape to find
+	 * @return Index of the shape, or -1 if it is not in the list
+	 */
+	@Override
+	public synchronized int indexOf(Object o) {
+		if(o == null) {
+			return -1;
+		}
+		for(int i = 0; i < size; i++) {
+			if(shapes[i] == o) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Replace a shape
+	 * @param i Index of the shape
+	 * @param shape New shape
+	 * @return The shape that was replaced
+	 */
+	@Override
+	public Shape set(int i, Shape shape) {
+		Shape old = get(i);
+		if(slots != null && records[i] >= 0) {
+			slots[records[i]] = -1;
+		}
+		shapes[i] = shape;
+		records[i] = -1;
+		return old;
+	}
+
+	/**
+	 * Insert a shape, keeping it in memory
+	 * @param i Index to insert at
+	 * @param shape Shape to insert
+	 */
+	@Override
+	public void add(int i, Shape shape) {
+		if(i < 0 || i > size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+		if(size == shapes.length) {
+			int capacity = Math.max(16, size + (size >> 1));
+			shapes = Arrays.copyOf(shapes, capacity);
+			records = Arrays.copyOf(records, capacity);
+		}
+		System.arraycopy(shapes, i, shapes, i + 1, size - i);
+		System.arraycopy(records, i, records, i + 1, size - i);
+		shapes[i] = shape;
+		records[i] = -1;
+		if(i < size) {
+			slots = null;	// Later slots have moved
+		}
+		size++;
+		modCount++;
+	}
+
+	/**
+	 * Remove a shape
+	 * @param i Index of the shape
+	 * @return The removed shape, decoded if it was not already
+	 */
+	@Override
+	public Shape remove(int i) {
+		Shape old = get(i);
+		System.arraycopy(shapes, i + 1, shapes, i, size - i - 1);
+		System.arraycopy(records, i + 1, records, i, size - i - 1);
+		size--;
+		shapes[size] = null;
+		slots = null;
+		modCount++;
+		return old;
+	}
+
+	/**
+	 * Check if a shape has been decoded yet
+	 * @param i Index of the shape
+	 * @return True if the shape is in memory
+	 */
+	public synchronized boolean isDecoded(int i) {
+		checkIndex(i);
+		return shapes[i] != null;
+	}
+
+	/**
+	 * Get the number of shapes that have not been decoded yet
+	 * @return Number of shapes only in the file
+	 */
+	@Override
+	public synchronized int getUndecodedCount() {
+		return undecoded;
+	}
+
+	/**
+	 * Get the bounding box of a shape without decoding it
+	 * @param i Index of the shape
+	 * @param box Rectangle to store the bounding box in
+	 */
+	public synchronized void getBounds(int i, java.awt.Rectangle box) {
+		checkIndex(i);
+		if(shapes[i] != null) {
+			box.setBounds(shapes[i].getBounds());
+		}
+		else {
+			int entry = indexPosition + records[i] * DrawingFile.INDEX_ENTRY_SIZE;
+			box.setBounds(buffer.getInt(entry + 8), buffer.getInt(entry + 12),
+					buffer.getInt(entry + 16), buffer.getInt(entry + 20));
+		}
+	}
+
+	/**
+	 * Get the raw bytes of a shape's record if it has not been
+	 * decoded, so it can be copied without decoding it
+	 * @param i Index of the shape
+	 * @return Read-only view of the record, or null if the shape is in memory
+	 */
+	public synchronized ByteBuffer getRecord(int i) {
+		checkIndex(i);
+		if(shapes[i] != null) {
+			return null;
+		}
+		int offset = recordOffset(records[i]);
+		int length = 5 + buffer.getInt(offset + 1) * 8;
+		ByteBuffer record = buffer.duplicate();
+		record.position(offset).limit(offset + length);
+		return record.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Check if a slot still refers to a record in the file
+	 * @param i Index of the shape
+	 * @return True if the shape was not added or set since the file was opened
+	 */
+	@Override
+	public boolean isStored(int i) {
+		checkIndex(i);
+		return records[i] >= 0;
+	}
+
+	/**
+	 * Find the shapes from the file whose bounding boxes intersect an
+	 * area without decoding the rest. The first search builds a
+	 * RecordIndex over the bounds in the file's index, which copies of
+	 * the list go on sharing, and a table from records back to slots,
+	 * which is rebuilt after shapes are inserted or removed.
+	 * @param area Area to search
+	 * @param result List the shapes are appended to, decoded if needed
+	 * @return The result list
+	 */
+	@Override
+	public synchronized List<Shape> queryStored(java.awt.Rectangle area, List<Shape> result) {
+		if(recordIndex == null) {
+			int count = buffer.getInt(6);
+			int[] boxes = new int[count * 4];
+			for(int r = 0; r < count; r++) {
+				int entry = indexPosition + r * DrawingFile.INDEX_ENTRY_SIZE;
+				for(int k = 0; k < 4; k++) {
+					boxes[r * 4 + k] = buffer.getInt(entry + 8 + k * 4);
+				}
+			}
+			recordIndex = new RecordIndex(boxes, count);
+		}
+		if(slots == null) {
+			slots = new int[recordIndex.getCount()];
+			Arrays.fill(slots, -1);
+			for(int i = 0; i < size; i++) {
+				if(records[i] >= 0) {
+					slots[records[i]] = i;
+				}
+			}
+		}
+		recordIndex.query(area, record -> {
+			int i = slots[record];
+			if(i >= 0) {
+				result.add(shapes[i] != null ? shapes[i] : decode(i));
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Decode the shape in a slot
+	 * @param i Index of the shape
+	 * @return The decoded shape
+	 */
+	private Shape decode(int i) {
+		Shape shape;
+		try {
+			shape = DrawingFile.decode(buffer, recordOffset(records[i]));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		shapes[i] = shape;
+		undecoded--;
+		return shape;
+	}
+
+	/**
+	 * Find the position of a record using the index
+	 * @param record Record number in the file
+	 * @return Position of the record's type tag
+	 */
+	private int recordOffset(int record) {
+		return (int)buffer.getLong(indexPosition + record * DrawingFile.INDEX_ENTRY_SIZE);
+	}
+
+	/**
+	 * Check that an index is in the list
+	 * @param i Index to check
+	 */
+	private void checkIndex(int i) {
+		if(i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+	}
+}
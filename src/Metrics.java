@@ -0,0 +1,296 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and timing histograms for painting, drawing shapes, files
+ * and console commands, so that lag can be traced to what causes it.
+ *
+ * Everything is static so it can be recorded from anywhere without
+ * passing an object around. Recording only adds to counters, so it
+ * is cheap enough to leave on. register() publishes the counters
+ * as one MBean and each histogram as its own, under the domain
+ * "GeometryDrawingProgram", and startLog() prints a summary line
+ * at a fixed interval.
+ *
+ * A timed operation calls now() (and allocatedBytes() if the bytes
+ * it allocates are wanted) when it starts, and passes the values
+ * to a histogram's record() when it ends.
+ * @author Sunny Jiao
+ */
+public class Metrics implements MetricsMBean {
+
+	private static final String DOMAIN = "GeometryDrawingProgram";
+	private static final Map<String, Histogram> histograms = new ConcurrentSkipListMap<String, Histogram>();
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private static final boolean allocationSupported = isAllocationSupported();
+
+	static final Histogram PAINT = histogram("paint");				// Painting a frame, including redrawing the layer
+	static final Histogram ADD_POINT = histogram("addPoint");		// Adding a point to the shape being drawn
+	static final Histogram INITIALIZE = histogram("initialize");	// Initializing a shape as it is added
+	static final Histogram INITIALIZE_ALL = histogram("initializeAll");	// Initializing a whole list of shapes
+	static final Histogram SAVE = histogram("save");				// Saving a drawing or its journal
+	static final Histogram LOAD = histogram("load");				// Loading or importing a drawing
+
+	private static final LongAdder shapesDrawn = new LongAdder();
+	private static final LongAdder shapesCulled = new LongAdder();
+	private static final LongAdder bytesRead = new LongAdder();
+	private static final LongAdder bytesMapped = new LongAdder();
+	private static final LongAdder bytesWritten = new LongAdder();
+	private static MBeanServer server;	// Server the MBeans are registered with, or null before register()
+
+	/**
+	 * Constructor - Only used for the MBean, whose
+	 * methods read the static counters
+	 */
+	private Metrics() {
+	}
+
+	/**
+	 * Get the histogram of an operation, creating it the first time,
+	 * e.g. for each console command
+	 * @param name Name of the operation
+	 * @return Histogram of the operation's times
+	 */
+	public static Histogram histogram(String name) {
+		Histogram histogram = histograms.get(name);
+		if(histogram == null) {
+			histogram = histograms.computeIfAbsent(name, Histogram::new);
+			synchronized(Metrics.class) {
+				if(server != null) {
+					registerHistogram(histogram);
+				}
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Get the time to pass to Histogram.record() when an operation ends
+	 * @return Current time in nanoseconds
+	 */
+	public static long now() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Get the number of bytes the current thread has allocated so far,
+	 * to pass to Histogram.record() when an operation ends. The JVM
+	 * only counts allocations roughly, so differences are estimates.
+	 * @return Bytes allocated by the thread, or -1 if the JVM cannot tell
+	 */
+	public static long allocatedBytes() {
+		if(!allocationSupported) {
+			return -1;
+		}
+		return ((com.sun.management.ThreadMXBean)threads).getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * Check if the JVM counts the bytes allocated by each thread
+	 * @return True if allocatedBytes() can be used
+	 */
+	private static boolean isAllocationSupported() {
+		return threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported()
+				&& ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemoryEnabled();
+	}
+
+	/**
+	 * Count shapes drawn onto the screen
+	 * @param count Number of shapes
+	 */
+	static void addShapesDrawn(int count) {
+		shapesDrawn.add(count);
+	}
+
+	/**
+	 * Count shapes skipped because they were outside the view
+	 * @param count Number of shapes
+	 */
+	static void addShapesCulled(int count) {
+		shapesCulled.add(count);
+	}
+
+	/**
+	 * Count bytes read from a file
+	 * @param bytes Number of bytes
+	 */
+	static void addBytesRead(long bytes) {
+		bytesRead.add(bytes);
+	}
+
+	/**
+	 * Count bytes of a file mapped into memory
+	 * @param bytes Number of bytes
+	 */
+	static void addBytesMapped(long bytes) {
+		bytesMapped.add(bytes);
+	}
+
+	/**
+	 * Count bytes written to a file
+	 * @param bytes Number of bytes
+	 */
+	static void addBytesWritten(long bytes) {
+		bytesWritten.add(bytes);
+	}
+
+	/**
+	 * Publish the counters and every histogram on the platform
+	 * MBean server. Does nothing if they are already published.
+	 * @throws JMException If the MBeans cannot be registered
+	 */
+	public static synchronized void register() throws JMException {
+		if(server != null) {
+			return;
+		}
+		MBeanServer platform = ManagementFactory.getPlatformMBeanServer();
+		platform.registerMBean(new Metrics(), new ObjectName(DOMAIN + ":type=Metrics"));
+		server = platform;
+		for(Histogram histogram : histograms.values()) {
+			registerHistogram(histogram);
+		}
+	}
+
+	/**
+	 * Publish one histogram, skipping it if it is already published
+	 * @param histogram Histogram to publish
+	 */
+	private static void registerHistogram(Histogram histogram) {
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":type=Histogram,name=" + histogram.getName());
+			if(!server.isRegistered(name)) {
+				server.registerMBean(histogram, name);
+			}
+		}
+		catch (JMException e) {
+			throw new IllegalStateException("Cannot register " + histogram.getName(), e);
+		}
+	}
+
+	/**
+	 * Print the summary line at a fixed interval on a background thread
+	 * @param out Stream to print to
+	 * @param period Time between lines
+	 * @param unit Unit of the period
+	 * @return Executor printing the lines, which can be shut down to stop them
+	 */
+	public static ScheduledExecutorService startLog(PrintStream out, long period, TimeUnit unit) {
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Metrics");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		timer.scheduleAtFixedRate(() -> out.println(summarize()), period, period, unit);
+		return timer;
+	}
+
+	/**
+	 * Summarize every counter, and every histogram that has samples
+	 * @return One line of text
+	 */
+	public static String summarize() {
+		StringBuilder line = new StringBuilder();
+		line.append("[metrics] drawn ").append(shapesDrawn.sum())
+				.append(", culled ").append(shapesCulled.sum())
+				.append(", read ").append(bytesRead.sum())
+				.append(" B, mapped ").append(bytesMapped.sum())
+				.append(" B, written ").append(bytesWritten.sum()).append(" B");
+		for(Histogram histogram : histograms.values()) {
+			if(histogram.getCount() > 0) {
+				line.append("; ").append(histogram);
+			}
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Get the number of frames painted
+	 * @return Number of frames
+	 */
+	@Override
+	public long getFramesPainted() {
+		return PAINT.getCount();
+	}
+
+	/**
+	 * Get the number of shapes drawn onto the screen's layer
+	 * @return Number of shapes drawn
+	 */
+	@Override
+	public long getShapesDrawn() {
+		return shapesDrawn.sum();
+	}
+
+	/**
+	 * Get the number of shapes skipped because they were outside the view
+	 * @return Number of shapes culled
+	 */
+	@Override
+	public long getShapesCulled() {
+		return shapesCulled.sum();
+	}
+
+	/**
+	 * Get the number of bytes read from drawing and journal files
+	 * @return Bytes read
+	 */
+	@Override
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	/**
+	 * Get the number of bytes of drawing files mapped into memory
+	 * instead of being read
+	 * @return Bytes mapped
+	 */
+	@Override
+	public long getBytesMapped() {
+		return bytesMapped.sum();
+	}
+
+	/**
+	 * Get the number of bytes written to drawing and journal files
+	 * @return Bytes written
+	 */
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	/**
+	 * Get the line printed by the periodic log
+	 * @return Summary of every counter and histogram
+	 */
+	@Override
+	public String getSummary() {
+		return summarize();
+	}
+
+	/**
+	 * Reset every counter and histogram to zero
+	 */
+	@Override
+	public void reset() {
+		shapesDrawn.reset();
+		shapesCulled.reset();
+		bytesRead.reset();
+		bytesMapped.reset();
+		bytesWritten.reset();
+		for(Histogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+	}
+}
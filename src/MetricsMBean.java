@@ -0,0 +1,55 @@
+/**
+ * Management interface of the program's Metrics, as shown in
+ * JConsole or any other JMX client
+ * @author Sunny Jiao
+ */
+public interface MetricsMBean {
+
+	/**
+	 * Get the number of frames painted
+	 * @return Number of frames
+	 */
+	long getFramesPainted();
+
+	/**
+	 * Get the number of shapes drawn onto the screen's layer
+	 * @return Number of shapes drawn
+	 */
+	long getShapesDrawn();
+
+	/**
+	 * Get the number of shapes skipped because they were outside the view
+	 * @return Number of shapes culled
+	 */
+	long getShapesCulled();
+
+	/**
+	 * Get the number of bytes read from drawing and journal files
+	 * @return Bytes read
+	 */
+	long getBytesRead();
+
+	/**
+	 * Get the number of bytes of drawing files mapped into memory
+	 * instead of being read
+	 * @return Bytes mapped
+	 */
+	long getBytesMapped();
+
+	/**
+	 * Get the number of bytes written to drawing and journal files
+	 * @return Bytes written
+	 */
+	long getBytesWritten();
+
+	/**
+	 * Get the line printed by the periodic log
+	 * @return Summary of every counter and histogram
+	 */
+	String getSummary();
+
+	/**
+	 * Reset every counter and histogram to zero
+	 */
+	void reset();
+}
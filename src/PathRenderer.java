@@ -0,0 +1,268 @@
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Draws the shapes of a drawing with a few large paths instead of
+ * one call per edge, since Java2D's overhead per call dominates the
+ * time taken to draw many small shapes.
+ *
+ * The drawing is split into square chunks of CHUNK_PIXELS on screen,
+ * and each shape belongs to the chunk holding the top left corner of
+ * its bounding box. A chunk joins the outlines of all its shapes into
+ * one path, which is stroked in a single call, and fills the shapes
+ * too small to make out as dots in one more call. Chunks are kept
+ * between frames, so panning only builds the chunks coming into view.
+ * When the drawing changes, the corners of the changed shapes are read
+ * from the snapshot (see DrawingSnapshot.getChangedCorners()) and only
+ * the chunks holding them are rebuilt. Translating the whole drawing
+ * changes no chunks, since chunks are in shape coordinates.
+ *
+ * Chunks depend on the zoom through their size and the detail of
+ * curves, so they are built for the power of two at or below the
+ * zoom and discarded when the zoom moves past another power of two.
+ * A renderer only draws one drawing, since it follows the drawing's
+ * versions, and is not thread safe: it is meant to be used by the one
+ * thread that paints the drawing.
+ * @author Sunny Jiao
+ */
+public class PathRenderer {
+
+	private static final int CHUNK_PIXELS = 256;	// Width and height of a chunk on screen at its level's zoom
+	private static final double DOT_PIXELS = 2;		// Shapes smaller than this on screen are drawn as a dot
+	private static final int KEEP_FRAMES = 64;		// Chunks not drawn for this many frames are discarded
+
+	/**
+	 * The outlines of the shapes in one chunk
+	 */
+	private static class Chunk {
+
+		final int col;
+		final int row;
+		boolean dirty = true;	// True if the paths must be built before the chunk is drawn
+		long frame;				// Last frame the chunk was drawn in
+		Path2D.Float outlines;	// Outlines of the shapes large enough to make out
+		Path2D.Float dots;		// Dots for the other shapes, or null if there are none
+
+		/**
+		 * Constructor - Creates a chunk that has not been built
+		 * @param col Column of the chunk
+		 * @param row Row of the chunk
+		 */
+		Chunk(int col, int row) {
+			this.col = col;
+			this.row = row;
+		}
+	}
+
+	private final HashMap<Long, Chunk> chunks = new HashMap<Long, Chunk>();	// Chunks built so far, keyed by column and row
+	private final ArrayList<Shape> found = new ArrayList<Shape>();	// Reused for queries
+	private final ArrayList<Chunk> drawn = new ArrayList<Chunk>();	// Reused for the chunks drawn in a frame
+	private int level = Integer.MIN_VALUE;	// Power of two the chunks were built for
+	private double levelZoom;	// Smallest zoom the chunks are drawn at, 2^level
+	private int chunkSize;		// Width and height of a chunk in drawing units
+	private long version = -1;	// Version of the drawing the chunks are up to date with
+	private long frame;			// Number of frames drawn
+	private int chunksBuilt;	// Number of chunks built during the last frame
+	private int shapesDrawn;	// Number of shapes drawn during the last frame
+
+	/**
+	 * Draw the shapes of a drawing that are inside an area, with the
+	 * color and stroke already set on the Graphics object
+	 * @param g Graphics object that draws in the drawing's shape coordinates
+	 * @param snapshot Drawing to draw
+	 * @param view Area to draw, in drawing coordinates
+	 * @param zoom Screen pixels per drawing unit
+	 */
+	public void render(Graphics2D g, DrawingSnapshot snapshot, java.awt.Rectangle view, double zoom) {
+		setLevel(zoom);
+		if(snapshot.getVersion() != version) {
+			markChanges(snapshot);
+		}
+		frame++;
+		chunksBuilt = 0;
+		found.clear();
+		snapshot.query(view, found);
+		shapesDrawn = found.size();
+		// Shapes come out of the index grouped by place, so most are in the same chunk as the last one
+		Chunk chunk = null;
+		for(Shape shape : found) {
+			java.awt.Rectangle box = shape.getBounds();
+			int col = Math.floorDiv(box.x, chunkSize);
+			int row = Math.floorDiv(box.y, chunkSize);
+			if(chunk == null || chunk.col != col || chunk.row != row) {
+				chunk = getChunk(col, row);
+				if(chunk.frame != frame) {
+					chunk.frame = frame;
+					drawn.add(chunk);
+				}
+			}
+		}
+		found.clear();
+		for(Chunk c : drawn) {
+			if(c.dirty) {
+				build(c, snapshot);
+			}
+			g.draw(c.outlines);
+			if(c.dots != null) {
+				g.fill(c.dots);
+			}
+		}
+		drawn.clear();
+		if(frame % KEEP_FRAMES == 0) {
+			discardOldChunks();
+		}
+	}
+
+	/**
+	 * Discard every chunk, e.g. to free their memory
+	 */
+	public void clear() {
+		chunks.clear();
+	}
+
+	/**
+	 * Get the number of chunks kept
+	 * @return Number of chunks
+	 */
+	public int getChunkCount() {
+		return chunks.size();
+	}
+
+	/**
+	 * Get the number of chunks built or rebuilt by the last render()
+	 * @return Number of chunks built
+	 */
+	public int getChunksBuilt() {
+		return chunksBuilt;
+	}
+
+	/**
+	 * Get the number of shapes inside the area drawn by the last render()
+	 * @return Number of shapes drawn
+	 */
+	public int getShapesDrawn() {
+		return shapesDrawn;
+	}
+
+	/**
+	 * Pick the level of the chunks for a zoom,
+	 * discarding the chunks if it has changed
+	 * @param zoom Screen pixels per drawing unit
+	 */
+	private void setLevel(double zoom) {
+		int newLevel = Math.getExponent(zoom);
+		if(newLevel != level) {
+			chunks.clear();
+			level = newLevel;
+			levelZoom = Math.scalb(1.0, newLevel);
+			chunkSize = (int)Math.max(1, Math.min(1 << 30, CHUNK_PIXELS / levelZoom));
+		}
+	}
+
+	/**
+	 * Get a chunk, creating an empty one if needed
+	 * @param col Column of the chunk
+	 * @param row Row of the chunk
+	 * @return The chunk
+	 */
+	private Chunk getChunk(int col, int row) {
+		Long key = key(col, row);
+		Chunk chunk = chunks.get(key);
+		if(chunk == null) {
+			chunk = new Chunk(col, row);
+			chunks.put(key, chunk);
+		}
+		return chunk;
+	}
+
+	/**
+	 * Combine a column and row into a key
+	 * @param col Column of the chunk
+	 * @param row Row of the chunk
+	 * @return Key of the chunk
+	 */
+	private static long key(int col, int row) {
+		return ((long)col << 32) ^ (row & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Mark the chunks holding shapes that changed since the chunks were
+	 * last brought up to date, or every chunk if the changes are not known
+	 * @param snapshot Drawing the chunks will be drawn from
+	 */
+	private void markChanges(DrawingSnapshot snapshot) {
+		int[] corners = (version < 0) ? null : snapshot.getChangedCorners(version);
+		if(corners == null) {
+			chunks.clear();
+		}
+		else {
+			for(int i = 0; i < corners.length; i += 2) {
+				Chunk chunk = chunks.get(key(Math.floorDiv(corners[i], chunkSize), Math.floorDiv(corners[i + 1], chunkSize)));
+				if(chunk != null) {
+					chunk.dirty = true;
+				}
+			}
+		}
+		version = snapshot.getVersion();
+	}
+
+	/**
+	 * Build the paths of a chunk from the shapes whose corner is in it
+	 * @param chunk Chunk to build
+	 * @param snapshot Drawing to draw
+	 */
+	private void build(Chunk chunk, DrawingSnapshot snapshot) {
+		// Every shape whose corner is in the chunk intersects the chunk's square
+		java.awt.Rectangle square = new java.awt.Rectangle(chunk.col * chunkSize + snapshot.getOffsetX(),
+				chunk.row * chunkSize + snapshot.getOffsetY(), chunkSize, chunkSize);
+		found.clear();
+		snapshot.query(square, found);
+		int count = found.size();
+		Path2D.Float outlines = new Path2D.Float(Path2D.WIND_NON_ZERO, Math.max(count * 5, 10));
+		Path2D.Float dots = null;
+		double dotSize = 1 / levelZoom;
+		double scale = levelZoom * 2;	// Largest zoom the chunks are drawn at, so shapes are never shown with too little detail
+		for(int i = 0; i < count; i++) {
+			Shape shape = found.get(i);
+			java.awt.Rectangle box = shape.getBounds();
+			if(Math.floorDiv(box.x, chunkSize) != chunk.col || Math.floorDiv(box.y, chunkSize) != chunk.row) {
+				continue;	// Drawn by the chunk holding its corner
+			}
+			if(Math.max(box.width, box.height) * scale < DOT_PIXELS) {
+				if(dots == null) {
+					dots = new Path2D.Float();
+				}
+				double x = box.getCenterX() - dotSize / 2;
+				double y = box.getCenterY() - dotSize / 2;
+				dots.moveTo(x, y);
+				dots.lineTo(x + dotSize, y);
+				dots.lineTo(x + dotSize, y + dotSize);
+				dots.lineTo(x, y + dotSize);
+				dots.closePath();
+			}
+			else {
+				shape.appendOutline(outlines, scale);
+			}
+		}
+		found.clear();
+		chunk.outlines = outlines;
+		chunk.dots = dots;
+		chunk.dirty = false;
+		chunksBuilt++;
+	}
+
+	/**
+	 * Discard the chunks that have not been drawn recently
+	 */
+	private void discardOldChunks() {
+		Iterator<Chunk> it = chunks.values().iterator();
+		while(it.hasNext()) {
+			if(frame - it.next().frame >= KEEP_FRAMES) {
+				it.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,379 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Renders a drawing to a PNG image without a screen, so it can also
+ * be used with java.awt.headless=true, e.g. on a server.
+ *
+ * The image is split into horizontal strips which are rasterized in
+ * parallel and passed to the PNG encoder in order as they finish.
+ * At most MAX_STRIPS strips are held at a time, and fewer if the heap
+ * is small, however many threads are used, so the height of the image
+ * is not limited by memory. The whole image is rendered from one snapshot
+ * of the drawing, so the drawing can go on being edited meanwhile, and
+ * each strip's shapes are found with the snapshot's spatial index on
+ * the thread rendering the strip.
+ *
+ * Can also be run on its own:
+ *   java -Djava.awt.headless=true PngExporter drawing.gdr image.png [scale] [-a]
+ * @author Sunny Jiao
+ */
+public class PngExporter {
+
+	private static final byte[] SIGNATURE = {(byte)137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+	private static final int STRIP_BYTES = 1 << 23;		// Target size of a strip's pixels
+	private static final int MAX_STRIPS = 8;			// Most strips being rendered or waiting to be encoded
+	private static final int CHUNK_SIZE = 1 << 16;		// Size of each IDAT chunk
+	private static final double LOD_PIXELS = 2;			// Shapes smaller than this are drawn as a dot
+	private static final BasicStroke HAIRLINE = new BasicStroke(0);
+
+	private final Drawing drawing;
+	private java.awt.Rectangle area;	// Area of the drawing to export, or null for all of it
+	private double scale = 1;			// Image pixels per drawing unit
+	private boolean antialiased;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Constructor
+	 * @param drawing Drawing to export
+	 */
+	public PngExporter(Drawing drawing) {
+		this.drawing = drawing;
+	}
+
+	/**
+	 * Set the area of the drawing to export
+	 * @param area Area in drawing coordinates, or null for the bounds of the whole drawing
+	 */
+	public void setArea(java.awt.Rectangle area) {
+		this.area = (area != null) ? new java.awt.Rectangle(area) : null;
+	}
+
+	/**
+	 * Set the resolution of the image
+	 * @param scale Image pixels per drawing unit
+	 */
+	public void setScale(double scale) {
+		if(!(scale > 0) || Double.isInfinite(scale)) {
+			throw new IllegalArgumentException("Invalid scale " + scale);
+		}
+		this.scale = scale;
+	}
+
+	/**
+	 * Set whether lines are antialiased
+	 * @param antialiased True for smooth lines, false to match the screen
+	 */
+	public void setAntialiased(boolean antialiased) {
+		this.antialiased = antialiased;
+	}
+
+	/**
+	 * Set the number of strips rasterized at the same time
+	 * @param threads Number of rendering threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Write the image to a file, replacing the file if it exists
+	 * @param path File to write
+	 * @throws IOException If the file cannot be written
+	 */
+	public void write(Path path) throws IOException {
+		try(OutputStream out = Files.newOutputStream(path)) {
+			write(out);
+		}
+	}
+
+	/**
+	 * Write the image as a PNG stream
+	 * @param stream Stream to write to, which is not closed
+	 * @throws IOException If the stream cannot be written or the image is too large
+	 */
+	public void write(OutputStream stream) throws IOException {
+		DrawingSnapshot snapshot = drawing.snapshot();
+		java.awt.Rectangle area = (this.area != null) ? this.area : snapshot.getBounds();
+		if(area.isEmpty()) {
+			area = new java.awt.Rectangle(0, 0, 1, 1);
+		}
+		long width = (long)Math.ceil(area.width * scale);
+		long height = (long)Math.ceil(area.height * scale);
+		if(width > Integer.MAX_VALUE / 4 || height > Integer.MAX_VALUE) {
+			throw new IOException("Image is too large: " + width + "x" + height);
+		}
+		int rows = (int)Math.max(1, Math.min(height, STRIP_BYTES / (width * 4)));
+		int strips = (int)((height + rows - 1) / rows);
+		// Strips waiting to be encoded hold their pixels, so memory rather than the cores limits them
+		long heapStrips = Runtime.getRuntime().maxMemory() / 4 / (rows * width * 4);
+		int inFlight = (int)Math.max(1, Math.min(Math.min(threads * 2L, MAX_STRIPS), heapStrips));
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, CHUNK_SIZE + 12));
+		out.write(SIGNATURE);
+		ChunkWriter chunks = new ChunkWriter(out);
+		chunks.begin("IHDR");
+		chunks.writeInt((int)width);
+		chunks.writeInt((int)height);
+		chunks.write(8);	// Bits per sample
+		chunks.write(2);	// Truecolour
+		chunks.write(0);	// Deflate
+		chunks.write(0);	// Adaptive filtering
+		chunks.write(0);	// Not interlaced
+		chunks.end();
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, inFlight), r -> {
+			Thread t = new Thread(r, "PNG export");
+			t.setDaemon(true);
+			return t;
+		});
+		Deflater deflater = new Deflater();
+		try {
+			// Keep a few strips ahead of the encoder
+			ArrayDeque<Future<int[]>> pending = new ArrayDeque<Future<int[]>>();
+			byte[] line = new byte[(int)width * 3 + 1];
+			int next = 0;
+			chunks.begin("IDAT");
+			for(int s = 0; s < strips; s++) {
+				while(next < strips && pending.size() < inFlight) {
+					int y0 = next * rows;
+					int stripRows = (int)Math.min(rows, height - (long)y0);
+					java.awt.Rectangle exportArea = area;
+					pending.add(pool.submit(() -> render(snapshot, exportArea, (int)width, y0, stripRows)));
+					next++;
+				}
+				int[] pixels = pending.remove().get();
+				int stripRows = pixels.length / (int)width;
+				for(int y = 0; y < stripRows; y++) {
+					filterRow(pixels, y * (int)width, (int)width, line);
+					deflater.setInput(line);
+					while(!deflater.needsInput()) {
+						chunks.deflate(deflater);
+					}
+				}
+			}
+			deflater.finish();
+			while(!deflater.finished()) {
+				chunks.deflate(deflater);
+			}
+			chunks.end();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Export interrupted");
+		}
+		catch (ExecutionException e) {
+			throw new IOException("Could not render image", e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+			deflater.end();
+		}
+		chunks.begin("IEND");
+		chunks.end();
+		out.flush();
+	}
+
+	/**
+	 * Find the shapes in a strip and rasterize them
+	 * @param snapshot Snapshot of the drawing being exported
+	 * @param area Area of the drawing being exported
+	 * @param width Width of the image
+	 * @param y0 First row of the strip in the image
+	 * @param rows Number of rows in the strip
+	 * @return RGB pixels of the strip, row by row
+	 */
+	private int[] render(DrawingSnapshot snapshot, java.awt.Rectangle area, int width, int y0, int rows) {
+		// Drawing area covered by the strip, with a unit of margin for lines on its edge
+		int top = (int)Math.floor(area.y + y0 / scale) - 1;
+		int bottom = (int)Math.ceil(area.y + (y0 + rows) / scale) + 1;
+		java.awt.Rectangle stripArea = new java.awt.Rectangle(area.x - 1, top, area.width + 2, bottom - top);
+		List<Shape> shapes = snapshot.query(stripArea, new ArrayList<Shape>());
+		int offsetX = snapshot.getOffsetX();
+		int offsetY = snapshot.getOffsetY();
+		BufferedImage image = new BufferedImage(width, rows, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, width, rows);
+		g.setColor(Color.BLACK);
+		if(antialiased) {
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		}
+		Graphics2D view = (Graphics2D)g.create();
+		view.translate(0, -y0);
+		view.scale(scale, scale);
+		view.translate(offsetX - area.x, offsetY - area.y);
+		view.setStroke(HAIRLINE);
+		for(Shape shape : shapes) {
+			java.awt.Rectangle box = shape.getBounds();
+			if(Math.max(box.width, box.height) * scale < LOD_PIXELS) {
+				g.fillRect((int)Math.floor((box.getCenterX() + offsetX - area.x) * scale),
+						(int)Math.floor((box.getCenterY() + offsetY - area.y) * scale) - y0, 1, 1);
+			}
+			else {
+				shape.draw(view, scale);
+			}
+		}
+		view.dispose();
+		g.dispose();
+		return ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * Convert a row of pixels to PNG's RGB samples, using the Sub
+	 * filter which stores each sample as the difference from the
+	 * pixel to its left, so runs of one colour compress well
+	 * @param pixels Pixels of a strip
+	 * @param offset Index of the row's first pixel
+	 * @param width Number of pixels in the row
+	 * @param line Array to store the filter type and samples in
+	 */
+	private static void filterRow(int[] pixels, int offset, int width, byte[] line) {
+		line[0] = 1;	// Sub
+		int previous = 0;
+		for(int x = 0; x < width; x++) {
+			int rgb = pixels[offset + x];
+			line[x * 3 + 1] = (byte)((rgb >> 16) - (previous >> 16));
+			line[x * 3 + 2] = (byte)((rgb >> 8) - (previous >> 8));
+			line[x * 3 + 3] = (byte)(rgb - previous);
+			previous = rgb;
+		}
+	}
+
+	/**
+	 * Writes PNG chunks, buffering the data of each
+	 * chunk so its length and CRC can be written
+	 */
+	private static class ChunkWriter {
+
+		private final DataOutputStream out;
+		private final byte[] data = new byte[CHUNK_SIZE];
+		private final CRC32 crc = new CRC32();
+		private byte[] type;
+		private int length;
+
+		/**
+		 * Constructor
+		 * @param out Stream to write chunks to
+		 */
+		ChunkWriter(DataOutputStream out) {
+			this.out = out;
+		}
+
+		/**
+		 * Start a chunk
+		 * @param name Four letter type of the chunk
+		 */
+		void begin(String name) {
+			type = name.getBytes(StandardCharsets.US_ASCII);
+			length = 0;
+		}
+
+		/**
+		 * Add a byte to the chunk
+		 * @param b Byte to add
+		 */
+		void write(int b) {
+			data[length++] = (byte)b;
+		}
+
+		/**
+		 * Add a big-endian int to the chunk
+		 * @param v Int to add
+		 */
+		void writeInt(int v) {
+			write(v >>> 24);
+			write(v >>> 16);
+			write(v >>> 8);
+			write(v);
+		}
+
+		/**
+		 * Add compressed data to the chunk, writing the chunk
+		 * out and starting another of the same type when full
+		 * @param deflater Deflater to take the data from
+		 * @throws IOException If the stream cannot be written
+		 */
+		void deflate(Deflater deflater) throws IOException {
+			length += deflater.deflate(data, length, data.length - length);
+			if(length == data.length) {
+				end();
+				length = 0;
+			}
+		}
+
+		/**
+		 * Write out the chunk
+		 * @throws IOException If the stream cannot be written
+		 */
+		void end() throws IOException {
+			crc.reset();
+			crc.update(type);
+			crc.update(data, 0, length);
+			out.writeInt(length);
+			out.write(type);
+			out.write(data, 0, length);
+			out.writeInt((int)crc.getValue());
+		}
+	}
+
+	/**
+	 * Export a drawing file to a PNG image without opening a window
+	 * @param args Drawing file (.gdr or .ser), image file, optional scale, and -a for antialiasing
+	 * @throws Exception If the drawing cannot be read or the image cannot be written
+	 */
+	public static void main(String[] args) throws Exception {
+		List<String> files = new ArrayList<String>();
+		boolean antialiased = false;
+		for(String arg : args) {
+			if(arg.equals("-a")) {
+				antialiased = true;
+			}
+			else {
+				files.add(arg);
+			}
+		}
+		if(files.size() < 2 || files.size() > 3) {
+			System.err.println("Usage: java PngExporter <drawing" + DrawingFile.EXTENSION + "|"
+					+ DrawingFile.LEGACY_EXTENSION + "> <image.png> [scale] [-a]");
+			System.exit(1);
+		}
+		Path source = Paths.get(files.get(0));
+		Drawing drawing;
+		if(source.toString().endsWith(DrawingFile.LEGACY_EXTENSION)) {
+			drawing = new Drawing();
+			drawing.setShapes(DrawingFile.importSerialized(source));
+		}
+		else {
+			drawing = DrawingJournal.read(source);
+		}
+		PngExporter exporter = new PngExporter(drawing);
+		if(files.size() == 3) {
+			exporter.setScale(Double.parseDouble(files.get(2)));
+		}
+		exporter.setAntialiased(antialiased);
+		exporter.write(Paths.get(files.get(1)));
+	}
+}
@@ -0,0 +1,244 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Uniform grid over the bounding boxes of numbered records, e.g. the
+ * shapes in a mapped drawing file or the rows of a ShapeStore, which
+ * finds the records in an area without creating their shapes.
+ *
+ * The grid is built once from an array of boxes and never changes, so
+ * it is shared by copies of a list and searched from any thread. The
+ * cell size is picked from the extent of the boxes so that there are
+ * about as many cells as records. Cells are stored as one array of
+ * record numbers with the start of each cell in another, rather than
+ * as objects, since there can be millions of them. Records that would
+ * cover too many cells are kept in a separate list which is checked
+ * on every query instead.
+ * @author Sunny Jiao
+ */
+class RecordIndex {
+
+	private static final int MAX_CELLS_PER_RECORD = 64;	// Records covering more cells are "oversized"
+
+	private final int[] boxes;		// x, y, width and height of each record
+	private final int count;		// Number of records
+	private final int originX;		// Drawing coordinates of the first cell
+	private final int originY;
+	private final int cellSize;		// Width and height of a cell
+	private final int cols;
+	private final int rows;
+	private final int[] cellStart;	// Position of each cell's first record in cellRecords; one extra entry marks the end
+	private final int[] cellRecords;	// Records in each cell, cell by cell
+	private final int[] oversized;	// Records too large to store per cell
+
+	/**
+	 * Constructor - Builds the grid
+	 * @param boxes x, y, width and height of each record, which must not change from now on
+	 * @param count Number of records
+	 */
+	RecordIndex(int[] boxes, int count) {
+		this.boxes = boxes;
+		this.count = count;
+		// Extent of every non-empty box
+		long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+		long sizes = 0;
+		int nonEmpty = 0;
+		for(int r = 0; r < count; r++) {
+			if(isEmpty(r)) {
+				continue;
+			}
+			minX = Math.min(minX, boxes[r * 4]);
+			minY = Math.min(minY, boxes[r * 4 + 1]);
+			maxX = Math.max(maxX, (long)boxes[r * 4] + boxes[r * 4 + 2]);
+			maxY = Math.max(maxY, (long)boxes[r * 4 + 1] + boxes[r * 4 + 3]);
+			sizes += Math.max(boxes[r * 4 + 2], boxes[r * 4 + 3]);
+			nonEmpty++;
+		}
+		if(nonEmpty == 0) {
+			originX = originY = 0;
+			cellSize = 1;
+			cols = rows = 0;
+			cellStart = new int[1];
+			cellRecords = new int[0];
+			oversized = new int[0];
+			return;
+		}
+		// About one cell per record, but no smaller than a typical record
+		double perCell = Math.sqrt((double)(maxX - minX) * (maxY - minY) / nonEmpty);
+		long size = (long)Math.ceil(Math.max(perCell, (double)sizes / nonEmpty));
+		size = Math.max(size, (Math.max(maxX - minX, maxY - minY) >> 30) + 1);	// Keep the grid in int range
+		originX = (int)minX;
+		originY = (int)minY;
+		cellSize = (int)Math.min(size, Integer.MAX_VALUE);
+		cols = (int)((maxX - minX + cellSize - 1) / cellSize);
+		rows = (int)((maxY - minY + cellSize - 1) / cellSize);
+
+		// Count the records in each cell, then fill them in
+		int[] counts = new int[cols * rows + 1];
+		int oversizedCount = 0;
+		for(int r = 0; r < count; r++) {
+			if(isEmpty(r)) {
+				continue;
+			}
+			if(isOversized(r)) {
+				oversizedCount++;
+				continue;
+			}
+			for(int row = rowOf(boxes[r * 4 + 1]); row <= lastRow(r); row++) {
+				for(int col = colOf(boxes[r * 4]); col <= lastCol(r); col++) {
+					counts[row * cols + col + 1]++;
+				}
+			}
+		}
+		for(int c = 0; c < cols * rows; c++) {
+			counts[c + 1] += counts[c];
+		}
+		cellStart = counts;
+		cellRecords = new int[counts[cols * rows]];
+		oversized = new int[oversizedCount];
+		int[] next = Arrays.copyOf(counts, cols * rows);
+		oversizedCount = 0;
+		for(int r = 0; r < count; r++) {
+			if(isEmpty(r)) {
+				continue;
+			}
+			if(isOversized(r)) {
+				oversized[oversizedCount++] = r;
+				continue;
+			}
+			for(int row = rowOf(boxes[r * 4 + 1]); row <= lastRow(r); row++) {
+				for(int col = colOf(boxes[r * 4]); col <= lastCol(r); col++) {
+					cellRecords[next[row * cols + col]++] = r;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the number of records the index was built over
+	 * @return Number of records
+	 */
+	int getCount() {
+		return count;
+	}
+
+	/**
+	 * Find every record whose bounding box intersects an area.
+	 * Each record is reported once.
+	 * @param area Area to search
+	 * @param found Told the number of each record found
+	 */
+	void query(java.awt.Rectangle area, IntConsumer found) {
+		if(area.isEmpty()) {
+			return;
+		}
+		long areaX2 = (long)area.x + area.width;
+		long areaY2 = (long)area.y + area.height;
+		if(cols > 0) {
+			int minCol = clamp(Math.floorDiv((long)area.x - originX, cellSize), cols);
+			int minRow = clamp(Math.floorDiv((long)area.y - originY, cellSize), rows);
+			int maxCol = clamp(Math.floorDiv(areaX2 - 1 - originX, cellSize), cols);
+			int maxRow = clamp(Math.floorDiv(areaY2 - 1 - originY, cellSize), rows);
+			for(int row = minRow; row <= maxRow; row++) {
+				for(int col = minCol; col <= maxCol; col++) {
+					int cell = row * cols + col;
+					for(int e = cellStart[cell]; e < cellStart[cell + 1]; e++) {
+						int r = cellRecords[e];
+						// Report each record only from the first searched cell it is in
+						if(col == Math.max(minCol, colOf(boxes[r * 4]))
+								&& row == Math.max(minRow, rowOf(boxes[r * 4 + 1]))
+								&& intersects(r, area, areaX2, areaY2)) {
+							found.accept(r);
+						}
+					}
+				}
+			}
+		}
+		for(int r : oversized) {
+			if(intersects(r, area, areaX2, areaY2)) {
+				found.accept(r);
+			}
+		}
+	}
+
+	/**
+	 * Check if a record's bounding box intersects an area
+	 * @param r Number of the record
+	 * @param area Area to check
+	 * @param areaX2 Right edge of the area
+	 * @param areaY2 Bottom edge of the area
+	 * @return True if they intersect
+	 */
+	private boolean intersects(int r, java.awt.Rectangle area, long areaX2, long areaY2) {
+		int x = boxes[r * 4];
+		int y = boxes[r * 4 + 1];
+		return x < areaX2 && y < areaY2
+				&& x + (long)boxes[r * 4 + 2] > area.x
+				&& y + (long)boxes[r * 4 + 3] > area.y;
+	}
+
+	/**
+	 * Check if a record has an empty bounding box
+	 * @param r Number of the record
+	 * @return True if there is nothing to find
+	 */
+	private boolean isEmpty(int r) {
+		return boxes[r * 4 + 2] <= 0 || boxes[r * 4 + 3] <= 0;
+	}
+
+	/**
+	 * Check if a record covers too many cells to be stored in each of them
+	 * @param r Number of the record
+	 * @return True if the record should be stored as oversized
+	 */
+	private boolean isOversized(int r) {
+		long cells = (lastCol(r) - colOf(boxes[r * 4]) + 1L) * (lastRow(r) - rowOf(boxes[r * 4 + 1]) + 1L);
+		return cells > MAX_CELLS_PER_RECORD;
+	}
+
+	/**
+	 * Find the column of the cell containing an x coordinate inside the grid
+	 * @param x x coordinate
+	 * @return Column of the cell
+	 */
+	private int colOf(int x) {
+		return (int)(((long)x - originX) / cellSize);
+	}
+
+	/**
+	 * Find the row of the cell containing a y coordinate inside the grid
+	 * @param y y coordinate
+	 * @return Row of the cell
+	 */
+	private int rowOf(int y) {
+		return (int)(((long)y - originY) / cellSize);
+	}
+
+	/**
+	 * Find the last column a record covers
+	 * @param r Number of the record
+	 * @return Column of the cell holding the record's right edge
+	 */
+	private int lastCol(int r) {
+		return (int)(((long)boxes[r * 4] + boxes[r * 4 + 2] - 1 - originX) / cellSize);
+	}
+
+	/**
+	 * Find the last row a record covers
+	 * @param r Number of the record
+	 * @return Row of the cell holding the record's bottom edge
+	 */
+	private int lastRow(int r) {
+		return (int)(((long)boxes[r * 4 + 1] + boxes[r * 4 + 3] - 1 - originY) / cellSize);
+	}
+
+	/**
+	 * Limit a column or row to the grid
+	 * @param cell Column or row, which may be outside the grid
+	 * @param limit Number of columns or rows
+	 * @return The nearest column or row in the grid
+	 */
+	private static int clamp(long cell, int limit) {
+		return (int)Math.max(0, Math.min(limit - 1, cell));
+	}
+}
@@ -1,307 +1,815 @@
-
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Point;
-import java.awt.geom.Line2D;
-import java.io.Serializable;
-import java.text.DecimalFormat;
-import java.util.ArrayList;
-
-/**
- * Abstract superclass for all shapes.
- * 
- * All implementable shapes are based on three abstract children of
- * Shape: Quadrilateral, Triangle, and Ellipse (with Ellipse as
- * an exception that is not abstract).
- * 
- * The inheritance structure of the shapes are based on the shape's
- * higher level attributes, i.e. area/perimeter formula, number of
- * vertices, types of lengths (e.g. height, axis, side length),
- * rather than geometric relation with each other; i.e. all
- * quadrilaterals will extend Quadrilateral; Square will not extend
- * Rectangle and Rectangle will not extend Parallelogram. This
- * structure was chosen since the program does not store attributes
- * such as # of parallel sides, angles, etc.
- * @author Sunny Jiao
- */
-public abstract class Shape implements Serializable {
-	
-	private ArrayList<Point> vertices;	
-	private int numFreelyDrawnPoints;	// Number of vertices that can be freely drawn, i.e. not geometrically restricted
-	private int maxVertices;			// Total number of vertices in the shape
-	private double area;
-	private double perimeter;
-	
-	/**
-	 * Constructor - When a shape is "added", this constructor
-	 * will be called to initialize numFreelyDrawnPoints and
-	 * maxVertices, while the vertex list will be empty.
-	 * The vertices will be dynamically added to the ArrayList
-	 * by the user, via the addPoint() method.
-	 * @param numFreelyDrawnPoints	Number of vertices that can be freely drawn by user
-	 * @param maxVertices			Total number of vertices in the shape
-	 */
-	public Shape(int numFreelyDrawnPoints, int maxVertices) {
-		this.numFreelyDrawnPoints = numFreelyDrawnPoints;
-		this.vertices = new ArrayList<Point>();
-		this.maxVertices = maxVertices;
-	}
-	
-	/**
-	 * Sets shape specific attributes i.e. side lengths, heights, etc.
-	 * Overriden by Quadrilateral, Triangle and Ellipse.
-	 */
-	public abstract void setAttributes();
-	
-	/**
-	 * Uses shape attributes to calculate perimeter
-	 * @return Perimeter of the shape
-	 */
-	public abstract double calculatePerimeter();
-	
-	/**
-	 * Uses shape attributes to calculate area
-	 * @return Area of the shape
-	 */
-	public abstract double calculateArea();
-	
-	/**
-	 * Find the appropriate vertex to add when creating a shape,
-	 * relative to the cursor and in accordance with geometric rules.
-	 * Once the shape exceeds numFreelyDrawnPoints vertices, this
-	 * method will be called to find the appropriate vertex.
-	 * @param p Point with the coordinates of the cursor
-	 * @return A vertex that conforms to the geometric rules of the shape
-	 */
-	public abstract Point getRestrictedPoint(Point p);
-	
-	/**
-	 * Calculates and sets the perimeter and area after
-	 * calculating the shape attributes
-	 */
-	public void initialize() {
-		setAttributes();
-		setPerimeter(calculatePerimeter());
-		setArea(calculateArea());
-	}
-
-	/**
-	 * Append a point to the vertex list. If the shape's current number
-	 * of vertices is less than the number of points that can be freely
-	 * drawn, the cursor point will be added as a vertex. Otherwise, an
-	 * appropriate point that conforms to the shape's geometric rules
-	 * will be appended.
-	 * @param cursor Point with cursor's coordinates
-	 * @return True if all vertices have been added
-	 */
-	public boolean addPoint(Point cursor) {
-		// Add first vertex
-		if(vertices.size() == 0) {
-			vertices.add(new Point(cursor.x, cursor.y));
-		}
-		else {
-			boolean validPoint = true;
-			// Freely drawn points
-			if(vertices.size() < numFreelyDrawnPoints) {
-				// Check that second point isn't too close to first point
-				if(vertices.size() == 1) {
-					if(edgeLength(vertices.get(0), cursor) < 10) {
-						validPoint = false;
-						System.out.println("Too close to point!");
-					}
-				}
-				else {
-					// Check that point isn't too close to other lines
-					Line2D line;
-					for(int i = 0; i < vertices.size()-1; i++) {
-						line = new Line2D.Double(vertices.get(i), vertices.get(i+1));
-						if(line.ptLineDist(cursor) < 5) {
-							validPoint = false;
-							System.out.println("Too close to edge!");
-						}
-					}
-				}
-				if(validPoint) {
-					vertices.add(new Point(cursor.x, cursor.y));
-					System.out.println("Point #" + vertices.size() + " added.");
-				}
-			}
-			else {
-				// Add restricted points
-				Point pointToAdd = getRestrictedPoint(cursor);
-				Line2D line;
-				for(int i = 0; i < vertices.size()-1; i++) {
-					line = new Line2D.Double(vertices.get(i), vertices.get(i+1));
-					if(line.ptLineDist(pointToAdd) < 5) {
-						validPoint = false;
-						System.out.println("Too close to edge!");
-					}
-				}
-				if(validPoint) {
-					vertices.add(pointToAdd);
-					System.out.println("Point #" + vertices.size() + " added.");
-				}
-			}
-		}
-		return vertices.size() == maxVertices;
-	}
-	
-	/**
-	 * Translate the shape given the change
-	 * @param dx Change in x
-	 * @param dy Change in y
-	 */
-	public void translate(int dx, int dy) {
-		for(Point p : vertices) {
-			p.translate(dx, dy);
-		}
-	}
-	
-	/**
-	 * Draw the shape by drawing lines between each vertex
-	 * @param g The Graphics object to draw to
-	 */
-	public void draw(Graphics g) {
-		g.setColor(Color.BLACK);
-		for(int i = 0; i < vertices.size()-1; i++) {
-			g.drawLine(vertices.get(i).x, vertices.get(i).y,
-					vertices.get(i+1).x, vertices.get(i+1).y);
-		}
-		g.drawLine(vertices.get(vertices.size()-1).x, vertices.get(vertices.size()-1).y,
-				vertices.get(0).x, vertices.get(0).y);
-	}
-	
-	/**
-	 * Draws a line from the previous point to the cursor,
-	 * along with the line to finish the shape
-	 * @param g Graphics object to draw to
-	 * @param cursor Point with the cursor's coordinates
-	 */
-	public void drawGhost(Graphics g, Point cursor) {
-		ArrayList<Point> vertices = getVertices();
-		
-		g.setColor(Color.RED);
-		if(vertices.size() >= getNumFreelyDrawnPoints()) {
-			// Draw first lines
-			for(int i = 0; i < vertices.size()-1; i++) {
-				g.drawLine(vertices.get(i).x, vertices.get(i).y,
-						vertices.get(i+1).x, vertices.get(i+1).y);
-			}
-			// Draw ghost line
-			Point restrictedPoint = getRestrictedPoint(cursor);
-			g.drawLine(vertices.get(vertices.size()-1).x, vertices.get(vertices.size()-1).y,
-					restrictedPoint.x, restrictedPoint.y);
-			
-			g.drawLine(vertices.get(0).x, vertices.get(0).y,
-					restrictedPoint.x, restrictedPoint.y);
-		}
-		else if(vertices.size() != 0){
-			for(int i = 0; i < vertices.size()-1; i++) {
-				g.drawLine(vertices.get(i).x, vertices.get(i).y,
-						vertices.get(i+1).x, vertices.get(i+1).y);
-			}
-			g.drawLine(vertices.get(vertices.size()-1).x, vertices.get(vertices.size()-1).y,
-					cursor.x, cursor.y);
-		}
-	}
-	
-	/**
-	 * Set the area of the shape
-	 * @param a Double to set area to
-	 */
-	public void setArea(double a) {
-		area = a;
-	}
-
-	/**
-	 * Set the perimeter of the shape
-	 * @param p a Double to set perimeter to
-	 */
-	public void setPerimeter(double p) {
-		perimeter = p;
-	}
-	
-	/**
-	 * Get the area of the shape
-	 * @return Area of the shape
-	 */
-	public double getArea() {
-		return area;
-	}
-
-	/**
-	 * Get the perimeter of the shape
-	 * @return Perimeter of the shape
-	 */
-	public double getPerimeter() {
-		return perimeter;
-	}
-	
-	/**
-	 * Get the number of points that can be freely drawn
-	 * @return Number of points that can be freely drawn
-	 */
-	public int getNumFreelyDrawnPoints() {
-		return numFreelyDrawnPoints;
-	}
-	
-	/**
-	 * Get maximum number of vertices
-	 * @return Maximum number of vertices
-	 */
-	public int getMaxVertices() {
-		return maxVertices;
-	}
-	
-	/**
-	 * Get ArrayList of Points representing vertices
-	 * @return ArrayList of Points representing vertices
-	 */
-	public ArrayList<Point> getVertices(){
-		return vertices;
-	}
-	
-	/**
-	 * Set the ArrayList of vertices
-	 * @param vertices ArrayList to set from
-	 */
-	public void setVertices(ArrayList<Point> vertices) {
-		this.vertices = vertices;
-	}
-	
-	/**
-	 * Get string representation of the shape
-	 * @return String which includes the shape's name, vertex points, area, and perimeter
-	 */
-	@Override
-	public String toString() {
-		String strVertices = "";
-		for(Point p : vertices) {
-			strVertices += "(" + p.x + "," + p.y + ") ";
-		}
-		DecimalFormat df = new DecimalFormat("#.##");
-		return this.getClass().getSimpleName() + "\nVertices: " + strVertices +
-				"\nArea: " + df.format(this.getArea()) +
-				"\nPerimeter: " + df.format(this.getPerimeter()) + "\n";
-	}
-	
-	/**
-	 * Returns the length of an edge formed by two points
-	 * @param p1 First point
-	 * @param p2 Second point
-	 * @return The length between p1 and p2
-	 */
-	public static double edgeLength(Point p1, Point p2) {
-		return Math.sqrt(Math.pow(p2.x - p1.x, 2) + Math.pow(p2.y - p1.y, 2));
-	}
-	
-	/**
-	 * Find the slope between two Points
-	 * @param p1 First point
-	 * @param p2 Second point
-	 * @return The slope between p1 and p2
-	 */
-	public static double slope(Point p1, Point p2) {
-		return 1.0 * (p1.y - p2.y) / (p1.x - p2.x);
-	}
-}
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Abstract superclass for all shapes.
+ * 
+ * All implementable shapes are based on three abstract children of
+ * Shape: Quadrilateral, Triangle, and Ellipse (with Ellipse as
+ * an exception that is not abstract).
+ * 
+ * The inheritance structure of the shapes are based on the shape's
+ * higher level attributes, i.e. area/perimeter formula, number of
+ * vertices, types of lengths (e.g. height, axis, side length),
+ * rather than geometric relation with each other; i.e. all
+ * quadrilaterals will extend Quadrilateral; Square will not extend
+ * Rectangle and Rectangle will not extend Parallelogram. This
+ * structure was chosen since the program does not store attributes
+ * such as # of parallel sides, angles, etc.
+ * 
+ * A shape can also be a lightweight view of a row in a ShapeStore,
+ * in which case its vertices, area and perimeter are read from the
+ * store's arrays instead of being held by the shape itself.
+ * @author Sunny Jiao
+ */
+public abstract class Shape implements Serializable {
+	
+	private static final long serialVersionUID = 6351977300635416442L;	// Matches drawings saved before the binary format
+	static final int PARALLEL_THRESHOLD = 4096;	// Lists smaller than this are initialized on one thread
+	private static final int MIN_POINT_DISTANCE = 10;	// Closest the second vertex can be to the first
+	private static final int MIN_EDGE_DISTANCE = 5;		// Closest a new vertex can be to an edge
+	
+	private ArrayList<Point> vertices;	
+	private int numFreelyDrawnPoints;	// Number of vertices that can be freely drawn, i.e. not geometrically restricted
+	private int maxVertices;			// Total number of vertices in the shape
+	private double area;
+	private double perimeter;
+	private transient volatile java.awt.Rectangle bounds;	// Cached bounding box, null when out of date
+	private transient ShapeStore store;	// Store holding this shape's data, or null if held here
+	private transient int row;			// Row of this shape in the store
+	private transient Point ghostPoint;	// Restricted point reused by the ghost preview and addPoint()
+	
+	/**
+	 * Constructor - When a shape is "added", this constructor
+	 * will be called to initialize numFreelyDrawnPoints and
+	 * maxVertices, while the vertex list will be empty.
+	 * The vertices will be dynamically added to the ArrayList
+	 * by the user, via the addPoint() method.
+	 * @param numFreelyDrawnPoints	Number of vertices that can be freely drawn by user
+	 * @param maxVertices			Total number of vertices in the shape
+	 */
+	public Shape(int numFreelyDrawnPoints, int maxVertices) {
+		this.numFreelyDrawnPoints = numFreelyDrawnPoints;
+		this.vertices = new ArrayList<Point>();
+		this.maxVertices = maxVertices;
+	}
+	
+	/**
+	 * Sets shape specific attributes i.e. side lengths, heights, etc.
+	 * Overriden by Quadrilateral, Triangle and Ellipse.
+	 */
+	public abstract void setAttributes();
+	
+	/**
+	 * Uses shape attributes to calculate perimeter
+	 * @return Perimeter of the shape
+	 */
+	public abstract double calculatePerimeter();
+	
+	/**
+	 * Uses shape attributes to calculate area
+	 * @return Area of the shape
+	 */
+	public abstract double calculateArea();
+	
+	/**
+	 * Find the appropriate vertex to add when creating a shape,
+	 * relative to the cursor and in accordance with geometric rules.
+	 * Once the shape exceeds numFreelyDrawnPoints vertices, this
+	 * method will be called to find the appropriate vertex.
+	 * The vertex is written to the given point instead of a new
+	 * one, so the ghost preview can call this on every mouse move
+	 * without creating garbage.
+	 * @param cursor Point with the coordinates of the cursor
+	 * @param out Point to store the vertex in
+	 * @return out, set to a vertex that conforms to the geometric rules of the shape
+	 */
+	public abstract Point getRestrictedPoint(Point cursor, Point out);
+	
+	/**
+	 * Find the appropriate vertex to add when creating a shape,
+	 * as a new Point
+	 * @param p Point with the coordinates of the cursor
+	 * @return A new vertex that conforms to the geometric rules of the shape
+	 */
+	public Point getRestrictedPoint(Point p) {
+		return getRestrictedPoint(p, new Point());
+	}
+	
+	/**
+	 * Calculates and sets the perimeter and area after
+	 * calculating the shape attributes
+	 */
+	public void initialize() {
+		setAttributes();
+		setPerimeter(calculatePerimeter());
+		setArea(calculateArea());
+		invalidateBounds();
+	}
+
+	/**
+	 * Initialize every shape in a list, splitting the work across
+	 * cores for large lists. Each shape only reads its own vertices
+	 * and writes its own attributes, so the results are exactly the
+	 * same as calling initialize() on each shape in turn.
+	 * @param shapes Complete shapes to initialize
+	 */
+	public static void initializeAll(List<Shape> shapes) {
+		long start = Metrics.now();
+		if(shapes instanceof ShapeStore) {
+			((ShapeStore)shapes).initializeRows();
+		}
+		else {
+			IntStream range = IntStream.range(0, shapes.size());
+			// Other lazy lists create shapes as they are read, which is not thread safe
+			if(shapes.size() >= PARALLEL_THRESHOLD && !(shapes instanceof LazyShapeList)) {
+				range = range.parallel();
+			}
+			range.forEach(i -> shapes.get(i).initialize());
+		}
+		Metrics.INITIALIZE_ALL.record(start);
+	}
+	
+	/**
+	 * Append a point to the vertex list. If the shape's current number
+	 * of vertices is less than the number of points that can be freely
+	 * drawn, the cursor point will be added as a vertex. Otherwise, an
+	 * appropriate point that conforms to the shape's geometric rules
+	 * will be appended.
+	 * @param cursor Point with cursor's coordinates
+	 * @return True if all vertices have been added
+	 */
+	public boolean addPoint(Point cursor) {
+		return addPoint(cursor, System.out);
+	}
+	
+	/**
+	 * Append a point to the vertex list, as addPoint(Point) does,
+	 * printing messages about the point to the given stream
+	 * @param cursor Point with cursor's coordinates
+	 * @param log Stream to print messages to, or null for none
+	 * @return True if all vertices have been added
+	 */
+	public boolean addPoint(Point cursor, PrintStream log) {
+		detach();
+		// Add first vertex
+		if(vertices.size() == 0) {
+			vertices.add(new Point(cursor.x, cursor.y));
+			invalidateBounds();
+		}
+		else {
+			// Freely drawn points are checked where they are, restricted points once moved to fit the shape
+			boolean free = vertices.size() < numFreelyDrawnPoints;
+			Point point = free ? cursor : getRestrictedPoint(cursor, getGhostPoint());
+			if(free && vertices.size() == 1) {
+				// Check that second point isn't too close to first point
+				if(vertices.get(0).distanceSq(point) < MIN_POINT_DISTANCE * MIN_POINT_DISTANCE) {
+					log(log, "Too close to point!");
+					return false;
+				}
+			}
+			else if(isNearEdge(point.x, point.y)) {
+				log(log, "Too close to edge!");
+				return isComplete();
+			}
+			vertices.add(new Point(point.x, point.y));
+			invalidateBounds();
+			if(log != null) {
+				log.println("Point #" + vertices.size() + " added.");
+			}
+		}
+		return isComplete();
+	}
+	
+	/**
+	 * Check if a new vertex is too close to the lines through the edges
+	 * drawn so far, which keeps the corners of triangles and
+	 * quadrilaterals from being nearly in line. Nothing is allocated.
+	 * @param x x coordinate of the vertex
+	 * @param y y coordinate of the vertex
+	 * @return True if the vertex should be rejected
+	 */
+	private boolean isNearEdge(int x, int y) {
+		double limit = MIN_EDGE_DISTANCE * MIN_EDGE_DISTANCE;
+		for(int i = 0; i < vertices.size() - 1; i++) {
+			Point a = vertices.get(i);
+			Point b = vertices.get(i + 1);
+			double dx = b.x - a.x;
+			double dy = b.y - a.y;
+			double cross = dx * (y - a.y) - dy * (x - a.x);
+			// Squared distance to the line is cross^2 / length^2
+			if(cross * cross < limit * (dx * dx + dy * dy)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check if every vertex of the shape has been added
+	 * @return True if the shape is complete
+	 */
+	public boolean isComplete() {
+		return getVertexCount() == maxVertices;
+	}
+	
+	/**
+	 * Print a message about adding a point
+	 * @param log Stream to print to, or null for none
+	 * @param message Message to print
+	 */
+	private static void log(PrintStream log, String message) {
+		if(log != null) {
+			log.println(message);
+		}
+	}
+	
+	/**
+	 * Translate the shape given the change
+	 * @param dx Change in x
+	 * @param dy Change in y
+	 */
+	public void translate(int dx, int dy) {
+		if(store != null) {
+			store.translate(row, dx, dy);
+		}
+		else {
+			for(Point p : vertices) {
+				p.translate(dx, dy);
+			}
+		}
+		invalidateBounds();
+	}
+	
+	/**
+	 * Get the bounding box of the pixels covered by the shape's
+	 * outline. The box is cached until the vertices change, and
+	 * should not be modified by the caller.
+	 * @return Bounding box of the shape
+	 */
+	public java.awt.Rectangle getBounds() {
+		java.awt.Rectangle box = bounds;
+		if(box == null) {
+			box = computeBounds();
+			bounds = box;
+		}
+		return box;
+	}
+	
+	/**
+	 * Calculate the bounding box of the vertices. Overriden by
+	 * shapes whose outline extends past their vertices.
+	 * @return New bounding box of the shape
+	 */
+	protected java.awt.Rectangle computeBounds() {
+		java.awt.Rectangle box = new java.awt.Rectangle();
+		if(store != null) {
+			store.getVertexBounds(row, box);
+		}
+		else if(vertices.size() > 0) {
+			box.setBounds(vertices.get(0).x, vertices.get(0).y, 0, 0);
+			for(int i = 1; i < vertices.size(); i++) {
+				box.add(vertices.get(i).x, vertices.get(i).y);
+			}
+			// Make the box inclusive of the last row and column of pixels
+			box.width++;
+			box.height++;
+		}
+		return box;
+	}
+	
+	/**
+	 * Discard the cached bounding box after the vertices change
+	 */
+	protected void invalidateBounds() {
+		bounds = null;
+	}
+	
+	/**
+	 * Get the bounding box of the ghost drawn by drawGhost()
+	 * for the given cursor position
+	 * @param cursor Point with the cursor's coordinates
+	 * @return New bounding box of the ghost
+	 */
+	public java.awt.Rectangle getGhostBounds(Point cursor) {
+		return getGhostBounds(cursor, new java.awt.Rectangle());
+	}
+	
+	/**
+	 * Get the bounding box of the ghost drawn by drawGhost()
+	 * without creating any objects
+	 * @param cursor Point with the cursor's coordinates
+	 * @param box Rectangle to store the bounding box in
+	 * @return box, set to the bounding box of the ghost
+	 */
+	public java.awt.Rectangle getGhostBounds(Point cursor, java.awt.Rectangle box) {
+		ArrayList<Point> vertices = getVertices();
+		box.setBounds(getBounds());
+		if(vertices.size() >= getNumFreelyDrawnPoints()) {
+			Point restrictedPoint = getRestrictedPoint(cursor, getGhostPoint());
+			addPixel(box, restrictedPoint.x, restrictedPoint.y);
+		}
+		else if(vertices.size() != 0) {
+			addPixel(box, cursor.x, cursor.y);
+		}
+		return box;
+	}
+	
+	/**
+	 * Grow a pixel-inclusive bounding box to cover a pixel
+	 * @param box Non-empty bounding box to grow
+	 * @param x x coordinate of the pixel
+	 * @param y y coordinate of the pixel
+	 */
+	private static void addPixel(java.awt.Rectangle box, int x, int y) {
+		box.add(x, y);
+		box.add(x + 1, y + 1);
+	}
+	
+	/**
+	 * Get the point the ghost preview and addPoint() store restricted
+	 * points in, so that neither creates a new one each time
+	 * @return Point owned by this shape for restricted points
+	 */
+	protected Point getGhostPoint() {
+		if(ghostPoint == null) {
+			ghostPoint = new Point();
+		}
+		return ghostPoint;
+	}
+	
+	/**
+	 * Draw the shape by drawing lines between each vertex
+	 * @param g The Graphics object to draw to
+	 */
+	public void draw(Graphics g) {
+		g.setColor(Color.BLACK);
+		if(store != null) {
+			store.draw(row, g);
+			return;
+		}
+		for(int i = 0; i < vertices.size()-1; i++) {
+			g.drawLine(vertices.get(i).x, vertices.get(i).y,
+					vertices.get(i+1).x, vertices.get(i+1).y);
+		}
+		g.drawLine(vertices.get(vertices.size()-1).x, vertices.get(vertices.size()-1).y,
+				vertices.get(0).x, vertices.get(0).y);
+	}
+	
+	/**
+	 * Check if a point is on the shape's outline, e.g. to select the
+	 * shape with the mouse. Only the outline is drawn, so a point is
+	 * only on the shape if it is close to one of the edges. Overriden
+	 * by Ellipse, which is hit anywhere inside.
+	 * @param x x coordinate of the point
+	 * @param y y coordinate of the point
+	 * @param tolerance Distance from the outline that still counts as a hit
+	 * @return True if the point hits the shape
+	 */
+	public boolean isHit(double x, double y, double tolerance) {
+		int n = getVertexCount();
+		if(n == 0) {
+			return false;
+		}
+		double limit = tolerance * tolerance;
+		double x1 = getVertexX(n - 1);
+		double y1 = getVertexY(n - 1);
+		for(int i = 0; i < n; i++) {
+			double x2 = getVertexX(i);
+			double y2 = getVertexY(i);
+			if(segmentDistanceSq(x, y, x1, y1, x2, y2) <= limit) {
+				return true;
+			}
+			x1 = x2;
+			y1 = y2;
+		}
+		return false;
+	}
+	
+	/**
+	 * Check if a point is inside the region enclosed by the shape's
+	 * outline, using the even-odd rule. Points exactly on the outline
+	 * may be counted either way. Overriden by Ellipse.
+	 * @param x x coordinate of the point
+	 * @param y y coordinate of the point
+	 * @return True if the point is inside the shape
+	 */
+	public boolean contains(double x, double y) {
+		int n = getVertexCount();
+		boolean inside = false;
+		if(n == 0) {
+			return false;
+		}
+		double x1 = getVertexX(n - 1);
+		double y1 = getVertexY(n - 1);
+		for(int i = 0; i < n; i++) {
+			double x2 = getVertexX(i);
+			double y2 = getVertexY(i);
+			// Count the edges crossed by a ray from the point towards +x
+			if((y1 > y) != (y2 > y) && x < x1 + (y - y1) * (x2 - x1) / (y2 - y1)) {
+				inside = !inside;
+			}
+			x1 = x2;
+			y1 = y2;
+		}
+		return inside;
+	}
+	
+	/**
+	 * Check if the region enclosed by the shape intersects an area,
+	 * including when one is inside the other. Overriden by Ellipse.
+	 * @param area Area to check, in shape coordinates
+	 * @return True if they share at least one point
+	 */
+	public boolean intersects(java.awt.geom.Rectangle2D area) {
+		int n = getVertexCount();
+		if(n == 0) {
+			return false;
+		}
+		int x1 = getVertexX(n - 1);
+		int y1 = getVertexY(n - 1);
+		for(int i = 0; i < n; i++) {
+			int x2 = getVertexX(i);
+			int y2 = getVertexY(i);
+			if(area.intersectsLine(x1, y1, x2, y2)) {
+				return true;
+			}
+			x1 = x2;
+			y1 = y2;
+		}
+		// No edge touches the area, so either it is inside the shape or they are apart
+		return contains(area.getX(), area.getY());
+	}
+	
+	/**
+	 * Check if the regions enclosed by two shapes intersect, including
+	 * when one is inside the other. Tests involving an ellipse are
+	 * done by Ellipse.
+	 * @param other Shape to check, in the same coordinates as this shape
+	 * @return True if the shapes share at least one point
+	 */
+	public boolean overlaps(Shape other) {
+		if(other instanceof Ellipse) {
+			return other.overlaps(this);
+		}
+		return overlapsPolygon(other);
+	}
+	
+	/**
+	 * Check if two shapes intersect, treating both as polygons through
+	 * their vertices, by testing every edge against every edge
+	 * @param other Shape to check, in the same coordinates as this shape
+	 * @return True if the polygons share at least one point
+	 */
+	protected boolean overlapsPolygon(Shape other) {
+		int n = getVertexCount();
+		int m = other.getVertexCount();
+		if(n == 0 || m == 0) {
+			return false;
+		}
+		int ax1 = getVertexX(n - 1);
+		int ay1 = getVertexY(n - 1);
+		for(int i = 0; i < n; i++) {
+			int ax2 = getVertexX(i);
+			int ay2 = getVertexY(i);
+			int bx1 = other.getVertexX(m - 1);
+			int by1 = other.getVertexY(m - 1);
+			for(int j = 0; j < m; j++) {
+				int bx2 = other.getVertexX(j);
+				int by2 = other.getVertexY(j);
+				if(Line2D.linesIntersect(ax1, ay1, ax2, ay2, bx1, by1, bx2, by2)) {
+					return true;
+				}
+				bx1 = bx2;
+				by1 = by2;
+			}
+			ax1 = ax2;
+			ay1 = ay2;
+		}
+		// No edges cross, so either one is inside the other or they are apart
+		return contains(other.getVertexX(0), other.getVertexY(0))
+				|| other.contains(getVertexX(0), getVertexY(0));
+	}
+	
+	/**
+	 * Get the outline of the shape as a Java2D shape, e.g. to combine
+	 * shapes with java.awt.geom.Area. Overriden by Ellipse.
+	 * @return New closed path through the vertices
+	 */
+	public java.awt.Shape getOutline() {
+		int n = getVertexCount();
+		Path2D.Double outline = new Path2D.Double(Path2D.WIND_NON_ZERO, n + 1);
+		for(int i = 0; i < n; i++) {
+			if(i == 0) {
+				outline.moveTo(getVertexX(i), getVertexY(i));
+			}
+			else {
+				outline.lineTo(getVertexX(i), getVertexY(i));
+			}
+		}
+		if(n > 0) {
+			outline.closePath();
+		}
+		return outline;
+	}
+	
+	/**
+	 * Draw the shape for a view that shows it at the given scale.
+	 * Shapes with curved outlines override this to pick how finely
+	 * to draw their outline; other shapes look the same at any scale.
+	 * @param g The Graphics object to draw to
+	 * @param scale Screen pixels per drawing unit
+	 */
+	public void draw(Graphics g, double scale) {
+		draw(g);
+	}
+	
+	/**
+	 * Add the outline of the shape to a path, so that many shapes can
+	 * be drawn with one call. Overriden by shapes with curved outlines,
+	 * which pick how finely to follow the curve from the scale.
+	 * @param path Path to add a closed outline to
+	 * @param scale Screen pixels per drawing unit the path will be drawn at
+	 */
+	public void appendOutline(Path2D path, double scale) {
+		int n = getVertexCount();
+		if(n == 0) {
+			return;
+		}
+		path.moveTo(getVertexX(0), getVertexY(0));
+		for(int i = 1; i < n; i++) {
+			path.lineTo(getVertexX(i), getVertexY(i));
+		}
+		path.closePath();
+	}
+	
+	/**
+	 * Draws a line from the previous point to the cursor,
+	 * along with the line to finish the shape
+	 * @param g Graphics object to draw to
+	 * @param cursor Point with the cursor's coordinates
+	 */
+	public void drawGhost(Graphics g, Point cursor) {
+		ArrayList<Point> vertices = getVertices();
+		
+		g.setColor(Color.RED);
+		if(vertices.size() >= getNumFreelyDrawnPoints()) {
+			// Draw first lines
+			for(int i = 0; i < vertices.size()-1; i++) {
+				g.drawLine(vertices.get(i).x, vertices.get(i).y,
+						vertices.get(i+1).x, vertices.get(i+1).y);
+			}
+			// Draw ghost line
+			Point restrictedPoint = getRestrictedPoint(cursor, getGhostPoint());
+			g.drawLine(vertices.get(vertices.size()-1).x, vertices.get(vertices.size()-1).y,
+					restrictedPoint.x, restrictedPoint.y);
+			
+			g.drawLine(vertices.get(0).x, vertices.get(0).y,
+					restrictedPoint.x, restrictedPoint.y);
+		}
+		else if(vertices.size() != 0){
+			for(int i = 0; i < vertices.size()-1; i++) {
+				g.drawLine(vertices.get(i).x, vertices.get(i).y,
+						vertices.get(i+1).x, vertices.get(i+1).y);
+			}
+			g.drawLine(vertices.get(vertices.size()-1).x, vertices.get(vertices.size()-1).y,
+					cursor.x, cursor.y);
+		}
+	}
+	
+	/**
+	 * Set the area of the shape
+	 * @param a Double to set area to
+	 */
+	public void setArea(double a) {
+		if(store != null) {
+			store.setArea(row, a);
+		}
+		else {
+			area = a;
+		}
+	}
+
+	/**
+	 * Set the perimeter of the shape
+	 * @param p a Double to set perimeter to
+	 */
+	public void setPerimeter(double p) {
+		if(store != null) {
+			store.setPerimeter(row, p);
+		}
+		else {
+			perimeter = p;
+		}
+	}
+	
+	/**
+	 * Get the area of the shape
+	 * @return Area of the shape
+	 */
+	public double getArea() {
+		return (store != null) ? store.getArea(row) : area;
+	}
+
+	/**
+	 * Get the perimeter of the shape
+	 * @return Perimeter of the shape
+	 */
+	public double getPerimeter() {
+		return (store != null) ? store.getPerimeter(row) : perimeter;
+	}
+	
+	/**
+	 * Get the number of points that can be freely drawn
+	 * @return Number of points that can be freely drawn
+	 */
+	public int getNumFreelyDrawnPoints() {
+		return numFreelyDrawnPoints;
+	}
+	
+	/**
+	 * Get maximum number of vertices
+	 * @return Maximum number of vertices
+	 */
+	public int getMaxVertices() {
+		return maxVertices;
+	}
+	
+	/**
+	 * Get ArrayList of Points representing vertices. For a shape
+	 * held in a ShapeStore this is a new copy, so changes to it
+	 * do not affect the shape.
+	 * @return ArrayList of Points representing vertices
+	 */
+	public ArrayList<Point> getVertices(){
+		return (store != null) ? store.getVertices(row) : vertices;
+	}
+	
+	/**
+	 * Get the number of vertices without copying them
+	 * @return Number of vertices
+	 */
+	public int getVertexCount() {
+		return (store != null) ? store.getRowVertexCount(row) : vertices.size();
+	}
+	
+	/**
+	 * Get the x coordinate of a vertex without copying the vertices
+	 * @param i Index of the vertex
+	 * @return x coordinate of the vertex
+	 */
+	public int getVertexX(int i) {
+		return (store != null) ? store.getRowX(row, i) : vertices.get(i).x;
+	}
+	
+	/**
+	 * Get the y coordinate of a vertex without copying the vertices
+	 * @param i Index of the vertex
+	 * @return y coordinate of the vertex
+	 */
+	public int getVertexY(int i) {
+		return (store != null) ? store.getRowY(row, i) : vertices.get(i).y;
+	}
+	
+	/**
+	 * Calculate the squared distance from a point to a line segment
+	 * @param x x coordinate of the point
+	 * @param y y coordinate of the point
+	 * @param x1 x coordinate of the start of the segment
+	 * @param y1 y coordinate of the start of the segment
+	 * @param x2 x coordinate of the end of the segment
+	 * @param y2 y coordinate of the end of the segment
+	 * @return Squared distance to the closest point on the segment
+	 */
+	static double segmentDistanceSq(double x, double y, double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double lengthSq = dx * dx + dy * dy;
+		double t = (lengthSq == 0) ? 0 : ((x - x1) * dx + (y - y1) * dy) / lengthSq;
+		t = Math.max(0, Math.min(1, t));
+		double ex = x1 + t * dx - x;
+		double ey = y1 + t * dy - y;
+		return ex * ex + ey * ey;
+	}
+	
+	/**
+	 * Create a copy of the shape with its own vertices,
+	 * which can be changed without affecting this shape
+	 * @return Initialized copy of the shape
+	 */
+	public Shape copy() {
+		ArrayList<Point> copied = new ArrayList<Point>(getVertexCount());
+		for(int i = 0; i < getVertexCount(); i++) {
+			copied.add(new Point(getVertexX(i), getVertexY(i)));
+		}
+		Shape shape = ShapeType.of(this).create();
+		shape.setVertices(copied);
+		shape.initialize();
+		return shape;
+	}
+	
+	/**
+	 * Get the number of shape specific lengths (e.g. side lengths,
+	 * axes) reported for the shape. Overriden by Quadrilateral,
+	 * Triangle and Ellipse.
+	 * @return Number of lengths
+	 */
+	public int getAttributeCount() {
+		return 0;
+	}
+	
+	/**
+	 * Get the name of a shape specific length
+	 * @param i Index of the length
+	 * @return Name of the length, e.g. "A"
+	 */
+	public String getAttributeName(int i) {
+		throw new IndexOutOfBoundsException("Attribute: " + i);
+	}
+	
+	/**
+	 * Get the value of a shape specific length
+	 * @param i Index of the length
+	 * @return Value of the length
+	 */
+	public double getAttribute(int i) {
+		throw new IndexOutOfBoundsException("Attribute: " + i);
+	}
+	
+	/**
+	 * Set the ArrayList of vertices. A shape held in a
+	 * ShapeStore keeps its own vertices from then on.
+	 * @param vertices ArrayList to set from
+	 */
+	public void setVertices(ArrayList<Point> vertices) {
+		detach();
+		this.vertices = vertices;
+		invalidateBounds();
+	}
+	
+	/**
+	 * Turn this shape into a view of a row in a ShapeStore,
+	 * dropping the vertices held by the shape itself
+	 * @param store Store holding the shape's data
+	 * @param row Row of the shape in the store
+	 */
+	void attach(ShapeStore store, int row) {
+		this.store = store;
+		this.row = row;
+		this.vertices = null;
+		invalidateBounds();
+	}
+	
+	/**
+	 * Copy the shape's data out of its store so
+	 * it can be changed without affecting the store
+	 */
+	private void detach() {
+		if(store != null) {
+			vertices = store.getVertices(row);
+			area = store.getArea(row);
+			perimeter = store.getPerimeter(row);
+			store = null;
+		}
+	}
+	
+	/**
+	 * Get string representation of the shape
+	 * @return String which includes the shape's name, vertex points, area, perimeter and lengths
+	 */
+	@Override
+	public String toString() {
+		return ShapeReport.describe(this);
+	}
+	
+	/**
+	 * Returns the length of an edge formed by two points
+	 * @param p1 First point
+	 * @param p2 Second point
+	 * @return The length between p1 and p2
+	 */
+	public static double edgeLength(Point p1, Point p2) {
+		double dx = p2.x - p1.x;
+		double dy = p2.y - p1.y;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+	
+	/**
+	 * Find the slope between two Points
+	 * @param p1 First point
+	 * @param p2 Second point
+	 * @return The slope between p1 and p2
+	 */
+	public static double slope(Point p1, Point p2) {
+		return 1.0 * (p1.y - p2.y) / (p1.x - p2.x);
+	}
+}
@@ -0,0 +1,393 @@
+import java.awt.geom.Area;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Answers questions about where the shapes of a drawing are, in batch:
+ * which shapes intersect an area, which overlap a shape, which pairs
+ * of shapes overlap, and how much area the drawing covers. Shapes are
+ * treated as the regions enclosed by their outlines.
+ *
+ * Queries run on a DrawingSnapshot, so the drawing can go on being
+ * edited. The bounding box of every shape is read once, without
+ * creating the shapes of a MappedDrawing or ShapeStore, and candidates
+ * found with the boxes are then tested exactly with Shape.intersects()
+ * and Shape.overlaps(). Area and single shape queries search a
+ * RecordIndex over the boxes. Whole drawing queries sort the boxes by
+ * their left edges and sweep across them (sweep and prune), so only
+ * shapes whose boxes overlap in both x and y are tested against each
+ * other, rather than every pair. The sweep and the area calculations
+ * are split across cores for large drawings.
+ * @author Sunny Jiao
+ */
+public class ShapeQuery {
+
+	private static final double FLATNESS = 0.01;	// Largest distance between a curve and the lines measuring it
+
+	private final DrawingSnapshot snapshot;
+	private final int count;
+	private final int[] boxes;		// x, y, width and height of each shape, in shape coordinates
+	private RecordIndex index;		// Index over the boxes, or null if not built yet
+
+	/**
+	 * Constructor - Reads the bounding box of every shape
+	 * @param snapshot Drawing to query
+	 */
+	public ShapeQuery(DrawingSnapshot snapshot) {
+		this.snapshot = snapshot;
+		List<Shape> shapes = snapshot.getShapes();
+		count = shapes.size();
+		boxes = new int[count * 4];
+		java.awt.Rectangle box = new java.awt.Rectangle();
+		for(int i = 0; i < count; i++) {
+			if(shapes instanceof MappedDrawing) {
+				((MappedDrawing)shapes).getBounds(i, box);
+			}
+			else if(shapes instanceof ShapeStore) {
+				((ShapeStore)shapes).getBounds(i, box);
+			}
+			else {
+				box.setBounds(shapes.get(i).getBounds());
+			}
+			boxes[i * 4] = box.x;
+			boxes[i * 4 + 1] = box.y;
+			boxes[i * 4 + 2] = box.width;
+			boxes[i * 4 + 3] = box.height;
+		}
+	}
+
+	/**
+	 * Find the shapes that intersect an area, including shapes that
+	 * surround it
+	 * @param area Area to search, in drawing coordinates
+	 * @return Indices of the shapes, in ascending order
+	 */
+	public int[] intersecting(java.awt.Rectangle area) {
+		java.awt.Rectangle shifted = new java.awt.Rectangle(area.x - snapshot.getOffsetX(),
+				area.y - snapshot.getOffsetY(), area.width, area.height);
+		IntStream.Builder found = IntStream.builder();
+		getIndex().query(shifted, i -> {
+			if(snapshot.get(i).intersects(shifted)) {
+				found.add(i);
+			}
+		});
+		return found.build().sorted().toArray();
+	}
+
+	/**
+	 * Find the shapes that overlap a shape
+	 * @param i Index of the shape
+	 * @return Indices of the other shapes that share at least one point with it, in ascending order
+	 * @throws IndexOutOfBoundsException If there is no such shape
+	 */
+	public int[] overlapping(int i) {
+		if(i < 0 || i >= count) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + count);
+		}
+		Shape shape = snapshot.get(i);
+		java.awt.Rectangle box = new java.awt.Rectangle(boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3]);
+		IntStream.Builder found = IntStream.builder();
+		getIndex().query(box, j -> {
+			if(j != i && shape.overlaps(snapshot.get(j))) {
+				found.add(j);
+			}
+		});
+		return found.build().sorted().toArray();
+	}
+
+	/**
+	 * Find every pair of shapes that overlap
+	 * @return Pairs of shape indices, each with the lower index first, in ascending order
+	 */
+	public int[][] overlappingPairs() {
+		long[] pairs = findPairs();
+		int[][] result = new int[pairs.length][];
+		for(int p = 0; p < pairs.length; p++) {
+			result[p] = new int[] {(int)(pairs[p] >>> 32), (int)pairs[p]};
+		}
+		return result;
+	}
+
+	/**
+	 * Calculate the area covered by the drawing, counting the area
+	 * where shapes overlap only once. Shapes that overlap nothing
+	 * are measured on their own; each group of overlapping shapes is
+	 * combined into one java.awt.geom.Area and measured along its
+	 * outline, with curves flattened to within FLATNESS.
+	 * @return Area covered by at least one shape
+	 */
+	public double getCoveredArea() {
+		// Join overlapping shapes into groups
+		int[] parent = new int[count];
+		for(int i = 0; i < count; i++) {
+			parent[i] = i;
+		}
+		for(long pair : findPairs()) {
+			int a = root(parent, (int)(pair >>> 32));
+			int b = root(parent, (int)pair);
+			parent[Math.max(a, b)] = Math.min(a, b);
+		}
+		int[] groupSize = new int[count];
+		for(int i = 0; i < count; i++) {
+			parent[i] = root(parent, i);
+			groupSize[parent[i]]++;
+		}
+		List<int[]> groups = new ArrayList<int[]>();
+		int[] groupOf = new int[count];		// Group number of each first shape, plus one
+		int[] filled = new int[count];		// Shapes put in each first shape's group so far
+		for(int i = 0; i < count; i++) {
+			int r = parent[i];
+			if(groupSize[r] > 1) {
+				if(groupOf[r] == 0) {
+					groups.add(new int[groupSize[r]]);
+					groupOf[r] = groups.size();
+				}
+				groups.get(groupOf[r] - 1)[filled[r]++] = i;
+			}
+		}
+
+		// Measure in parallel, then add up in order so the total is always the same
+		IntStream singles = IntStream.range(0, count);
+		IntStream combined = IntStream.range(0, groups.size());
+		if(count >= Shape.PARALLEL_THRESHOLD) {
+			singles = singles.parallel();
+			combined = combined.parallel();
+		}
+		double[] areas = singles.mapToDouble(i -> (groupSize[parent[i]] == 1) ? measure(snapshot.get(i)) : 0).toArray();
+		double[] groupAreas = combined.mapToDouble(g -> measure(union(groups.get(g), 0, groups.get(g).length))).toArray();
+		double total = 0;
+		for(double area : areas) {
+			total += area;
+		}
+		for(double area : groupAreas) {
+			total += area;
+		}
+		return total;
+	}
+
+	/**
+	 * Get the index over the bounding boxes, building it if needed
+	 * @return The index
+	 */
+	private synchronized RecordIndex getIndex() {
+		if(index == null) {
+			index = new RecordIndex(boxes, count);
+		}
+		return index;
+	}
+
+	/**
+	 * Find every overlapping pair with sweep and prune. The drawing is
+	 * cut into horizontal strips about as tall as a typical box, each
+	 * box is put in every strip it crosses, and each strip is swept in
+	 * order of the left edges: a shape is only compared with the shapes
+	 * that start before its box ends, and only tested exactly if their
+	 * boxes also overlap in y. Sweeping strips rather than the whole
+	 * drawing keeps shapes far apart in y from being compared just
+	 * because they line up in x. A pair is only reported by the first
+	 * strip both shapes are in, and strips are swept in parallel.
+	 * @return Pairs packed as the lower index in the high 32 bits, in ascending order
+	 */
+	private long[] findPairs() {
+		long top = Long.MAX_VALUE;
+		long bottom = Long.MIN_VALUE;
+		long heights = 0;
+		int n = 0;
+		for(int i = 0; i < count; i++) {
+			if(boxes[i * 4 + 2] > 0 && boxes[i * 4 + 3] > 0) {
+				top = Math.min(top, boxes[i * 4 + 1]);
+				bottom = Math.max(bottom, (long)boxes[i * 4 + 1] + boxes[i * 4 + 3]);
+				heights += boxes[i * 4 + 3];
+				n++;
+			}
+		}
+		if(n == 0) {
+			return new long[0];
+		}
+		// No more strips than shapes
+		long height = Math.max(Math.max(1, heights / n), (bottom - top + n - 1) / n);
+		int strips = (int)((bottom - top + height - 1) / height);
+
+		// Put each box in the strips it crosses, keyed by its left edge and index
+		int[] start = new int[strips + 1];
+		for(int i = 0; i < count; i++) {
+			if(boxes[i * 4 + 2] > 0 && boxes[i * 4 + 3] > 0) {
+				for(int s = strip(boxes[i * 4 + 1], top, height); s <= strip(boxes[i * 4 + 1] + (long)boxes[i * 4 + 3] - 1, top, height); s++) {
+					start[s + 1]++;
+				}
+			}
+		}
+		for(int s = 0; s < strips; s++) {
+			start[s + 1] += start[s];
+		}
+		long[] keys = new long[start[strips]];
+		int[] next = Arrays.copyOf(start, strips);
+		for(int i = 0; i < count; i++) {
+			if(boxes[i * 4 + 2] > 0 && boxes[i * 4 + 3] > 0) {
+				for(int s = strip(boxes[i * 4 + 1], top, height); s <= strip(boxes[i * 4 + 1] + (long)boxes[i * 4 + 3] - 1, top, height); s++) {
+					keys[next[s]++] = ((long)boxes[i * 4] << 32) | i;
+				}
+			}
+		}
+
+		IntStream range = IntStream.range(0, strips);
+		if(n >= Shape.PARALLEL_THRESHOLD) {
+			range = range.parallel();
+		}
+		long stripTop = top;
+		long[] pairs = range.mapToObj(s -> {
+			LongStream.Builder found = LongStream.builder();
+			Arrays.sort(keys, start[s], start[s + 1]);
+			for(int p = start[s]; p < start[s + 1]; p++) {
+				int a = (int)keys[p];
+				long right = (long)boxes[a * 4] + boxes[a * 4 + 2];
+				long below = (long)boxes[a * 4 + 1] + boxes[a * 4 + 3];
+				Shape shape = null;
+				for(int q = p + 1; q < start[s + 1] && (keys[q] >> 32) < right; q++) {
+					int b = (int)keys[q];
+					if(boxes[b * 4 + 1] >= below || (long)boxes[b * 4 + 1] + boxes[b * 4 + 3] <= boxes[a * 4 + 1]
+							|| strip(Math.max(boxes[a * 4 + 1], boxes[b * 4 + 1]), stripTop, height) != s) {
+						continue;
+					}
+					if(shape == null) {
+						shape = snapshot.get(a);
+					}
+					if(shape.overlaps(snapshot.get(b))) {
+						found.add(((long)Math.min(a, b) << 32) | Math.max(a, b));
+					}
+				}
+			}
+			return found.build();
+		}).flatMapToLong(s -> s).toArray();
+		Arrays.parallelSort(pairs);
+		return pairs;
+	}
+
+	/**
+	 * Find the strip a y coordinate is in
+	 * @param y y coordinate, not above the first strip
+	 * @param top Top of the first strip
+	 * @param height Height of each strip
+	 * @return Number of the strip
+	 */
+	private static int strip(long y, long top, long height) {
+		return (int)((y - top) / height);
+	}
+
+	/**
+	 * Combine the outlines of a group of shapes, halving the group
+	 * each time so the areas being combined stay about the same size
+	 * @param group Indices of the shapes
+	 * @param from First position in the group to combine
+	 * @param to Position after the last one to combine
+	 * @return Area covered by the shapes
+	 */
+	private Area union(int[] group, int from, int to) {
+		if(to - from == 1) {
+			return new Area(snapshot.get(group[from]).getOutline());
+		}
+		int mid = (from + to) >>> 1;
+		Area area = union(group, from, mid);
+		area.add(union(group, mid, to));
+		return area;
+	}
+
+	/**
+	 * Calculate the area enclosed by a single shape. Ellipses are
+	 * measured from their axes, and polygons from their vertices with
+	 * the shoelace formula, unless their edges cross, e.g. a trapezoid
+	 * drawn as a bow tie, where the formula would take one part away
+	 * from the other.
+	 * @param shape Shape to measure
+	 * @return Area inside the shape
+	 */
+	private static double measure(Shape shape) {
+		if(shape instanceof Ellipse && shape.getVertexCount() == shape.getMaxVertices()) {
+			return Math.PI * shape.getAttribute(0) * shape.getAttribute(1) / 4;
+		}
+		if(crossesItself(shape)) {
+			return measure(new Area(shape.getOutline()));
+		}
+		int n = shape.getVertexCount();
+		double twice = 0;
+		for(int i = 0, j = n - 1; i < n; j = i++) {
+			twice += (double)shape.getVertexX(j) * shape.getVertexY(i) - (double)shape.getVertexX(i) * shape.getVertexY(j);
+		}
+		return Math.abs(twice) / 2;
+	}
+
+	/**
+	 * Check if any two edges of a polygon cross, other than
+	 * neighbouring edges meeting at their shared vertex
+	 * @param shape Shape to check
+	 * @return True if the outline crosses itself
+	 */
+	private static boolean crossesItself(Shape shape) {
+		int n = shape.getVertexCount();
+		for(int i = 0; i < n; i++) {
+			// Skip the next edge, and the last edge when starting from the first
+			for(int j = i + 2; j < ((i == 0) ? n - 1 : n); j++) {
+				if(Line2D.linesIntersect(shape.getVertexX(i), shape.getVertexY(i),
+						shape.getVertexX(i + 1), shape.getVertexY(i + 1),
+						shape.getVertexX(j), shape.getVertexY(j),
+						shape.getVertexX((j + 1) % n), shape.getVertexY((j + 1) % n))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Calculate the area of a combined outline with the shoelace
+	 * formula along each of its flattened loops. Area keeps holes
+	 * turning the opposite way to the loops around them, so the
+	 * holes are taken away.
+	 * @param area Area to measure
+	 * @return Size of the area
+	 */
+	private static double measure(Area area) {
+		double twice = 0;
+		double[] coords = new double[6];
+		double startX = 0, startY = 0, lastX = 0, lastY = 0;
+		for(PathIterator it = area.getPathIterator(null, FLATNESS); !it.isDone(); it.next()) {
+			switch(it.currentSegment(coords)) {
+				case PathIterator.SEG_MOVETO :
+					startX = lastX = coords[0];
+					startY = lastY = coords[1];
+					break;
+				case PathIterator.SEG_LINETO :
+					twice += lastX * coords[1] - coords[0] * lastY;
+					lastX = coords[0];
+					lastY = coords[1];
+					break;
+				case PathIterator.SEG_CLOSE :
+					twice += lastX * startY - startX * lastY;
+					lastX = startX;
+					lastY = startY;
+					break;
+			}
+		}
+		return Math.abs(twice) / 2;
+	}
+
+	/**
+	 * Find the first shape of the group a shape is in,
+	 * shortening the path to it along the way
+	 * @param parent Shape each shape was joined to
+	 * @param i Index of the shape
+	 * @return Index of the group's first shape
+	 */
+	private static int root(int[] parent, int i) {
+		while(parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+}
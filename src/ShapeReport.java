@@ -0,0 +1,277 @@
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.FieldPosition;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * Writes the data of the shapes in a drawing as plain text, CSV or
+ * JSON. Shapes are written one at a time into a single reused buffer
+ * and passed straight on to the writer, so a report on a large drawing
+ * never holds more than one shape's text in memory.
+ *
+ * A report can be limited to the shapes accepted by a filter, and to a
+ * page of those shapes. The drawing's offset can be added on the fly
+ * so that the shapes themselves do not have to be translated first.
+ *
+ * A report is not thread safe.
+ * @author Sunny Jiao
+ */
+public class ShapeReport implements Flushable {
+
+	/**
+	 * Output formats of a report
+	 */
+	public enum Format {
+		TEXT, CSV, JSON
+	}
+
+	private static final String CSV_HEADER = "index,type,vertices,area,perimeter,lengths\n";
+	private static final ThreadLocal<ShapeReport> DESCRIBER =
+			ThreadLocal.withInitial(() -> new ShapeReport(null, Format.TEXT));
+
+	private final Writer out;
+	private final Format format;
+	private final DecimalFormat df;
+	private final FieldPosition field = new FieldPosition(0);
+	private final StringBuffer line = new StringBuffer(256);	// DecimalFormat can only append to a StringBuffer
+	private char[] chars = new char[256];
+	private Predicate<Shape> filter;
+	private int first;
+	private int limit = Integer.MAX_VALUE;
+	private int offsetX;
+	private int offsetY;
+
+	/**
+	 * Constructor
+	 * @param out Writer to send the report to, buffered if it is not already
+	 * @param format Format of the report
+	 */
+	public ShapeReport(Writer out, Format format) {
+		this.out = (out == null || out instanceof BufferedWriter) ? out : new BufferedWriter(out);
+		this.format = format;
+		if(format == Format.TEXT) {
+			df = new DecimalFormat("#.##");
+		}
+		else {
+			// Machine readable formats always use a '.' decimal point
+			df = new DecimalFormat("#.##", DecimalFormatSymbols.getInstance(Locale.ROOT));
+		}
+	}
+
+	/**
+	 * Only report shapes accepted by a filter
+	 * @param filter Filter to apply, or null to report every shape
+	 */
+	public void setFilter(Predicate<Shape> filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Only report one page of the shapes accepted by the filter
+	 * @param first Number of accepted shapes to skip
+	 * @param limit Maximum number of shapes to report
+	 */
+	public void setPage(int first, int limit) {
+		if(first < 0 || limit < 0) {
+			throw new IllegalArgumentException("Invalid page " + first + ", " + limit);
+		}
+		this.first = first;
+		this.limit = limit;
+	}
+
+	/**
+	 * Add a translation to every reported vertex, e.g. a drawing's offset
+	 * @param dx Change in x
+	 * @param dy Change in y
+	 */
+	public void setOffset(int dx, int dy) {
+		offsetX = dx;
+		offsetY = dy;
+	}
+
+	/**
+	 * Write a report on a list of shapes
+	 * @param shapes Shapes to report on
+	 * @return Number of shapes written
+	 * @throws IOException If the writer fails
+	 */
+	public int write(List<Shape> shapes) throws IOException {
+		int skipped = 0;
+		int written = 0;
+		line.setLength(0);
+		if(format == Format.CSV) {
+			line.append(CSV_HEADER);
+		}
+		else if(format == Format.JSON) {
+			line.append('[');
+		}
+		for(int i = 0; i < shapes.size() && written < limit; i++) {
+			Shape shape = shapes.get(i);
+			if(filter != null && !filter.test(shape)) {
+				continue;
+			}
+			if(skipped < first) {
+				skipped++;
+				continue;
+			}
+			switch(format) {
+				case TEXT :
+					line.append(i).append(": ");
+					appendText(shape);
+					line.append("\n\n");
+					break;
+				case CSV :
+					appendCsv(i, shape);
+					break;
+				case JSON :
+					line.append(written == 0 ? "\n" : ",\n");
+					appendJson(i, shape);
+					break;
+			}
+			written++;
+			emit();
+		}
+		if(format == Format.JSON) {
+			line.append(written == 0 ? "]\n" : "\n]\n");
+		}
+		emit();
+		return written;
+	}
+
+	/**
+	 * Flush the writer
+	 * @throws IOException If the writer fails
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Get the text description of a single shape, as
+	 * used by Shape.toString()
+	 * @param shape Shape to describe
+	 * @return The shape's name, vertex points, area, perimeter and lengths
+	 */
+	static String describe(Shape shape) {
+		ShapeReport report = DESCRIBER.get();
+		report.line.setLength(0);
+		report.appendText(shape);
+		return report.line.toString();
+	}
+
+	/**
+	 * Append a shape in the text format
+	 * @param shape Shape to append
+	 */
+	private void appendText(Shape shape) {
+		line.append(shape.getClass().getSimpleName()).append("\nVertices: ");
+		for(int j = 0; j < shape.getVertexCount(); j++) {
+			line.append('(').append(shape.getVertexX(j) + offsetX).append(',')
+					.append(shape.getVertexY(j) + offsetY).append(") ");
+		}
+		line.append("\nArea: ");
+		appendNumber(shape.getArea());
+		line.append("\nPerimeter: ");
+		appendNumber(shape.getPerimeter());
+		line.append('\n');
+		if(shape.getAttributeCount() > 0) {
+			line.append("Lengths:");
+			for(int j = 0; j < shape.getAttributeCount(); j++) {
+				line.append("\n").append(shape.getAttributeName(j)).append(": ");
+				appendNumber(shape.getAttribute(j));
+			}
+		}
+	}
+
+	/**
+	 * Append a shape as a CSV row. Vertices and lengths are
+	 * separated by spaces so that each stays in one column.
+	 * @param index Index of the shape in the drawing
+	 * @param shape Shape to append
+	 */
+	private void appendCsv(int index, Shape shape) {
+		line.append(index).append(',').append(shape.getClass().getSimpleName()).append(',');
+		for(int j = 0; j < shape.getVertexCount(); j++) {
+			line.append(j == 0 ? "" : " ").append(shape.getVertexX(j) + offsetX)
+					.append(':').append(shape.getVertexY(j) + offsetY);
+		}
+		line.append(',');
+		appendNumber(shape.getArea());
+		line.append(',');
+		appendNumber(shape.getPerimeter());
+		line.append(',');
+		for(int j = 0; j < shape.getAttributeCount(); j++) {
+			line.append(j == 0 ? "" : " ").append(shape.getAttributeName(j).replace(' ', '_')).append('=');
+			appendNumber(shape.getAttribute(j));
+		}
+		line.append('\n');
+	}
+
+	/**
+	 * Append a shape as a JSON object
+	 * @param index Index of the shape in the drawing
+	 * @param shape Shape to append
+	 */
+	private void appendJson(int index, Shape shape) {
+		line.append("{\"index\":").append(index)
+				.append(",\"type\":\"").append(shape.getClass().getSimpleName())
+				.append("\",\"vertices\":[");
+		for(int j = 0; j < shape.getVertexCount(); j++) {
+			line.append(j == 0 ? "[" : ",[").append(shape.getVertexX(j) + offsetX)
+					.append(',').append(shape.getVertexY(j) + offsetY).append(']');
+		}
+		line.append("],\"area\":");
+		appendJsonNumber(shape.getArea());
+		line.append(",\"perimeter\":");
+		appendJsonNumber(shape.getPerimeter());
+		line.append(",\"lengths\":{");
+		for(int j = 0; j < shape.getAttributeCount(); j++) {
+			line.append(j == 0 ? "\"" : ",\"").append(shape.getAttributeName(j)).append("\":");
+			appendJsonNumber(shape.getAttribute(j));
+		}
+		line.append("}}");
+	}
+
+	/**
+	 * Append a number rounded to two decimal places
+	 * @param value Number to append
+	 */
+	private void appendNumber(double value) {
+		df.format(value, line, field);
+	}
+
+	/**
+	 * Append a number to a JSON object, writing null for values
+	 * JSON cannot represent (e.g. the area of a degenerate shape)
+	 * @param value Number to append
+	 */
+	private void appendJsonNumber(double value) {
+		if(Double.isNaN(value) || Double.isInfinite(value)) {
+			line.append("null");
+		}
+		else {
+			appendNumber(value);
+		}
+	}
+
+	/**
+	 * Pass the buffered text on to the writer and clear the buffer
+	 * @throws IOException If the writer fails
+	 */
+	private void emit() throws IOException {
+		int length = line.length();
+		if(length > chars.length) {
+			chars = new char[Math.max(length, chars.length * 2)];
+		}
+		line.getChars(0, length, chars, 0);
+		out.write(chars, 0, length);
+		line.setLength(0);
+	}
+}
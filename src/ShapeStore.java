@@ -0,0 +1,614 @@
+import java.awt.Graphics;
+import java.awt.Point;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+
+/**
+ * Column oriented storage for a large number of shapes.
+ *
+ * Each shape is a row made of a type tag, the position of its first
+ * vertex in the coordinate array, and its cached area and perimeter.
+ * Coordinates are stored as x, y pairs of ints, so a row takes a few
+ * dozen bytes instead of an ArrayList and a Point per vertex.
+ *
+ * The store is also a list of shapes. Shape objects are only created
+ * when they are first needed, as views which read and write their
+ * row instead of holding their own vertices. Shapes added through the
+ * List methods are kept as they are rather than copied into the columns.
+ *
+ * Creating a view only fills in its slot, and is synchronized, so a
+ * store that is no longer changed can be read from several threads
+ * at once.
+ * @author Sunny Jiao
+ */
+public class ShapeStore extends AbstractList<Shape> implements RandomAccess, LazyShapeList {
+
+	// Columns, one entry per row
+	private byte[] types;			// ShapeType tag of each row
+	private int[] vertexStart;		// Index of each row's first vertex; one extra entry marks the end
+	private int[] coords;			// x and y of every vertex
+	private double[] metrics;		// Area and perimeter of each row
+	private int[] rowBounds;		// x, y, width and height of each row, filled in by the first query
+	private int boundedRows;		// Number of rows in rowBounds
+	private RecordIndex rowIndex;	// Index over rowBounds, shared by copies, or null if not built yet
+	private int rowCount;
+	private int vertexCount;
+
+	// Slots, one entry per shape in the list
+	private int[] rows;				// Row of each slot, or -1 for shapes not held in the columns
+	private Shape[] views;			// Shape object of each slot, or null if not created yet
+	private int size;
+	private int undecoded;			// Number of slots without a Shape object
+	private int[] slotOfRow;		// Slot of each row, or -1 if none refers to it, or null if not built yet
+
+	/**
+	 * Constructor - Creates an empty store
+	 */
+	public ShapeStore() {
+		this(16);
+	}
+
+	/**
+	 * Constructor - Creates an empty store with room for a number of shapes
+	 * @param capacity Expected number of shapes
+	 */
+	public ShapeStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		types = new byte[capacity];
+		vertexStart = new int[capacity + 1];
+		coords = new int[(int)Math.min(capacity * 8L, Integer.MAX_VALUE - 8)];	// Room for 4 vertices each, grown as needed
+		metrics = new double[capacity * 2];
+		rows = new int[capacity];
+		views = new Shape[capacity];
+	}
+
+	/**
+	 * Constructor - Creates a copy of another store sharing its
+	 * columns. Rows are never changed through the List methods, so
+	 * the columns only change when a view of a row is changed in
+	 * place, e.g. translated; Drawing copies shapes instead of
+	 * changing them.
+	 * @param other Store to copy
+	 */
+	private ShapeStore(ShapeStore other) {
+		types = other.types;
+		vertexStart = other.vertexStart;
+		coords = other.coords;
+		metrics = other.metrics;
+		rowBounds = other.rowBounds;
+		boundedRows = other.boundedRows;
+		rowIndex = other.rowIndex;
+		rowCount = other.rowCount;
+		vertexCount = other.vertexCount;
+		rows = Arrays.copyOf(other.rows, Math.max(other.size, 1));
+		views = Arrays.copyOf(other.views, Math.max(other.size, 1));
+		size = other.size;
+		undecoded = other.undecoded;
+	}
+
+	/**
+	 * Start a new row at the end of the store. Call addVertex()
+	 * for each vertex and then endRow().
+	 * @param type Type of the shape
+	 */
+	public void beginRow(ShapeType type) {
+		if(rowCount == types.length) {
+			int capacity = types.length + (types.length >> 1) + 1;
+			types = Arrays.copyOf(types, capacity);
+			vertexStart = Arrays.copyOf(vertexStart, capacity + 1);
+			metrics = Arrays.copyOf(metrics, capacity * 2);
+		}
+		types[rowCount] = type.getTag();
+		vertexStart[rowCount] = vertexCount;
+	}
+
+	/**
+	 * Add a vertex to the row being built
+	 * @param x x coordinate of the vertex
+	 * @param y y coordinate of the vertex
+	 */
+	public void addVertex(int x, int y) {
+		if(vertexCount * 2 + 2 > coords.length) {
+			coords = Arrays.copyOf(coords, Math.max(coords.length + (coords.length >> 1), vertexCount * 2 + 2));
+		}
+		coords[vertexCount * 2] = x;
+		coords[vertexCount * 2 + 1] = y;
+		vertexCount++;
+	}
+
+	/**
+	 * Finish the row being built and append it to the list.
+	 * Its area and perimeter are zero until initializeRows() is called.
+	 */
+	public void endRow() {
+		vertexStart[rowCount + 1] = vertexCount;
+		ensureSlotCapacity();
+		rows[size] = rowCount;
+		views[size] = null;
+		rowCount++;
+		size++;
+		undecoded++;
+		slotOfRow = null;
+		modCount++;
+	}
+
+	/**
+	 * Calculate the area and perimeter of every shape, splitting the
+	 * work across cores for large stores. Rows without a view are
+	 * initialized through a temporary view. Every shape writes only
+	 * its own row, so the results match initializing them in order.
+	 */
+	public void initializeRows() {
+		IntStream range = IntStream.range(0, size);
+		if(size >= Shape.PARALLEL_THRESHOLD) {
+			range = range.parallel();
+		}
+		range.forEach(this::initializeSlot);
+	}
+
+	/**
+	 * Create a store holding the same shapes and sharing the columns
+	 * @return The copy
+	 */
+	@Override
+	public synchronized ShapeStore copy() {
+		return new ShapeStore(this);
+	}
+
+	/**
+	 * Get a shape, creating a view of its row if needed
+	 * @param i Index of the shape
+	 * @return The shape
+	 */
+	@Override
+	public synchronized Shape get(int i) {
+		checkIndex(i);
+		Shape shape = views[i];
+		if(shape == null) {
+			shape = createView(i);
+		}
+		return shape;
+	}
+
+	/**
+	 * Get the number of shapes
+	 * @return Number of shapes
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Find the first position of a shape by identity. Shapes that
+	 * have not been created yet cannot be the one searched for, so
+	 * they are skipped rather than created.
+	 * @param o Shape to find
+	 * @return Index of the shape, or -1 if it is not in the list
+	 */
+	@Override
+	public synchronized int indexOf(Object o) {
+		if(o == null) {
+			return -1;
+		}
+		for(int i = 0; i < size; i++) {
+			if(views[i] == o) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Replace a shape, keeping the new shape as it is
+	 * @param i Index of the shape
+	 * @param shape New shape
+	 * @return The shape that was replaced
+	 */
+	@Override
+	public Shape set(int i, Shape shape) {
+		Shape old = get(i);
+		if(slotOfRow != null && rows[i] >= 0) {
+			slotOfRow[rows[i]] = -1;
+		}
+		views[i] = shape;
+		rows[i] = -1;
+		return old;
+	}
+
+	/**
+	 * Insert a shape, keeping it as it is rather than
+	 * copying it into the columns
+	 * @param i Index to insert at
+	 * @param shape Shape to insert
+	 */
+	@Override
+	public void add(int i, Shape shape) {
+		if(i < 0 || i > size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+		ensureSlotCapacity();
+		System.arraycopy(views, i, views, i + 1, size - i);
+		System.arraycopy(rows, i, rows, i + 1, size - i);
+		views[i] = shape;
+		rows[i] = -1;
+		if(i < size) {
+			slotOfRow = null;	// Later slots have moved
+		}
+		size++;
+		modCount++;
+	}
+
+	/**
+	 * Remove a shape. Its row stays in the columns
+	 * until the drawing is saved and loaded again.
+	 * @param i Index of the shape
+	 * @return The removed shape
+	 */
+	@Override
+	public Shape remove(int i) {
+		Shape old = get(i);
+		System.arraycopy(views, i + 1, views, i, size - i - 1);
+		System.arraycopy(rows, i + 1, rows, i, size - i - 1);
+		size--;
+		views[size] = null;
+		slotOfRow = null;
+		modCount++;
+		return old;
+	}
+
+	/**
+	 * Get the number of shapes without a Shape object
+	 * @return Number of shapes only held in the columns
+	 */
+	@Override
+	public synchronized int getUndecodedCount() {
+		return undecoded;
+	}
+
+	/**
+	 * Check if a slot's shape is held in the columns
+	 * @param i Index of the shape
+	 * @return True if the shape was not added or set through the List methods
+	 */
+	@Override
+	public boolean isStored(int i) {
+		checkIndex(i);
+		return rows[i] >= 0;
+	}
+
+	/**
+	 * Find the shapes held in the columns whose bounding boxes
+	 * intersect an area, creating views of them if needed. Rows
+	 * outside the area are skipped without creating views. The first
+	 * search builds a RecordIndex over the rows' bounding boxes, which
+	 * copies of the store go on sharing, and a table from rows back to
+	 * slots, which is rebuilt after shapes are inserted or removed.
+	 * @param area Area to search
+	 * @param result List the shapes are appended to
+	 * @return The result list
+	 */
+	@Override
+	public synchronized List<Shape> queryStored(java.awt.Rectangle area, List<Shape> result) {
+		if(rowIndex == null || rowIndex.getCount() < rowCount) {
+			if(boundedRows < rowCount) {
+				boundRows();
+			}
+			rowIndex = new RecordIndex(rowBounds, rowCount);
+		}
+		if(slotOfRow == null) {
+			slotOfRow = new int[rowCount];
+			Arrays.fill(slotOfRow, -1);
+			for(int i = 0; i < size; i++) {
+				if(rows[i] >= 0) {
+					slotOfRow[rows[i]] = i;
+				}
+			}
+		}
+		rowIndex.query(area, row -> {
+			int i = slotOfRow[row];
+			if(i >= 0) {
+				result.add(views[i] != null ? views[i] : createView(i));
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Get the type of a shape without creating a view
+	 * @param i Index of the shape
+	 * @return Type of the shape
+	 */
+	public ShapeType getType(int i) {
+		return isPacked(i) ? ShapeType.fromTag(types[rows[i]]) : ShapeType.of(views[i]);
+	}
+
+	/**
+	 * Get the number of vertices of a shape without creating a view
+	 * @param i Index of the shape
+	 * @return Number of vertices
+	 */
+	public int getVertexCount(int i) {
+		if(isPacked(i)) {
+			return vertexStart[rows[i] + 1] - vertexStart[rows[i]];
+		}
+		return views[i].getVertices().size();
+	}
+
+	/**
+	 * Get the x coordinate of a vertex without creating a view
+	 * @param i Index of the shape
+	 * @param j Index of the vertex
+	 * @return x coordinate of the vertex
+	 */
+	public int getX(int i, int j) {
+		return isPacked(i) ? coords[(vertexStart[rows[i]] + j) * 2] : views[i].getVertices().get(j).x;
+	}
+
+	/**
+	 * Get the y coordinate of a vertex without creating a view
+	 * @param i Index of the shape
+	 * @param j Index of the vertex
+	 * @return y coordinate of the vertex
+	 */
+	public int getY(int i, int j) {
+		return isPacked(i) ? coords[(vertexStart[rows[i]] + j) * 2 + 1] : views[i].getVertices().get(j).y;
+	}
+
+	/**
+	 * Get the bounding box of a shape without creating a view
+	 * @param i Index of the shape
+	 * @param box Rectangle to store the bounding box in
+	 */
+	public synchronized void getBounds(int i, java.awt.Rectangle box) {
+		checkIndex(i);
+		if(rows[i] >= 0) {
+			getRowBounds(rows[i], box);
+		}
+		else {
+			box.setBounds(views[i].getBounds());
+		}
+	}
+
+	/*
+	 * Row accessors used by the views
+	 */
+
+	/**
+	 * Copy the vertices of a row into a new list
+	 * @param row Row of the shape
+	 * @return ArrayList of the row's vertices
+	 */
+	ArrayList<Point> getVertices(int row) {
+		int start = vertexStart[row];
+		int end = vertexStart[row + 1];
+		ArrayList<Point> vertices = new ArrayList<Point>(end - start);
+		for(int v = start; v < end; v++) {
+			vertices.add(new Point(coords[v * 2], coords[v * 2 + 1]));
+		}
+		return vertices;
+	}
+
+	/**
+	 * Get the number of vertices in a row
+	 * @param row Row of the shape
+	 * @return Number of vertices
+	 */
+	int getRowVertexCount(int row) {
+		return vertexStart[row + 1] - vertexStart[row];
+	}
+
+	/**
+	 * Get the x coordinate of a vertex in a row
+	 * @param row Row of the shape
+	 * @param j Index of the vertex
+	 * @return x coordinate of the vertex
+	 */
+	int getRowX(int row, int j) {
+		return coords[(vertexStart[row] + j) * 2];
+	}
+
+	/**
+	 * Get the y coordinate of a vertex in a row
+	 * @param row Row of the shape
+	 * @param j Index of the vertex
+	 * @return y coordinate of the vertex
+	 */
+	int getRowY(int row, int j) {
+		return coords[(vertexStart[row] + j) * 2 + 1];
+	}
+
+	/**
+	 * Translate the vertices of a row
+	 * @param row Row of the shape
+	 * @param dx Change in x
+	 * @param dy Change in y
+	 */
+	void translate(int row, int dx, int dy) {
+		for(int v = vertexStart[row]; v < vertexStart[row + 1]; v++) {
+			coords[v * 2] += dx;
+			coords[v * 2 + 1] += dy;
+		}
+	}
+
+	/**
+	 * Get the pixel-inclusive bounding box of a row's vertices
+	 * @param row Row of the shape
+	 * @param box Rectangle to store the bounding box in
+	 */
+	void getVertexBounds(int row, java.awt.Rectangle box) {
+		int start = vertexStart[row];
+		int end = vertexStart[row + 1];
+		if(start == end) {
+			box.setBounds(0, 0, 0, 0);
+			return;
+		}
+		int minX = coords[start * 2];
+		int minY = coords[start * 2 + 1];
+		int maxX = minX;
+		int maxY = minY;
+		for(int v = start + 1; v < end; v++) {
+			minX = Math.min(minX, coords[v * 2]);
+			maxX = Math.max(maxX, coords[v * 2]);
+			minY = Math.min(minY, coords[v * 2 + 1]);
+			maxY = Math.max(maxY, coords[v * 2 + 1]);
+		}
+		box.setBounds(minX, minY, maxX - minX + 1, maxY - minY + 1);
+	}
+
+	/**
+	 * Draw the outline of a row's polygon
+	 * @param row Row of the shape
+	 * @param g Graphics object to draw to
+	 */
+	void draw(int row, Graphics g) {
+		int start = vertexStart[row];
+		int end = vertexStart[row + 1];
+		if(start == end) {
+			return;
+		}
+		int prev = end - 1;
+		for(int v = start; v < end; v++) {
+			g.drawLine(coords[prev * 2], coords[prev * 2 + 1], coords[v * 2], coords[v * 2 + 1]);
+			prev = v;
+		}
+	}
+
+	/**
+	 * Get the area of a row
+	 * @param row Row of the shape
+	 * @return Area of the shape
+	 */
+	double getArea(int row) {
+		return metrics[row * 2];
+	}
+
+	/**
+	 * Set the area of a row
+	 * @param row Row of the shape
+	 * @param area Area of the shape
+	 */
+	void setArea(int row, double area) {
+		metrics[row * 2] = area;
+	}
+
+	/**
+	 * Get the perimeter of a row
+	 * @param row Row of the shape
+	 * @return Perimeter of the shape
+	 */
+	double getPerimeter(int row) {
+		return metrics[row * 2 + 1];
+	}
+
+	/**
+	 * Set the perimeter of a row
+	 * @param row Row of the shape
+	 * @param perimeter Perimeter of the shape
+	 */
+	void setPerimeter(int row, double perimeter) {
+		metrics[row * 2 + 1] = perimeter;
+	}
+
+	/**
+	 * Get a bounding box that contains a row's outline. For ellipses
+	 * this is the box around the rectangle whose sides touch the ends
+	 * of the axes, since the outline extends past the vertices.
+	 * @param row Row of the shape
+	 * @param box Rectangle to store the bounding box in
+	 */
+	private void getRowBounds(int row, java.awt.Rectangle box) {
+		getVertexBounds(row, box);
+		ShapeType type = ShapeType.fromTag(types[row]);
+		int start = vertexStart[row];
+		if((type == ShapeType.ELLIPSE || type == ShapeType.CIRCLE) && vertexStart[row + 1] - start == 4) {
+			// Corners are the ends of the first axis moved by half of the second axis
+			int halfX = (coords[(start + 2) * 2] - coords[(start + 3) * 2]) / 2 + 1;
+			int halfY = (coords[(start + 2) * 2 + 1] - coords[(start + 3) * 2 + 1]) / 2 + 1;
+			box.grow(Math.abs(halfX), Math.abs(halfY));
+		}
+	}
+
+	/**
+	 * Store the bounding box of every row not yet in rowBounds, so
+	 * they can be indexed without looking at the vertices. Rows are
+	 * never changed once built, so the boxes stay correct and are
+	 * shared with copies of the store.
+	 */
+	private void boundRows() {
+		int[] boxes = Arrays.copyOf((rowBounds != null) ? rowBounds : new int[0], rowCount * 4);
+		java.awt.Rectangle box = new java.awt.Rectangle();
+		for(int row = boundedRows; row < rowCount; row++) {
+			getRowBounds(row, box);
+			boxes[row * 4] = box.x;
+			boxes[row * 4 + 1] = box.y;
+			boxes[row * 4 + 2] = box.width;
+			boxes[row * 4 + 3] = box.height;
+		}
+		rowBounds = boxes;
+		boundedRows = rowCount;
+	}
+
+	/**
+	 * Initialize the shape in a slot without keeping a view of it
+	 * @param i Index of the shape
+	 */
+	private void initializeSlot(int i) {
+		Shape shape = views[i];
+		if(shape == null) {
+			shape = ShapeType.fromTag(types[rows[i]]).create();
+			shape.attach(this, rows[i]);
+		}
+		shape.initialize();
+	}
+
+	/**
+	 * Create the view of a slot's row
+	 * @param i Index of the shape
+	 * @return The new view
+	 */
+	private Shape createView(int i) {
+		Shape view = ShapeType.fromTag(types[rows[i]]).create();
+		view.attach(this, rows[i]);
+		view.setAttributes();
+		views[i] = view;
+		undecoded--;
+		return view;
+	}
+
+	/**
+	 * Check if a slot's data is held in the columns. Views are
+	 * never changed in place once the store is in a drawing, so
+	 * the columns are up to date for every stored slot.
+	 * @param i Index of the shape
+	 * @return True if the columns are up to date for the shape
+	 */
+	private boolean isPacked(int i) {
+		return isStored(i);
+	}
+
+	/**
+	 * Make room for one more slot
+	 */
+	private void ensureSlotCapacity() {
+		if(size == rows.length) {
+			int capacity = rows.length + (rows.length >> 1) + 1;
+			rows = Arrays.copyOf(rows, capacity);
+			views = Arrays.copyOf(views, capacity);
+		}
+	}
+
+	/**
+	 * Check that an index is in the list
+	 * @param i Index to check
+	 */
+	private void checkIndex(int i) {
+		if(i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+	}
+}
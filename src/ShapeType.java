@@ -0,0 +1,117 @@
+import java.util.function.Supplier;
+
+/**
+ * Every kind of shape that can be stored in a drawing file, along
+ * with the tag that identifies it in the file. Tags must never be
+ * reused or changed once files have been written with them.
+ * @author Sunny Jiao
+ */
+public enum ShapeType {
+
+	TRAPEZOID(1, Trapezoid.class, Trapezoid::new),
+	PARALLELOGRAM(2, Parallelogram.class, Parallelogram::new),
+	RHOMBUS(3, Rhombus.class, Rhombus::new),
+	RECTANGLE(4, Rectangle.class, Rectangle::new),
+	SQUARE(5, Square.class, Square::new),
+	SCALENE_TRIANGLE(6, ScaleneTriangle.class, ScaleneTriangle::new),
+	ISOSCELES_TRIANGLE(7, IsoscelesTriangle.class, IsoscelesTriangle::new),
+	EQUILATERAL_TRIANGLE(8, EquilateralTriangle.class, EquilateralTriangle::new),
+	ELLIPSE(9, Ellipse.class, Ellipse::new),
+	CIRCLE(10, Circle.class, Circle::new),
+	FREEHAND(11, Freehand.class, Freehand::new);
+
+	private static final ShapeType[] BY_TAG = new ShapeType[128];	// Lookup table from tag to type
+
+	static {
+		for(ShapeType type : values()) {
+			BY_TAG[type.tag] = type;
+		}
+	}
+
+	private final byte tag;
+	private final Class<? extends Shape> shapeClass;
+	private final Supplier<Shape> constructor;
+	private final int maxVertices;	// Vertices of a complete shape, or Integer.MAX_VALUE if there is no fixed number
+
+	/**
+	 * Constructor
+	 * @param tag Tag written to files for this type
+	 * @param shapeClass Class of the shape
+	 * @param constructor Creates an empty shape of this type
+	 */
+	ShapeType(int tag, Class<? extends Shape> shapeClass, Supplier<Shape> constructor) {
+		this.tag = (byte)tag;
+		this.shapeClass = shapeClass;
+		this.constructor = constructor;
+		this.maxVertices = constructor.get().getMaxVertices();
+	}
+
+	/**
+	 * Check if a complete shape of this type can have a number of
+	 * vertices, e.g. to reject a corrupt record before decoding it
+	 * @param numVertices Number of vertices
+	 * @return True if the shape can be initialized with that many vertices
+	 */
+	public boolean isValidVertexCount(int numVertices) {
+		if(maxVertices == Integer.MAX_VALUE) {
+			return numVertices >= Freehand.MIN_VERTICES;
+		}
+		return numVertices == maxVertices;
+	}
+
+	/**
+	 * Get the tag written to files for this type
+	 * @return Tag of the type
+	 */
+	public byte getTag() {
+		return tag;
+	}
+
+	/**
+	 * Create a new shape of this type with no vertices
+	 * @return Empty shape
+	 */
+	public Shape create() {
+		return constructor.get();
+	}
+
+	/**
+	 * Find the type with the given tag
+	 * @param tag Tag read from a file
+	 * @return The type, or null if the tag is unknown
+	 */
+	public static ShapeType fromTag(byte tag) {
+		return (tag >= 0) ? BY_TAG[tag] : null;
+	}
+
+	/**
+	 * Find the type with the given name, ignoring case and
+	 * underscores, e.g. "scalene_triangle" or "ScaleneTriangle"
+	 * @param name Name of the type or of its shape class
+	 * @return The type, or null if the name is unknown
+	 */
+	public static ShapeType fromName(String name) {
+		String key = name.replace("_", "");
+		for(ShapeType type : values()) {
+			if(type.shapeClass.getSimpleName().equalsIgnoreCase(key)) {
+				return type;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Find the type of a shape
+	 * @param shape Shape to look up
+	 * @return The type of the shape
+	 * @throws IllegalArgumentException If the shape has no type
+	 */
+	public static ShapeType of(Shape shape) {
+		for(ShapeType type : values()) {
+			if(type.shapeClass == shape.getClass()) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException("No type for " + shape.getClass().getSimpleName());
+	}
+}
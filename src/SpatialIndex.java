@@ -0,0 +1,468 @@
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid over the bounding boxes of shapes, used to find
+ * the shapes in an area without scanning every shape.
+ *
+ * Each shape is stored in every grid cell its bounding box touches.
+ * Shapes that would cover too many cells are kept in a separate list
+ * which is checked on every query instead. Each shape is also stored
+ * in a coarse grid whose cells are COARSE_FACTOR cells wide, which is
+ * used for queries over large areas, e.g. a view that is zoomed out.
+ * Both grids keep the range of cells that have held shapes, and a
+ * query never looks at cells outside it, or walks the cells holding
+ * shapes if that is quicker than looking at every cell in the area.
+ * The time taken by a query is therefore limited by the number of
+ * shapes, rather than growing with the area searched.
+ *
+ * copy() only copies the map of cells. Cells are shared until one of
+ * the indexes changes them, and an index only changes cells it made
+ * itself since it was last copied, copying any other cell first. A
+ * copy can therefore go on being queried from other threads while
+ * the original is changed. Shapes must not change while they are in
+ * the index, since their bounding box is used to find them again.
+ * @author Sunny Jiao
+ */
+public class SpatialIndex {
+
+	private static final int DEFAULT_CELL_SIZE = 64;	// Width and height of a cell in pixels
+	private static final int MAX_CELLS_PER_SHAPE = 256;	// Shapes covering more cells are "oversized"
+	private static final int COARSE_FACTOR = 16;		// Width and height of a coarse cell in cells
+	private static final long MAX_FINE_CELLS = 1024;	// Queries over more cells use the coarse grid
+
+	/**
+	 * The shapes in one grid cell
+	 */
+	private static class Cell {
+
+		final Object owner;		// Index allowed to change the cell in place
+		Shape[] shapes;
+		int count;
+
+		/**
+		 * Constructor
+		 * @param owner Index allowed to change the cell in place
+		 * @param shapes Array holding the shapes, with room to grow
+		 * @param count Number of shapes in the array
+		 */
+		Cell(Object owner, Shape[] shapes, int count) {
+			this.owner = owner;
+			this.shapes = shapes;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * Cells of one size, along with the range of columns and rows
+	 * that have held shapes since the grid was created. The range
+	 * only grows, so it may include cells that are empty again.
+	 */
+	private static class Grid {
+
+		final int cellSize;
+		final HashMap<Long, Cell> cells;	// Shapes in each cell, keyed by cell coordinates
+		int minCol = Integer.MAX_VALUE;
+		int minRow = Integer.MAX_VALUE;
+		int maxCol = Integer.MIN_VALUE;
+		int maxRow = Integer.MIN_VALUE;
+
+		/**
+		 * Constructor - Creates an empty grid
+		 * @param cellSize Width and height of a cell in pixels
+		 */
+		Grid(int cellSize) {
+			this.cellSize = cellSize;
+			cells = new HashMap<Long, Cell>();
+		}
+
+		/**
+		 * Constructor - Creates a grid sharing the cells of another grid
+		 * @param other Grid to copy
+		 */
+		Grid(Grid other) {
+			cellSize = other.cellSize;
+			cells = new HashMap<Long, Cell>(other.cells);
+			minCol = other.minCol;
+			minRow = other.minRow;
+			maxCol = other.maxCol;
+			maxRow = other.maxRow;
+		}
+
+		/**
+		 * Find the cell column or row containing a coordinate
+		 * @param coordinate x or y coordinate in pixels
+		 * @return Column or row of the cell
+		 */
+		int cellOf(int coordinate) {
+			return Math.floorDiv(coordinate, cellSize);
+		}
+
+		/**
+		 * Add a shape to every cell its bounding box touches
+		 * @param shape Shape to add
+		 * @param box Bounding box of the shape
+		 * @param owner Marks the cells the index may change in place
+		 */
+		void insert(Shape shape, java.awt.Rectangle box, Object owner) {
+			int firstCol = cellOf(box.x);
+			int firstRow = cellOf(box.y);
+			int lastCol = cellOf(box.x + box.width - 1);
+			int lastRow = cellOf(box.y + box.height - 1);
+			minCol = Math.min(minCol, firstCol);
+			minRow = Math.min(minRow, firstRow);
+			maxCol = Math.max(maxCol, lastCol);
+			maxRow = Math.max(maxRow, lastRow);
+			for(int row = firstRow; row <= lastRow; row++) {
+				for(int col = firstCol; col <= lastCol; col++) {
+					Long key = key(col, row);
+					Cell cell = cells.get(key);
+					if(cell == null) {
+						cell = new Cell(owner, new Shape[4], 0);
+						cells.put(key, cell);
+					}
+					else if(cell.owner != owner) {
+						cell = own(cell, owner);
+						cells.put(key, cell);
+					}
+					add(cell, shape);
+				}
+			}
+		}
+
+		/**
+		 * Remove a shape from every cell its bounding box touches
+		 * @param shape Shape to remove
+		 * @param box Bounding box of the shape
+		 * @param owner Marks the cells the index may change in place
+		 * @return True if the shape was in any of the cells
+		 */
+		boolean remove(Shape shape, java.awt.Rectangle box, Object owner) {
+			boolean found = false;
+			int lastCol = cellOf(box.x + box.width - 1);
+			int lastRow = cellOf(box.y + box.height - 1);
+			for(int row = cellOf(box.y); row <= lastRow; row++) {
+				for(int col = cellOf(box.x); col <= lastCol; col++) {
+					Long key = key(col, row);
+					Cell cell = cells.get(key);
+					int i = (cell != null) ? indexOf(cell, shape) : -1;
+					if(i < 0) {
+						continue;
+					}
+					found = true;
+					if(cell.count == 1) {
+						cells.remove(key);
+						continue;
+					}
+					if(cell.owner != owner) {
+						cell = own(cell, owner);
+						cells.put(key, cell);
+					}
+					removeAt(cell, i);
+				}
+			}
+			return found;
+		}
+
+		/**
+		 * Count the cells that would be looked at to search an area
+		 * @param area Area to search
+		 * @return Number of cells in the area that are inside the range holding shapes
+		 */
+		long countCells(java.awt.Rectangle area) {
+			long cols = Math.min(maxCol, cellOf(area.x + area.width - 1)) - (long)Math.max(minCol, cellOf(area.x)) + 1;
+			long rows = Math.min(maxRow, cellOf(area.y + area.height - 1)) - (long)Math.max(minRow, cellOf(area.y)) + 1;
+			return (cols <= 0 || rows <= 0) ? 0 : cols * rows;
+		}
+
+		/**
+		 * Find every shape in the grid whose bounding box intersects an area
+		 * @param area Area to search, which must not be empty
+		 * @param result List the shapes are appended to
+		 */
+		void query(java.awt.Rectangle area, List<Shape> result) {
+			int firstCol = Math.max(minCol, cellOf(area.x));
+			int firstRow = Math.max(minRow, cellOf(area.y));
+			int lastCol = Math.min(maxCol, cellOf(area.x + area.width - 1));
+			int lastRow = Math.min(maxRow, cellOf(area.y + area.height - 1));
+			if(firstCol > lastCol || firstRow > lastRow) {
+				return;
+			}
+			if((lastCol - (long)firstCol + 1) * (lastRow - (long)firstRow + 1) <= cells.size()) {
+				for(int row = firstRow; row <= lastRow; row++) {
+					for(int col = firstCol; col <= lastCol; col++) {
+						Cell cell = cells.get(key(col, row));
+						if(cell != null) {
+							collect(cell, col, row, firstCol, firstRow, area, result);
+						}
+					}
+				}
+				return;
+			}
+			// Fewer cells hold shapes than there are cells in the area
+			for(Map.Entry<Long, Cell> entry : cells.entrySet()) {
+				long key = entry.getKey();
+				int col = (int)(key >> 32);
+				int row = (int)key;
+				if(col >= firstCol && col <= lastCol && row >= firstRow && row <= lastRow) {
+					collect(entry.getValue(), col, row, firstCol, firstRow, area, result);
+				}
+			}
+		}
+
+		/**
+		 * Add the shapes of a cell that intersect an area to the result,
+		 * skipping the shapes that are reported from another cell
+		 * @param cell Cell searched
+		 * @param col Column of the cell
+		 * @param row Row of the cell
+		 * @param firstCol First column searched
+		 * @param firstRow First row searched
+		 * @param area Area to search
+		 * @param result List the shapes are appended to
+		 */
+		private void collect(Cell cell, int col, int row, int firstCol, int firstRow,
+				java.awt.Rectangle area, List<Shape> result) {
+			for(int i = 0; i < cell.count; i++) {
+				Shape shape = cell.shapes[i];
+				java.awt.Rectangle box = shape.getBounds();
+				// Report each shape only from the first searched cell it is in
+				if(col == Math.max(firstCol, cellOf(box.x)) && row == Math.max(firstRow, cellOf(box.y))
+						&& box.intersects(area)) {
+					result.add(shape);
+				}
+			}
+		}
+	}
+
+	private final int cellSize;
+	private Grid fine;					// Shapes in each cell
+	private Grid coarse;				// Shapes in each coarse cell, for large areas
+	private Cell oversized;				// Shapes too large to store per cell
+	private Object owner;				// Marks the cells this index may change in place
+	private int size;
+
+	/**
+	 * Constructor - Creates an empty index with the default cell size
+	 */
+	public SpatialIndex() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * Constructor - Creates an empty index
+	 * @param cellSize Width and height of a grid cell in pixels
+	 */
+	public SpatialIndex(int cellSize) {
+		this.cellSize = cellSize;
+		clear();
+	}
+
+	/**
+	 * Constructor - Creates a copy of another index
+	 * @param other Index to copy
+	 */
+	private SpatialIndex(SpatialIndex other) {
+		cellSize = other.cellSize;
+		fine = new Grid(other.fine);
+		coarse = new Grid(other.coarse);
+		oversized = other.oversized;
+		owner = new Object();
+		size = other.size;
+	}
+
+	/**
+	 * Create an index holding the same shapes, which can be
+	 * changed without changing this one and the other way around
+	 * @return The copy
+	 */
+	public SpatialIndex copy() {
+		owner = new Object();	// The cells are shared from now on
+		return new SpatialIndex(this);
+	}
+
+	/**
+	 * Remove every shape from the index
+	 */
+	public void clear() {
+		owner = new Object();
+		fine = new Grid(cellSize);
+		coarse = new Grid(cellSize * COARSE_FACTOR);
+		oversized = new Cell(owner, new Shape[4], 0);
+		size = 0;
+	}
+
+	/**
+	 * Add a shape to the index using its bounding box. Shapes
+	 * without vertices have nothing to find and are skipped.
+	 * @param shape Shape to add, which must not already be in the index
+	 */
+	public void insert(Shape shape) {
+		java.awt.Rectangle box = shape.getBounds();
+		if(box.isEmpty()) {
+			return;
+		}
+		size++;
+		if(isOversized(box)) {
+			oversized = own(oversized, owner);
+			add(oversized, shape);
+			return;
+		}
+		fine.insert(shape, box, owner);
+		coarse.insert(shape, box, owner);
+	}
+
+	/**
+	 * Remove a shape from the index
+	 * @param shape Shape to remove
+	 * @return True if the shape was in the index
+	 */
+	public boolean remove(Shape shape) {
+		java.awt.Rectangle box = shape.getBounds();
+		if(box.isEmpty()) {
+			return false;
+		}
+		if(isOversized(box)) {
+			if(indexOf(oversized, shape) < 0) {
+				return false;
+			}
+			oversized = own(oversized, owner);
+			removeAt(oversized, indexOf(oversized, shape));
+			size--;
+			return true;
+		}
+		boolean found = fine.remove(shape, box, owner);
+		coarse.remove(shape, box, owner);
+		if(found) {
+			size--;
+		}
+		return found;
+	}
+
+	/**
+	 * Find every shape whose bounding box intersects an area.
+	 * Each shape is added to the result once.
+	 * @param area Area to search
+	 * @param result List the shapes are appended to
+	 * @return The result list
+	 */
+	public List<Shape> query(java.awt.Rectangle area, List<Shape> result) {
+		if(area.isEmpty()) {
+			return result;
+		}
+		Grid grid = (fine.countCells(area) > MAX_FINE_CELLS) ? coarse : fine;
+		grid.query(area, result);
+		for(int i = 0; i < oversized.count; i++) {
+			if(oversized.shapes[i].getBounds().intersects(area)) {
+				result.add(oversized.shapes[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find every shape whose bounding box contains a point
+	 * @param p Point to search
+	 * @param result List the shapes are appended to
+	 * @return The result list
+	 */
+	public List<Shape> query(Point p, List<Shape> result) {
+		Cell cell = fine.cells.get(key(fine.cellOf(p.x), fine.cellOf(p.y)));
+		if(cell != null) {
+			for(int i = 0; i < cell.count; i++) {
+				if(cell.shapes[i].getBounds().contains(p)) {
+					result.add(cell.shapes[i]);
+				}
+			}
+		}
+		for(int i = 0; i < oversized.count; i++) {
+			if(oversized.shapes[i].getBounds().contains(p)) {
+				result.add(oversized.shapes[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the number of shapes in the index
+	 * @return Number of shapes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Check if a bounding box covers too many cells
+	 * to be stored in each of them
+	 * @param box Bounding box of a shape
+	 * @return True if the shape should be stored as oversized
+	 */
+	private boolean isOversized(java.awt.Rectangle box) {
+		long cols = fine.cellOf(box.x + box.width - 1) - fine.cellOf(box.x) + 1L;
+		long rows = fine.cellOf(box.y + box.height - 1) - fine.cellOf(box.y) + 1L;
+		return cols * rows > MAX_CELLS_PER_SHAPE;
+	}
+
+	/**
+	 * Combine a cell's column and row into a single key
+	 * @param col Column of the cell
+	 * @param row Row of the cell
+	 * @return Key of the cell
+	 */
+	private static Long key(int col, int row) {
+		return ((long) col << 32) | (row & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Get a cell an index may change, copying it if it is shared
+	 * @param cell Cell to change
+	 * @param owner Marks the cells the index may change in place
+	 * @return The cell, or a copy owned by the index
+	 */
+	private static Cell own(Cell cell, Object owner) {
+		if(cell.owner == owner) {
+			return cell;
+		}
+		return new Cell(owner, Arrays.copyOf(cell.shapes, Math.max(cell.count + 1, 4)), cell.count);
+	}
+
+	/**
+	 * Add a shape to the end of a cell, growing its array if needed
+	 * @param cell Cell owned by this index
+	 * @param shape Shape to add
+	 */
+	private static void add(Cell cell, Shape shape) {
+		if(cell.count == cell.shapes.length) {
+			cell.shapes = Arrays.copyOf(cell.shapes, cell.count * 2);
+		}
+		cell.shapes[cell.count++] = shape;
+	}
+
+	/**
+	 * Remove the shape at a position in a cell
+	 * @param cell Cell owned by this index
+	 * @param i Position of the shape
+	 */
+	private static void removeAt(Cell cell, int i) {
+		System.arraycopy(cell.shapes, i + 1, cell.shapes, i, cell.count - i - 1);
+		cell.shapes[--cell.count] = null;
+	}
+
+	/**
+	 * Find a shape in a cell by identity rather than equals()
+	 * @param cell Cell to search
+	 * @param shape Shape to find
+	 * @return Position of the shape, or -1 if it is not in the cell
+	 */
+	private static int indexOf(Cell cell, Shape shape) {
+		for(int i = cell.count - 1; i >= 0; i--) {
+			if(cell.shapes[i] == shape) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}